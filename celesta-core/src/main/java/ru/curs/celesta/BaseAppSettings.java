@@ -25,6 +25,20 @@ public abstract class BaseAppSettings {
     private final boolean skipDBUpdate;
     private final boolean forceDBInitialize;
     private final boolean logLogins;
+    private final int dbUpdateThreads;
+    private final int connectionPoolMinSize;
+    private final int connectionPoolMaxSize;
+    private final long connectionPoolBorrowTimeout;
+    private final long connectionPoolValidationInterval;
+    private final long connectionPoolMaxLifetime;
+    private final int statementCacheSize;
+    private final boolean asyncLog;
+    private final int logQueueSize;
+    private final int logBatchSize;
+    private final boolean histogramProfiler;
+    private final long profilerFlushInterval;
+    private final boolean profilerJmx;
+    private final boolean pgStatementLevelMvTriggers;
 
     {
         logger = Logger.getLogger("ru.curs.flute");
@@ -99,6 +113,42 @@ public abstract class BaseAppSettings {
         skipDBUpdate = Boolean.parseBoolean(properties.getProperty("skip.dbupdate", "").trim());
         forceDBInitialize = Boolean.parseBoolean(properties.getProperty("force.dbinitialize", "").trim());
         logLogins = Boolean.parseBoolean(properties.getProperty("log.logins", "").trim());
+        dbUpdateThreads = (int) parseNumber("dbupdate.threads", 1, sb);
+        if (dbUpdateThreads < 1) {
+            sb.append("dbupdate.threads should be positive.\n");
+        }
+
+        connectionPoolMinSize = (int) parseNumber("rdbms.connection.pool.min", 0, sb);
+        connectionPoolMaxSize = (int) parseNumber("rdbms.connection.pool.max", 0, sb);
+        connectionPoolBorrowTimeout = parseNumber("rdbms.connection.pool.borrow.timeout", 30_000, sb);
+        connectionPoolValidationInterval = parseNumber("rdbms.connection.pool.validation.interval", 30_000, sb);
+        connectionPoolMaxLifetime = parseNumber("rdbms.connection.pool.max.lifetime", 1_800_000, sb);
+        statementCacheSize = (int) parseNumber("rdbms.connection.statement.cache.size", 100, sb);
+
+        String logDurability = properties.getProperty("log.durability", "sync").trim();
+        asyncLog = "async".equalsIgnoreCase(logDurability);
+        if (!(asyncLog || "sync".equalsIgnoreCase(logDurability))) {
+            sb.append("log.durability should be either sync or async.\n");
+        }
+        logQueueSize = (int) parseNumber("log.queue.size", 10000, sb);
+        logBatchSize = (int) parseNumber("log.batch.size", 500, sb);
+        if (asyncLog && (logQueueSize < 1 || logBatchSize < 1)) {
+            sb.append("log.queue.size and log.batch.size should be positive.\n");
+        }
+
+        String profilerMode = properties.getProperty("profiler.mode", "calllog").trim();
+        histogramProfiler = "histogram".equalsIgnoreCase(profilerMode);
+        if (!(histogramProfiler || "calllog".equalsIgnoreCase(profilerMode))) {
+            sb.append("profiler.mode should be either calllog or histogram.\n");
+        }
+        profilerFlushInterval = parseNumber("profiler.flush.interval", 60_000, sb);
+        profilerJmx = Boolean.parseBoolean(properties.getProperty("profiler.jmx", "").trim());
+
+        String pgMvTriggers = properties.getProperty("pg.mv.triggers", "row").trim();
+        pgStatementLevelMvTriggers = "statement".equalsIgnoreCase(pgMvTriggers);
+        if (!(pgStatementLevelMvTriggers || "row".equalsIgnoreCase(pgMvTriggers))) {
+            sb.append("pg.mv.triggers should be either row or statement.\n");
+        }
 
         if (sb.length() > 0) {
             throw new CelestaException(sb.toString());
@@ -106,6 +156,23 @@ public abstract class BaseAppSettings {
 
     }
 
+    private long parseNumber(String propertyName, long defaultValue, StringBuffer sb) {
+        String value = properties.getProperty(propertyName, "").trim();
+        if (value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            long result = Long.parseLong(value);
+            if (result < 0) {
+                sb.append(propertyName).append(" should not be negative.\n");
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            sb.append(propertyName).append(" should contain a number.\n");
+            return defaultValue;
+        }
+    }
+
     protected static void checkEntries(String path, String propertyName, StringBuffer sb) {
         if (!path.isEmpty()) {
             for (String pathEntry : path.split(File.pathSeparator)) {
@@ -208,4 +275,104 @@ public abstract class BaseAppSettings {
     public int getH2Port() {
         return h2Port;
     }
+
+    /**
+     * Минимальное количество простаивающих соединений в пуле.
+     */
+    public int getConnectionPoolMinSize() {
+        return connectionPoolMinSize;
+    }
+
+    /**
+     * Максимальное количество одновременно используемых соединений (0 -- без ограничения).
+     */
+    public int getConnectionPoolMaxSize() {
+        return connectionPoolMaxSize;
+    }
+
+    /**
+     * Время ожидания свободного соединения в миллисекундах.
+     */
+    public long getConnectionPoolBorrowTimeout() {
+        return connectionPoolBorrowTimeout;
+    }
+
+    /**
+     * Интервал проверки простаивающих соединений в миллисекундах.
+     */
+    public long getConnectionPoolValidationInterval() {
+        return connectionPoolValidationInterval;
+    }
+
+    /**
+     * Максимальное время жизни соединения в миллисекундах (0 -- без ограничения).
+     */
+    public long getConnectionPoolMaxLifetime() {
+        return connectionPoolMaxLifetime;
+    }
+
+    /**
+     * Размер кэша подготовленных запросов каждого соединения (0 -- кэш отключён).
+     */
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    /**
+     * Признак асинхронной записи лога изменений (log.durability=async).
+     */
+    public boolean isAsyncLog() {
+        return asyncLog;
+    }
+
+    /**
+     * Размер очереди асинхронной записи лога изменений.
+     */
+    public int getLogQueueSize() {
+        return logQueueSize;
+    }
+
+    /**
+     * Размер пакета асинхронной записи лога изменений.
+     */
+    public int getLogBatchSize() {
+        return logBatchSize;
+    }
+
+    /**
+     * Признак профилирования вызовов в памяти (profiler.mode=histogram).
+     */
+    public boolean isHistogramProfiler() {
+        return histogramProfiler;
+    }
+
+    /**
+     * Интервал записи агрегатов профилировщика в calllog в миллисекундах (0 -- не записывать).
+     */
+    public long getProfilerFlushInterval() {
+        return profilerFlushInterval;
+    }
+
+    /**
+     * Признак публикации статистики профилировщика через JMX.
+     */
+    public boolean isProfilerJmx() {
+        return profilerJmx;
+    }
+
+    /**
+     * Признак обслуживания материализованных представлений в PostgreSQL
+     * триггерами уровня оператора (pg.mv.triggers=statement).
+     */
+    public boolean isPgStatementLevelMvTriggers() {
+        return pgStatementLevelMvTriggers;
+    }
+
+    /**
+     * Число потоков, в которых обновляются независимые друг от друга гранулы
+     * (1 -- гранулы обновляются последовательно).
+     */
+    public int getDbUpdateThreads() {
+        return dbUpdateThreads;
+    }
 }
@@ -9,8 +9,10 @@ import ru.curs.celesta.score.Score;
 import java.sql.Connection;
 import java.sql.SQLException;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.WeakHashMap;
@@ -43,12 +45,15 @@ public class CallContext implements ICallContext {
     private int dbPid;
     private Date startTime;
     private long startMonotonicTime;
+    private boolean rolledBack;
 
     private BasicDataAccessor lastDataAccessor;
 
     private int dataAccessorsCount;
     private State state;
 
+    private final List<Runnable> transactionEndListeners = new ArrayList<>();
+
     public CallContext(String userId) {
         if (Objects.requireNonNull(userId).isEmpty()) {
             throw new CelestaException("Call context's user Id must not be empty");
@@ -113,6 +118,8 @@ public class CallContext implements ICallContext {
             conn.commit();
         } catch (SQLException e) {
             throw new CelestaException("Commit unsuccessful: %s", e.getMessage());
+        } finally {
+            fireTransactionEnd();
         }
     }
 
@@ -122,13 +129,32 @@ public class CallContext implements ICallContext {
      * Wraps SQLException into CelestaException.
      */
     public void rollback() {
+        rolledBack = true;
         try {
             conn.rollback();
         } catch (SQLException e) {
             throw new CelestaException("Rollback unsuccessful: %s", e.getMessage());
+        } finally {
+            fireTransactionEnd();
         }
     }
 
+    /**
+     * Registers an action to be run once when the current transaction ends
+     * (is committed, rolled back or the context is closed).
+     *
+     * @param listener the action
+     */
+    public void addTransactionEndListener(Runnable listener) {
+        transactionEndListeners.add(listener);
+    }
+
+    private void fireTransactionEnd() {
+        List<Runnable> listeners = new ArrayList<>(transactionEndListeners);
+        transactionEndListeners.clear();
+        listeners.forEach(Runnable::run);
+    }
+
     public ICelesta getCelesta() {
         return celesta;
     }
@@ -201,6 +227,14 @@ public class CallContext implements ICallContext {
         return System.nanoTime() - startMonotonicTime;
     }
 
+    /**
+     * Whether {@link #rollback()} has been called in this context
+     * (such calls are counted by profiler as failed ones).
+     */
+    public boolean isRolledBack() {
+        return rolledBack;
+    }
+
     public boolean isClosed() {
         return state == State.CLOSED;
     }
@@ -224,6 +258,7 @@ public class CallContext implements ICallContext {
             if (conn != null) {
                 conn.close();
             }
+            fireTransactionEnd();
             celesta.getProfiler().logCall(this);
             state = State.CLOSED;
         } catch (Exception e) {
@@ -3,6 +3,8 @@ package ru.curs.celesta;
 import ru.curs.celesta.dbutils.ILoggingManager;
 import ru.curs.celesta.dbutils.IPermissionManager;
 import ru.curs.celesta.dbutils.IProfiler;
+import ru.curs.celesta.dbutils.RowCache;
+import ru.curs.celesta.dbutils.TableSnapshots;
 import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
 import ru.curs.celesta.event.TriggerDispatcher;
 import ru.curs.celesta.score.Score;
@@ -62,4 +64,16 @@ public interface ICelesta extends AutoCloseable {
      */
     DBAdaptor getDBAdaptor();
 
+    /**
+     * Returns a {@link RowCache} of this celesta instance.
+     * @return a cache of records read by primary key.
+     */
+    RowCache getRowCache();
+
+    /**
+     * Returns {@link TableSnapshots} of this celesta instance.
+     * @return in-memory snapshots of read-only tables.
+     */
+    TableSnapshots getTableSnapshots();
+
 }
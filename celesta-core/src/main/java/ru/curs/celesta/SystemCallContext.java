@@ -40,4 +40,12 @@ public class SystemCallContext extends CallContext {
         this();
         activate(celesta, IProfiler.NO_LOG);
     }
+
+    /**
+     * Duplicates system call context with another JDBC connection.
+     */
+    @Override
+    public CallContext getCopy() {
+        return new SystemCallContext(getCelesta(), getProcName());
+    }
 }
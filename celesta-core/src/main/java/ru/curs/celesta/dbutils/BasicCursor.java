@@ -38,8 +38,12 @@ package ru.curs.celesta.dbutils;
 import java.sql.*;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.regex.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import ru.curs.celesta.*;
 import ru.curs.celesta.dbutils.filter.*;
@@ -67,6 +71,10 @@ public abstract class BasicCursor extends BasicDataAccessor {
 
     protected Set<String> fields = Collections.emptySet();
     protected Set<String> fieldsForStatement = Collections.emptySet();
+    private Object[] valuesView;
+    // columns read from the result sets of the statements selecting fieldsForStatement
+    private boolean[] projection;
+    private Calendar utcCalendar;
 
     final PreparedStmtHolder set = PreparedStatementHolderFactory.createFindSetHolder(
             BasicCursor.this.db(),
@@ -219,6 +227,38 @@ public abstract class BasicCursor extends BasicDataAccessor {
         }
     };
 
+    final PreparedStmtHolder firstChunk = new PreparedStmtHolder() {
+        @Override
+        protected PreparedStatement initStatement(List<ParameterSetter> program) {
+            FromClause from = getFrom();
+
+            if (fromTerm == null) {
+                fromTerm = new FromTerm(from.getParameters());
+            }
+
+            WhereTerm where = qmaker.getWhereTerm();
+            fromTerm.programParams(program, db());
+            where.programParams(program, db());
+            return getChunkStatement(from, where);
+        }
+    };
+
+    final PreparedStmtHolder nextChunk = new OrderFieldsMaskedStatementHolder() {
+        @Override
+        protected PreparedStatement initStatement(List<ParameterSetter> program) {
+            FromClause from = getFrom();
+
+            if (fromTerm == null) {
+                fromTerm = new FromTerm(from.getParameters());
+            }
+
+            WhereTerm where = qmaker.getWhereTerm('>');
+            fromTerm.programParams(program, db());
+            where.programParams(program, db());
+            return getChunkStatement(from, where);
+        }
+    };
+
     // Поля фильтров и сортировок
     private final Map<String, AbstractFilter> filters = new HashMap<>();
     private String[] orderByNames;
@@ -230,6 +270,16 @@ public abstract class BasicCursor extends BasicDataAccessor {
     private long rowCount = 0;
     private Expr complexFilter;
 
+    // Состояние чтения набора порциями
+    private int chunkSize = 0;
+    private int chunkRowsRead;
+    private Object[] chunkLastValues;
+
+    // Состояние чтения набора из снимка таблицы
+    private TableSnapshot snapshot;
+    private TableSnapshot.Selection snapshotSet;
+    private int snapshotIndex;
+
     protected FromTerm fromTerm;
 
     private final WhereTermsMaker qmaker = new WhereTermsMaker(new WhereMakerParamsProvider() {
@@ -277,7 +327,7 @@ public abstract class BasicCursor extends BasicDataAccessor {
 
         @Override
         public Object[] values() {
-            return _currentValues();
+            return getCurrentValuesView();
         }
 
         @Override
@@ -330,7 +380,7 @@ public abstract class BasicCursor extends BasicDataAccessor {
     @Override
     protected void closeInternal() {
         super.closeInternal();
-        closeStatements(set, forwards, backwards, here, first, last, count, position);
+        closeStatements(set, forwards, backwards, here, first, last, count, position, firstChunk, nextChunk);
     }
 
     final Map<String, AbstractFilter> getFilters() {
@@ -381,6 +431,7 @@ public abstract class BasicCursor extends BasicDataAccessor {
 
     protected void closeSet() {
         cursor = null;
+        snapshotSet = null;
         set.close();
         forwards.close();
         backwards.close();
@@ -388,6 +439,8 @@ public abstract class BasicCursor extends BasicDataAccessor {
         last.close();
         count.close();
         position.close();
+        firstChunk.close();
+        nextChunk.close();
     }
 
     private String getOrderBy(boolean reverse) {
@@ -447,7 +500,12 @@ public abstract class BasicCursor extends BasicDataAccessor {
         if (!canRead())
             throw new PermissionDeniedException(callContext(), meta(), Action.READ);
 
-        PreparedStatement ps = set.getStatement(_currentValues(), 0);
+        chunkSize = 0;
+        Boolean found = tryFindSetInSnapshot();
+        if (found != null) {
+            return found;
+        }
+        PreparedStatement ps = set.getStatement(getCurrentValuesView(), 0);
         boolean result = false;
         try {
             if (cursor != null)
@@ -455,7 +513,7 @@ public abstract class BasicCursor extends BasicDataAccessor {
             cursor = ps.executeQuery();
             result = cursor.next();
             if (result) {
-                _parseResult(cursor);
+                _parseResult(cursor, getProjection());
             }
         } catch (SQLException e) {
             throw new CelestaException(e.getMessage());
@@ -463,6 +521,96 @@ public abstract class BasicCursor extends BasicDataAccessor {
         return result;
     }
 
+    /**
+     * Переходит к первой записи в отфильтрованном наборе, читая набор
+     * порциями. Последующие вызовы {@link #nextInSet()} запрашивают следующую
+     * порцию, когда текущая исчерпана.
+     * <p>
+     * Каждая порция читается отдельным запросом с условием на поля сортировки
+     * (записи, следующие за последней записью предыдущей порции), поэтому между
+     * порциями на сервере не держится открытый набор, а расход памяти ограничен
+     * размером порции. Между порциями транзакцию можно фиксировать. Порядок
+     * сортировки должен однозначно определять запись, иначе записи с равными
+     * значениями полей сортировки на границе порции были бы пропущены. Это
+     * выполняется только для таблиц и материализованных представлений с
+     * первичным ключом, который дописывается к порядку сортировки; остальные
+     * курсоры нельзя читать порциями.
+     *
+     * @param chunkSize
+     *            максимальное количество записей в порции.
+     * @return true, если переход успешен, false -- если записей в наборе нет.
+     */
+    public final boolean tryFindSet(int chunkSize) {
+        if (!canRead())
+            throw new PermissionDeniedException(callContext(), meta(), Action.READ);
+        if (chunkSize <= 0)
+            throw new CelestaException("Invalid chunk size: %d, should be positive", chunkSize);
+        if (isLimited())
+            throw new CelestaException("Reading %s in chunks cannot be combined with limit(...)", _objectName());
+        if (!isOrderUnique())
+            throw new CelestaException("%s cannot be read in chunks: its sort order does not identify a record",
+                    _objectName());
+
+        Boolean found = tryFindSetInSnapshot();
+        if (found != null) {
+            return found;
+        }
+        if (this.chunkSize != chunkSize) {
+            firstChunk.close();
+            nextChunk.close();
+            this.chunkSize = chunkSize;
+        }
+        return readChunk(firstChunk.getStatement(getCurrentValuesView(), 0));
+    }
+
+    /**
+     * Запрашивает порцию записей, следующих за последней записью предыдущей
+     * порции.
+     */
+    private boolean tryNextChunk() {
+        // the buffer could have been changed since the last row was read
+        for (int i = 0; i < orderByNames.length; i++) {
+            _setFieldValue(WhereTermsMaker.unquot(orderByNames[i]), chunkLastValues[orderByIndices[i]]);
+        }
+        return readChunk(nextChunk.getStatement(chunkLastValues, 0));
+    }
+
+    private boolean readChunk(PreparedStatement ps) {
+        chunkRowsRead = 0;
+        chunkLastValues = null;
+        try {
+            if (cursor != null)
+                cursor.close();
+            cursor = ps.executeQuery();
+            return readChunkRow();
+        } catch (SQLException e) {
+            throw new CelestaException(e.getMessage());
+        }
+    }
+
+    private boolean readChunkRow() throws SQLException {
+        if (!cursor.next()) {
+            return false;
+        }
+        _parseResult(cursor, getProjection());
+        if (++chunkRowsRead == chunkSize) {
+            chunkLastValues = _currentValues();
+        }
+        return true;
+    }
+
+    private PreparedStatement getChunkStatement(FromClause from, WhereTerm where) {
+        PreparedStatement result = db().getRecordSetStatement(
+                conn(), from, where.getWhere(), getOrderBy(), 0, chunkSize, fieldsForStatement
+        );
+        try {
+            result.setFetchSize(db().getChunkFetchSize(chunkSize));
+        } catch (SQLException e) {
+            throw new CelestaException(e.getMessage());
+        }
+        return result;
+    }
+
     /**
      * То же, что navigate("-").
      */
@@ -531,7 +679,16 @@ public abstract class BasicCursor extends BasicDataAccessor {
      * разделителями-запятыми.
      */
     public final String asCSVLine() {
-        Object[] values = _currentValues();
+        return asCSVLine(_currentValues());
+    }
+
+    /**
+     * Возвращает значения полей в виде CSV-строки с разделителями-запятыми.
+     *
+     * @param values
+     *            значения полей
+     */
+    static String asCSVLine(Object[] values) {
         StringBuilder sb = new StringBuilder();
         for (Object value : values) {
             if (sb.length() > 0)
@@ -571,15 +728,24 @@ public abstract class BasicCursor extends BasicDataAccessor {
      * если достигнут конец набора.
      */
     public final boolean nextInSet() {
+        if (snapshotSet != null) {
+            return nextInSnapshot();
+        }
+        if (chunkSize > 0) {
+            return nextInChunks();
+        }
         boolean result = false;
         try {
-            if (cursor == null)
+            if (cursor == null) {
                 result = tryFindSet();
-            else {
+                if (snapshotSet != null) {
+                    return result;
+                }
+            } else {
                 result = cursor.next();
             }
             if (result) {
-                _parseResult(cursor);
+                _parseResult(cursor, getProjection());
             } else {
                 cursor.close();
                 cursor = null;
@@ -590,6 +756,59 @@ public abstract class BasicCursor extends BasicDataAccessor {
         return result;
     }
 
+    private boolean nextInChunks() {
+        if (cursor == null) {
+            return tryFindSet(chunkSize);
+        }
+        try {
+            if (readChunkRow()) {
+                return true;
+            }
+            // a chunk that is not full is the last one
+            boolean result = chunkLastValues != null && tryNextChunk();
+            if (!result) {
+                cursor.close();
+                cursor = null;
+            }
+            return result;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns a sequential stream of snapshots of the records of the filtered
+     * and sorted set.
+     * <p>
+     * The stream reads the set through {@link #tryFindSet()} and
+     * {@link #nextInSet()}, so the cursor buffer holds the last read record.
+     * Closing the stream releases the set.
+     */
+    public final Stream<CursorRow> stream() {
+        Function<BasicCursor, CursorRow> snapshotter = CursorRow.snapshotter(meta());
+        Spliterator<CursorRow> spliterator = new Spliterators.AbstractSpliterator<CursorRow>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE) {
+            private boolean started;
+            private boolean finished;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super CursorRow> action) {
+                if (finished) {
+                    return false;
+                }
+                boolean found = started ? nextInSet() : tryFindSet();
+                started = true;
+                if (found) {
+                    action.accept(snapshotter.apply(BasicCursor.this));
+                } else {
+                    finished = true;
+                }
+                return found;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(this::closeSet);
+    }
+
     /**
      * Метод навигации (пошагового перехода в отфильтрованном и отсортированном
      * наборе).
@@ -626,6 +845,12 @@ public abstract class BasicCursor extends BasicDataAccessor {
         navigationOffset = 0;
         for (int i = 0; i < command.length(); i++) {
             char c = command.charAt(i);
+            Boolean found = navigateInSnapshot(c, 0);
+            if (found != null) {
+                if (found)
+                    return true;
+                continue;
+            }
             PreparedStatement navigator = chooseNavigator(c);
 
             if (executeNavigator(navigator))
@@ -652,6 +877,10 @@ public abstract class BasicCursor extends BasicDataAccessor {
             closeStatements(backwards, forwards);
         }
 
+        Boolean found = navigateInSnapshot(command.charAt(0), offset);
+        if (found != null) {
+            return found;
+        }
         PreparedStatement navigator = chooseNavigator(command.charAt(0));
         // System.out.println(navigator);
         return executeNavigator(navigator);
@@ -664,7 +893,7 @@ public abstract class BasicCursor extends BasicDataAccessor {
             ResultSet rs = navigator.executeQuery();
             try {
                 if (rs.next()) {
-                    _parseResult(rs);
+                    _parseResult(rs, getProjection());
                     return true;
                 }
             } finally {
@@ -677,7 +906,7 @@ public abstract class BasicCursor extends BasicDataAccessor {
     }
 
     private PreparedStatement chooseNavigator(char c) {
-        Object[] rec = _currentValues();
+        Object[] rec = getCurrentValuesView();
 
         switch (c) {
         case '<':
@@ -697,6 +926,130 @@ public abstract class BasicCursor extends BasicDataAccessor {
 
     }
 
+    /**
+     * Whether the sort order identifies a record, i.e. the primary key is appended to it.
+     */
+    boolean isOrderUnique() {
+        return false;
+    }
+
+    /**
+     * Returns the in-memory snapshot of the table the data can be read from,
+     * or null if the data is read from the database.
+     */
+    TableSnapshot getSnapshot() {
+        return null;
+    }
+
+    /**
+     * Reads values of all the rows in the current sort order from the database.
+     */
+    List<Object[]> readSnapshotOrder() {
+        return null;
+    }
+
+    /**
+     * Selects rows of the filtered set from the snapshot.
+     *
+     * @param limited whether offset and row count of limit(...) are applied
+     * @return null if the set cannot be evaluated in memory.
+     */
+    private TableSnapshot.Selection selectFromSnapshot(TableSnapshot s, boolean limited) {
+        if (complexFilter != null || getIn() != null) {
+            return null;
+        }
+        TableSnapshot.Order order = s.getOrder(getOrderBy(), this::readSnapshotOrder);
+        if (order == null) {
+            return null;
+        }
+        return s.select(order, filters, meta(), limited ? offset : 0, limited ? rowCount : 0);
+    }
+
+    /**
+     * Reads the filtered set from the snapshot.
+     *
+     * @return null if the set should be read from the database.
+     */
+    private Boolean tryFindSetInSnapshot() {
+        TableSnapshot s = getSnapshot();
+        TableSnapshot.Selection selection = s == null ? null : selectFromSnapshot(s, true);
+        if (selection == null) {
+            return null;
+        }
+        if (cursor != null) {
+            try {
+                cursor.close();
+            } catch (SQLException e) {
+                throw new CelestaException(DATABASE_CLOSING_ERROR, _objectName(), e.getMessage());
+            }
+            cursor = null;
+        }
+        snapshot = s;
+        snapshotSet = selection;
+        snapshotIndex = 0;
+        return nextInSnapshot();
+    }
+
+    private boolean nextInSnapshot() {
+        if (snapshotIndex < snapshotSet.size()) {
+            readSnapshotRow(snapshot, snapshotSet.getRow(snapshotIndex++));
+            return true;
+        }
+        snapshotSet = null;
+        return false;
+    }
+
+    /**
+     * Executes the navigation command on the snapshot.
+     *
+     * @return null if the command should be executed in the database.
+     */
+    private Boolean navigateInSnapshot(char c, long navOffset) {
+        TableSnapshot s = getSnapshot();
+        TableSnapshot.Selection selection = s == null ? null : selectFromSnapshot(s, false);
+        if (selection == null) {
+            return null;
+        }
+        long index;
+        if (c == '-') {
+            index = 0;
+        } else if (c == '+') {
+            index = selection.size() - 1;
+        } else {
+            Object[] values = getCurrentValuesView();
+            int row = s.findRow(values);
+            if (c == '=') {
+                if (row < 0 && !s.isKeyComparedExactly(values)) {
+                    return null;
+                }
+                index = row < 0 ? -1 : selection.indexOf(row);
+            } else if (row < 0 || !s.hasValues(row, values, orderByIndices)) {
+                // the buffer is not a record of the table: compare values in the database
+                return null;
+            } else if (c == '>') {
+                // offsets 0 and 1 both mean the adjacent record
+                index = selection.indexAfter(row) + Math.max(navOffset - 1, 0);
+            } else {
+                index = selection.indexBefore(row) - Math.max(navOffset - 1, 0);
+            }
+        }
+        if (index < 0 || index >= selection.size()) {
+            return false;
+        }
+        readSnapshotRow(s, selection.getRow((int) index));
+        return true;
+    }
+
+    private void readSnapshotRow(TableSnapshot s, int row) {
+        int i = 0;
+        for (String name : meta().getColumns().keySet()) {
+            if (inRec(name)) {
+                _setFieldValue(name, s.getValue(i, row));
+            }
+            i++;
+        }
+    }
+
     WhereTermsMaker getQmaker() {
         return qmaker;
     }
@@ -946,7 +1299,12 @@ public abstract class BasicCursor extends BasicDataAccessor {
      * Возвращает число записей в отфильтрованном наборе.
      */
     public final int count() {
-        PreparedStatement stmt = count.getStatement(_currentValues(), 0);
+        TableSnapshot s = getSnapshot();
+        TableSnapshot.Selection selection = s == null ? null : selectFromSnapshot(s, false);
+        if (selection != null) {
+            return selection.size();
+        }
+        PreparedStatement stmt = count.getStatement(getCurrentValuesView(), 0);
         int result = count(stmt);
         // we are not holding this query: it's rarely used.
         count.close();
@@ -960,7 +1318,7 @@ public abstract class BasicCursor extends BasicDataAccessor {
      * not be public.
      */
     final int position() {
-        PreparedStatement stmt = position.getStatement(_currentValues(), 0);
+        PreparedStatement stmt = position.getStatement(getCurrentValuesView(), 0);
         // System.out.println(stmt);
         return count(stmt);
     }
@@ -1001,6 +1359,13 @@ public abstract class BasicCursor extends BasicDataAccessor {
 
     protected void copySpecificFiltersFrom(BasicCursor c) {}
 
+    /**
+     * Whether limit(...) is set on the cursor.
+     */
+    final boolean isLimited() {
+        return offset != 0 || rowCount != 0;
+    }
+
     /**
      * Получает копию сортировок из курсора того же типа.
      *
@@ -1071,6 +1436,49 @@ public abstract class BasicCursor extends BasicDataAccessor {
         return fieldsForStatement.isEmpty() || fieldsForStatement.contains(field);
     }
 
+    /**
+     * Returns the current values of the fields in the array owned by the cursor.
+     * <p>
+     * Unlike {@link #_currentValues()} the array is not allocated on every call, but it is
+     * overwritten by the next call, so it should be read at once and never retained or modified.
+     */
+    final Object[] getCurrentValuesView() {
+        if (valuesView == null) {
+            valuesView = new Object[meta().getColumns().size()];
+        }
+        _fillCurrentValues(valuesView);
+        return valuesView;
+    }
+
+    /**
+     * Returns the mask of the columns read by the statements of the cursor.
+     */
+    final boolean[] getProjection() {
+        if (projection == null) {
+            projection = getProjection(meta(), fieldsForStatement);
+        }
+        return projection;
+    }
+
+    /**
+     * Returns the mask of the columns read by a statement selecting the fields of the element.
+     * <p>
+     * The statement selects the fields in the order of the columns of the element except BLOBs,
+     * followed by "recversion" for versioned tables, so that they are read by column index.
+     *
+     * @param meta   the element
+     * @param fields selected fields, empty set means all fields of the element
+     */
+    static boolean[] getProjection(DataGrainElement meta, Set<String> fields) {
+        boolean[] result = new boolean[meta.getColumns().size()];
+        int i = 0;
+        for (Map.Entry<String, ? extends ColumnMeta> e : meta.getColumns().entrySet()) {
+            result[i++] = !BinaryColumn.CELESTA_TYPE.equals(e.getValue().getCelestaType())
+                    && (fields.isEmpty() || fields.contains(e.getKey()));
+        }
+        return result;
+    }
+
     protected In getIn() {
         return null;
     }
@@ -1094,6 +1502,7 @@ public abstract class BasicCursor extends BasicDataAccessor {
                         .collect(Collectors.toSet())
         );
         fieldsForStatement.addAll(fields);
+        projection = null;
     }
 
     /**
@@ -1112,13 +1521,44 @@ public abstract class BasicCursor extends BasicDataAccessor {
      */
     public abstract BasicCursor _getBufferCopy(CallContext context, List<String> fields);
 
-    public abstract Object[] _currentValues();
+    /**
+     * Returns the current values of the fields in a new array.
+     */
+    public Object[] _currentValues() {
+        Object[] result = new Object[meta().getColumns().size()];
+        _fillCurrentValues(result);
+        return result;
+    }
+
+    /**
+     * Puts the current values of the fields into the array.
+     *
+     * @param values array of the size equal to the number of the columns
+     */
+    protected abstract void _fillCurrentValues(Object[] values);
 
     protected abstract void _clearBuffer(boolean withKeys);
 
     protected abstract void _setFieldValue(String name, Object value);
 
-    protected abstract void _parseResult(ResultSet rs) throws SQLException;
+    /**
+     * Reads the current record from the result set.
+     *
+     * @param rs         result set positioned at the record
+     * @param projection mask of the columns selected by the statement, see {@link #getProjection()}
+     */
+    protected abstract void _parseResult(ResultSet rs, boolean[] projection) throws SQLException;
+
+    /**
+     * Returns the calendar of UTC time zone for reading of ZonedDateTime fields.
+     * It is shared by the records read by the cursor.
+     */
+    protected final Calendar _utcCalendar() {
+        if (utcCalendar == null) {
+            utcCalendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        }
+        return utcCalendar;
+    }
 
     // CHECKSTYLE:ON
 
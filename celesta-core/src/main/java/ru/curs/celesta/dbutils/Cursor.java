@@ -37,11 +37,16 @@ package ru.curs.celesta.dbutils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.sql.BatchUpdateException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import ru.curs.celesta.CallContext;
 import ru.curs.celesta.CelestaException;
@@ -62,17 +67,45 @@ import ru.curs.celesta.score.*;
  */
 public abstract class Cursor extends BasicCursor implements InFilterSupport {
 
+    private static final String INTEGRITY_CONSTRAINT_VIOLATION = "23";
+    private static final int UPDATE_STATEMENTS_CACHE_SIZE = 16;
+
     private Table meta = null;
     final CursorGetHelper getHelper;
+    private final RowCache.TableCache rowCache;
     private InFilterHolder inFilterHolder;
 
-    final MaskedStatementHolder insert = PreparedStatementHolderFactory.createInsertHolder(meta(), db(), conn());
+    final MaskedStatementHolder insert;
 
-    boolean[] updateMask = null;
-    boolean[] nullUpdateMask = null;
-    final PreparedStmtHolder update = PreparedStatementHolderFactory.createUpdateHolder(
-            meta(), db(), conn(), () -> updateMask, () -> nullUpdateMask
-    );
+    /**
+     * The update statement of the last update, one of {@link #updates}, or null
+     * before the first update.
+     */
+    PreparedStmtHolder update = null;
+    /**
+     * Update statements by the columns being updated (bit 2i) and set to NULL (bit 2i + 1),
+     * the least recently used ones are closed.
+     */
+    private final Map<BitSet, PreparedStmtHolder> updates =
+            new LinkedHashMap<BitSet, PreparedStmtHolder>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<BitSet, PreparedStmtHolder> eldest) {
+                    if (size() > UPDATE_STATEMENTS_CACHE_SIZE) {
+                        eldest.getValue().close();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+    private final BitSet updateKey = new BitSet();
+
+    /**
+     * Columns which may differ from xRec: the ones set since the buffer and xRec
+     * were made equal by {@link #initXRec()}.
+     */
+    private final BitSet dirtyColumns = new BitSet();
+    private final BitSet changeCandidates = new BitSet();
+    private final BitSet blobColumns = getBlobColumns(meta());
 
     final PreparedStmtHolder delete = new PreparedStmtHolder() {
 
@@ -96,9 +129,18 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
 
     };
 
+    private final MaskedStatementHolder batchInsert =
+            PreparedStatementHolderFactory.createBatchInsertHolder(meta(), db(), conn());
+
     private Cursor xRec;
     private int recversion;
 
+    private int batchSize;
+    private Action batchAction;
+    private PreparedStatement batchStatement;
+    private final List<BatchEntry> batch = new ArrayList<>();
+    private Cursor batchBuffer;
+
     public Cursor(CallContext context) {
         super(context);
         CursorGetHelper.CursorGetHelperBuilder cghb = new CursorGetHelper.CursorGetHelperBuilder();
@@ -108,7 +150,9 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
                 .withTableName(_objectName());
 
         getHelper = cghb.build();
+        insert = PreparedStatementHolderFactory.createInsertHolder(meta(), db(), conn(), getHelper.getFields());
         inFilterHolder = new InFilterHolder(this);
+        rowCache = context.getCelesta().getRowCache().getTableCache(meta());
     }
 
     public Cursor(CallContext context, Set<String> fields) {
@@ -122,7 +166,11 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
                 .withFields(fieldsForStatement);
 
         getHelper = cghb.build();
+        insert = PreparedStatementHolderFactory.createInsertHolder(meta(), db(), conn(), getHelper.getFields());
         inFilterHolder = new InFilterHolder(this);
+        // the cached records are complete
+        rowCache = fieldsForStatement.isEmpty()
+                ? context.getCelesta().getRowCache().getTableCache(meta()) : null;
     }
 
     @Override
@@ -145,13 +193,27 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
         if (xRec != null) {
             xRec.close();
         }
-        closeStatements(getHelper.getHolder(), insert, delete, update);
+        // pending batch is discarded: the cursor is closed together with its transaction
+        discardBatch();
+        batchSize = 0;
+        if (batchBuffer != null) {
+            batchBuffer.close();
+        }
+        closeStatements(getHelper.getHolder(), insert, delete, batchInsert);
+        updates.values().forEach(PreparedStmtHolder::close);
+        updates.clear();
+        update = null;
+        getHelper.closeGetAll();
     }
 
     /**
      * Осуществляет вставку курсора в БД.
      */
     public final void insert() {
+        if (isBatchMode()) {
+            addInsertToBatch();
+            return;
+        }
         if (!tryInsert()) {
             StringBuilder sb = new StringBuilder();
             for (Object value : _currentKeyValues()) {
@@ -168,48 +230,27 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
      * Осуществляет вставку курсора в БД.
      */
     public final boolean tryInsert() {
+        checkNotBatchMode("tryInsert");
         if (!canInsert()) {
             throw new PermissionDeniedException(callContext(), meta(), Action.INSERT);
         }
 
         preInsert();
-        //TODO: одно из самых нуждающихся в переделке мест.
-        // на один insert--2 select-а, что вызывает справедливое возмущение тех, кто смотрит логи
-        // 1) Если у нас автоинкремент и автоинкрементное поле в None, то первый select не нужен
-        // 2) Хорошо бы результат инсерта выдавать в одной операции как resultset
-         PreparedStatement g = getHelper.prepareGet(recversion, _currentKeyValues());
+        PreparedStatement ins = insert.getStatement(getCurrentValuesView(), recversion);
         try {
-            ResultSet rs = g.executeQuery();
+            // The stored row is returned by the insert statement itself where the adaptor supports it,
+            // duplicate primary key is detected without a preliminary select.
+            final ResultSet rs;
             try {
-                if (rs.next()) {
-                    getXRec()._parseResult(rs);
-                    /*
-                     * transmit recversion from xRec to rec for possible future
-                     * record update
-                     */
-                    if (getRecversion() == 0) {
-                        setRecversion(xRec.getRecversion());
-                    }
+                rs = db().executeInsertReturning(ins);
+            } catch (SQLException e) {
+                if (isIntegrityConstraintViolation(e) && getExistingRecord(e)) {
                     return false;
                 }
-            } finally {
-                rs.close();
+                throw e;
             }
 
-            PreparedStatement ins = insert.getStatement(_currentValues(), recversion);
-
-            ILoggingManager loggingManager = callContext().getLoggingManager();
-            if (ins.execute()) {
-                loggingManager.log(this, Action.INSERT);
-                ResultSet ret = ins.getResultSet();
-                ret.next();
-                int id = ret.getInt(1);
-                _setAutoIncrement(id);
-                ret.close();
-            } else {
-                // TODO: get rid of "getCurrentIdent" call where possible
-                // e. g. using INSERT.. OUTPUT clause for MSSQL
-                loggingManager.log(this, Action.INSERT);
+            if (rs == null) {
                 for (Column c : meta().getColumns().values())
                     if (c instanceof IntegerColumn) {
                         IntegerColumn ic = (IntegerColumn) c;
@@ -218,10 +259,24 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
                             break;
                         }
                     }
-                }
-
                 getHelper.internalGet(this::_parseResultInternal, Optional.of(this::initXRec),
                         recversion, _currentKeyValues());
+            } else {
+                try {
+                    if (!rs.next()) {
+                        getExistingRecord(null);
+                        return false;
+                    }
+                    _parseResultInternal(rs, getHelper.getProjection());
+                    initXRec();
+                } finally {
+                    rs.close();
+                }
+            }
+            invalidateCachedRecord();
+
+            ILoggingManager loggingManager = callContext().getLoggingManager();
+            loggingManager.log(this, Action.INSERT);
             postInsert();
         } catch (SQLException e) {
             throw new CelestaException(e.getMessage());
@@ -229,11 +284,57 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
         return true;
     }
 
+    private static boolean isIntegrityConstraintViolation(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith(INTEGRITY_CONSTRAINT_VIOLATION);
+    }
+
+    /**
+     * Reads the record with the current primary key into xRec after a failed insert.
+     *
+     * @param insertError
+     *            the error of insert, if any. It is rethrown if the record cannot be read.
+     * @return true if the record exists.
+     */
+    private boolean getExistingRecord(SQLException insertError) throws SQLException {
+        PreparedStatement g = getHelper.prepareGet(recversion, _currentKeyValues());
+        final ResultSet rs;
+        try {
+            rs = g.executeQuery();
+        } catch (SQLException e) {
+            if (insertError == null) {
+                throw e;
+            }
+            insertError.addSuppressed(e);
+            throw insertError;
+        }
+        try {
+            if (rs.next()) {
+                getXRec()._parseResult(rs, getHelper.getProjection());
+                _markAllDirty();
+                /*
+                 * transmit recversion from xRec to rec for possible future
+                 * record update
+                 */
+                if (getRecversion() == 0) {
+                    setRecversion(xRec.getRecversion());
+                }
+                return true;
+            }
+        } finally {
+            rs.close();
+        }
+        return false;
+    }
+
     /**
      * Осуществляет сохранение содержимого курсора в БД, выбрасывая исключение в
      * случае, если запись с такими ключевыми полями не найдена.
      */
     public final void update() {
+        if (isBatchMode()) {
+            addUpdateToBatch();
+            return;
+        }
         if (!tryUpdate()) {
             String values = Arrays.stream(_currentKeyValues())
                     .map(String::valueOf)
@@ -249,50 +350,25 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
     // CHECKSTYLE:OFF for cyclomatic complexity
     public final boolean tryUpdate() {
         // CHECKSTYLE:ON
+        checkNotBatchMode("tryUpdate");
         if (!canModify()) {
             throw new PermissionDeniedException(callContext(), meta(), Action.MODIFY);
         }
 
         preUpdate();
-        PreparedStatement g = getHelper.prepareGet(recversion, _currentKeyValues());
         try {
-            ResultSet rs = g.executeQuery();
-            try {
-                if (!rs.next()) {
-                    return false;
-                }
-                // Прочитали из базы данных значения -- обновляем xRec
-                if (xRec == null) {
-                    xRec = (Cursor) _getBufferCopy(callContext(), null);
-                    // Вопрос на будущее: эта строчка должна быть здесь или за
-                    // фигурной скобкой? (проблема совместной работы над базой)
-                    xRec._parseResult(rs);
-                }
-            } finally {
-                rs.close();
+            // The record version check rejects update of a record modified since it has been read,
+            // so the record read before is not read once again: its absence is seen by the update count.
+            boolean read = xRec == null || !meta().isVersioned();
+            if (read && !readXRecForUpdate()) {
+                return false;
             }
 
-            Object[] values = _currentValues();
-            Object[] xValues = getXRec()._currentValues();
-            // Маска: true для тех случаев, когда поле не было изменено
-            boolean[] myMask = new boolean[values.length];
-            boolean[] myNullsMask = new boolean[values.length];
-            boolean notChanged = true;
-            for (int i = 0; i < values.length; i++) {
-                myMask[i] = compareValues(values[i], xValues[i]);
-                notChanged &= myMask[i];
-                myNullsMask[i] = values[i] == null;
-            }
+            Object[] values = getCurrentValuesView();
             // Если ничего не изменилось -- выполнять дальнейшие действия нет
             // необходимости
-            if (notChanged) {
-                return true;
-            }
-
-            if (!(Arrays.equals(myMask, updateMask) && Arrays.equals(myNullsMask, nullUpdateMask))) {
-                update.close();
-                updateMask = myMask;
-                nullUpdateMask = myNullsMask;
+            if (!prepareUpdateMasks(values, false)) {
+                return read || readXRecForUpdate();
             }
 
             // for a completely new record
@@ -302,7 +378,10 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
 
             PreparedStatement upd = update.getStatement(values, recversion);
 
-            upd.execute();
+            if (upd.executeUpdate() == 0) {
+                return false;
+            }
+            invalidateCachedRecord();
             ILoggingManager loggingManager = callContext().getLoggingManager();
             loggingManager.log(this, Action.MODIFY);
             if (meta().isVersioned()) {
@@ -325,6 +404,87 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
         return true;
     }
 
+    /**
+     * Reads the record with the current primary key from the database and
+     * initializes xRec with it, if xRec is not initialized yet.
+     *
+     * @return false if the record does not exist.
+     */
+    private boolean readXRecForUpdate() throws SQLException {
+        PreparedStatement g = getHelper.prepareGet(recversion, _currentKeyValues());
+        ResultSet rs = g.executeQuery();
+        try {
+            if (!rs.next()) {
+                return false;
+            }
+            // Прочитали из базы данных значения -- обновляем xRec
+            if (xRec == null) {
+                xRec = (Cursor) _getBufferCopy(callContext(), null);
+                // Вопрос на будущее: эта строчка должна быть здесь или за
+                // фигурной скобкой? (проблема совместной работы над базой)
+                xRec._parseResult(rs, getHelper.getProjection());
+                _markAllDirty();
+            }
+        } finally {
+            rs.close();
+        }
+        return true;
+    }
+
+    /**
+     * Computes update masks of the record against xRec and chooses the update
+     * statement for them. Only the dirty columns of the record and xRec, and
+     * BLOBs (which are modified in place) are compared.
+     *
+     * @param values
+     *            current values of the record
+     * @param flushOnChange
+     *            whether the pending batch must be flushed before another
+     *            update statement is used
+     * @return false if nothing has been changed in the record.
+     */
+    private boolean prepareUpdateMasks(Object[] values, boolean flushOnChange) {
+        Cursor x = getXRec();
+        Object[] xValues = x.getCurrentValuesView();
+        changeCandidates.clear();
+        changeCandidates.or(dirtyColumns);
+        changeCandidates.or(x.dirtyColumns);
+        changeCandidates.or(blobColumns);
+        updateKey.clear();
+        for (int i = changeCandidates.nextSetBit(0); i >= 0; i = changeCandidates.nextSetBit(i + 1)) {
+            if (!compareValues(values[i], xValues[i])) {
+                updateKey.set(2 * i);
+                if (values[i] == null) {
+                    updateKey.set(2 * i + 1);
+                }
+            }
+        }
+        if (updateKey.isEmpty()) {
+            return false;
+        }
+
+        PreparedStmtHolder holder = updates.get(updateKey);
+        if (holder == null || holder != update) {
+            if (flushOnChange) {
+                flushBatch();
+            }
+            if (holder == null) {
+                // Маска: true для тех случаев, когда поле не было изменено
+                boolean[] mask = new boolean[values.length];
+                boolean[] nullsMask = new boolean[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    mask[i] = !updateKey.get(2 * i);
+                    nullsMask[i] = updateKey.get(2 * i + 1);
+                }
+                holder = PreparedStatementHolderFactory.createUpdateHolder(
+                        meta(), db(), conn(), () -> mask, () -> nullsMask);
+                updates.put((BitSet) updateKey.clone(), holder);
+            }
+            update = holder;
+        }
+        return true;
+    }
+
     /**
      * Сравнивает значения для того, чтобы определить: что именно было изменено
      * в записи. Возвращает true, если значения изменены не были.
@@ -351,12 +511,17 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
         if (!canDelete()) {
             throw new PermissionDeniedException(callContext(), meta(), Action.DELETE);
         }
+        if (isBatchMode()) {
+            addDeleteToBatch();
+            return;
+        }
 
-        PreparedStatement del = delete.getStatement(_currentValues(), recversion);
+        PreparedStatement del = delete.getStatement(getCurrentValuesView(), recversion);
 
         try {
             preDelete();
             del.execute();
+            invalidateCachedRecord();
             ILoggingManager loggingManager = callContext().getLoggingManager();
             loggingManager.log(this, Action.DELETE);
             this.initXRec();
@@ -366,12 +531,304 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
         }
     }
 
+    /**
+     * Switches the cursor to the batch mode. In the batch mode {@link #insert()},
+     * {@link #update()} and {@link #delete()} do not execute statements one by one,
+     * but add records to a JDBC batch which is executed when it reaches the given
+     * size, when the kind of operation or the nulls/update mask of the record changes,
+     * or when {@link #flushBatch()} is called.
+     * <p>
+     * Pre-triggers are fired when the record is added to the batch, logging and
+     * post-triggers are fired in the order of records after the batch is executed.
+     * Pending records are not visible for reading until the batch is flushed, values of
+     * auto-incremented fields are not read back after insertion. Pending records are
+     * discarded when the cursor is closed.
+     *
+     * @param size
+     *            maximal count of records in a batch.
+     */
+    public final void beginBatch(int size) {
+        if (size < 1) {
+            throw new CelestaException("Batch size must be positive, got %d.", size);
+        }
+        flushBatch();
+        batchSize = size;
+    }
+
+    /**
+     * Executes pending records of the batch. The cursor stays in the batch mode.
+     *
+     * @throws CelestaException
+     *             if any of the records has failed. The message lists primary keys
+     *             and reasons of failed records. Logging and post-triggers are not
+     *             fired for the records of the failed batch, the transaction should
+     *             be rolled back.
+     */
+    public final void flushBatch() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        final Action action = batchAction;
+        final List<BatchEntry> entries = new ArrayList<>(batch);
+        final PreparedStatement stmt = batchStatement;
+        // the statement keeps its batch until it is executed
+        resetBatch();
+
+        int[] counts;
+        SQLException error = null;
+        try {
+            counts = stmt.executeBatch();
+        } catch (BatchUpdateException e) {
+            counts = e.getUpdateCounts() == null ? new int[0] : e.getUpdateCounts();
+            error = e;
+        } catch (SQLException e) {
+            counts = new int[0];
+            error = e;
+        }
+
+        List<String> failures = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            String reason = getBatchFailureReason(action, i < counts.length ? counts[i] : null, error);
+            if (reason != null) {
+                failures.add(String.format("(%s): %s", Arrays.stream(entries.get(i).keyValues)
+                        .map(String::valueOf)
+                        .collect(Collectors.joining(", ")), reason));
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new CelestaException("Batch %s of %s.%s failed for %d of %d record(s): %s",
+                    action, meta().getGrain().getName(), meta().getName(),
+                    failures.size(), entries.size(), String.join("; ", failures));
+        }
+
+        if (batchBuffer == null) {
+            batchBuffer = (Cursor) _getBufferCopy(callContext(), null);
+        }
+        ILoggingManager loggingManager = callContext().getLoggingManager();
+        for (BatchEntry entry : entries) {
+            entry.restore(batchBuffer);
+            loggingManager.log(batchBuffer, action);
+            if (action == Action.MODIFY && meta().isVersioned()) {
+                batchBuffer.recversion++;
+            }
+            batchBuffer.initXRec();
+            switch (action) {
+                case INSERT:
+                    batchBuffer.postInsert();
+                    break;
+                case MODIFY:
+                    batchBuffer.postUpdate();
+                    break;
+                default:
+                    batchBuffer.postDelete();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Executes pending records of the batch and switches the cursor back
+     * to the ordinary mode.
+     */
+    public final void endBatch() {
+        try {
+            flushBatch();
+        } finally {
+            batchSize = 0;
+        }
+    }
+
+    /**
+     * Whether the cursor is in the batch mode.
+     */
+    public final boolean isBatchMode() {
+        return batchSize > 0;
+    }
+
+    private void checkNotBatchMode(String method) {
+        if (isBatchMode()) {
+            throw new CelestaException("%s is not supported in batch mode of %s.%s cursor.",
+                    method, meta().getGrain().getName(), meta().getName());
+        }
+    }
+
+    private void addInsertToBatch() {
+        if (!canInsert()) {
+            throw new PermissionDeniedException(callContext(), meta(), Action.INSERT);
+        }
+
+        preInsert();
+        Object[] values = _currentValues();
+        // a new statement is prepared for another nulls mask
+        if (batchAction != Action.INSERT || !batchInsert.isReusableFor(values)) {
+            flushBatch();
+        }
+        addToBatch(Action.INSERT, batchInsert.getStatement(values, recversion), values, values);
+        initXRec();
+    }
+
+    private void addUpdateToBatch() {
+        if (!canModify()) {
+            throw new PermissionDeniedException(callContext(), meta(), Action.MODIFY);
+        }
+
+        preUpdate();
+        try {
+            // the record is read only if it has not been read before
+            if (xRec == null && !readXRecForUpdate()) {
+                throw new CelestaException("Record %s (%s) does not exist.", _objectName(),
+                        Arrays.stream(_currentKeyValues()).map(String::valueOf).collect(Collectors.joining(", ")));
+            }
+        } catch (SQLException e) {
+            throw new CelestaException(e.getMessage());
+        }
+
+        Object[] values = _currentValues();
+        if (batchAction != Action.MODIFY) {
+            flushBatch();
+        }
+        if (!prepareUpdateMasks(values, true)) {
+            return;
+        }
+        // for a completely new record
+        if (getRecversion() == 0) {
+            setRecversion(xRec.getRecversion());
+        }
+
+        addToBatch(Action.MODIFY, update.getStatement(values, recversion), values, xRec._currentValues());
+        if (meta().isVersioned()) {
+            recversion++;
+        }
+        initXRec();
+    }
+
+    private void addDeleteToBatch() {
+        preDelete();
+        Object[] values = _currentValues();
+        if (batchAction != Action.DELETE) {
+            flushBatch();
+        }
+        Object[] xValues = xRec == null ? null : xRec._currentValues();
+        addToBatch(Action.DELETE, delete.getStatement(values, recversion), values, xValues);
+        initXRec();
+    }
+
+    private void addToBatch(Action action, PreparedStatement stmt, Object[] values, Object[] xValues) {
+        try {
+            stmt.addBatch();
+        } catch (SQLException e) {
+            throw new CelestaException(e.getMessage());
+        }
+        invalidateCachedRecord();
+        batchAction = action;
+        batchStatement = stmt;
+        batch.add(new BatchEntry(values, xValues, recversion, _currentKeyValues()));
+        if (batch.size() >= batchSize) {
+            flushBatch();
+        }
+    }
+
+    private void discardBatch() {
+        if (batchStatement != null) {
+            try {
+                batchStatement.clearBatch();
+            } catch (SQLException e) {
+                // the statement is closed, nothing to clear
+            }
+        }
+        resetBatch();
+    }
+
+    private void resetBatch() {
+        batch.clear();
+        batchAction = null;
+        batchStatement = null;
+    }
+
+    private static String getBatchFailureReason(Action action, Integer count, SQLException error) {
+        if (count == null) {
+            return error == null ? "not executed" : error.getMessage();
+        } else if (count == Statement.EXECUTE_FAILED) {
+            return error == null ? "failed" : error.getMessage();
+        } else if (count == 0 && action != Action.INSERT) {
+            return "record does not exist";
+        }
+        return null;
+    }
+
+    /**
+     * Snapshot of a record added to the batch.
+     */
+    private static final class BatchEntry {
+        private final Object[] values;
+        private final Object[] xValues;
+        private final int recversion;
+        private final Object[] keyValues;
+
+        BatchEntry(Object[] values, Object[] xValues, int recversion, Object[] keyValues) {
+            this.values = values;
+            this.xValues = xValues;
+            this.recversion = recversion;
+            this.keyValues = keyValues;
+        }
+
+        void restore(Cursor c) {
+            setValues(c, values);
+            c.setRecversion(recversion);
+            Cursor x = c.getXRec();
+            if (xValues == null) {
+                x.clear();
+            } else {
+                setValues(x, xValues);
+                x.setRecversion(recversion);
+            }
+        }
+
+        private static void setValues(Cursor c, Object[] values) {
+            int i = 0;
+            for (String name : c.meta().getColumns().keySet()) {
+                c._setFieldValue(name, values[i++]);
+            }
+        }
+    }
+
     private void initXRec() {
         if (xRec == null) {
             xRec = (Cursor) _getBufferCopy(callContext(), null);
         } else {
             xRec.copyFieldsFrom(this);
         }
+        dirtyColumns.clear();
+        xRec.dirtyColumns.clear();
+    }
+
+    /**
+     * Marks the column as possibly modified since the record was read.
+     * Called by the generated setters.
+     *
+     * @param column index of the column
+     */
+    protected final void _markDirty(int column) {
+        dirtyColumns.set(column);
+    }
+
+    /**
+     * Marks all the columns as possibly modified since the record was read.
+     */
+    protected final void _markAllDirty() {
+        dirtyColumns.set(0, meta().getColumns().size());
+    }
+
+    private static BitSet getBlobColumns(Table meta) {
+        BitSet result = new BitSet();
+        int i = 0;
+        for (Column c : meta.getColumns().values()) {
+            if (c instanceof BinaryColumn) {
+                result.set(i);
+            }
+            i++;
+        }
+        return result;
     }
 
     /**
@@ -381,13 +838,18 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
         if (!canDelete()) {
             throw new PermissionDeniedException(callContext(), meta(), Action.DELETE);
         }
-        PreparedStatement stmt = deleteAll.getStatement(_currentValues(), recversion);
+        // pending records must reach the database before they are deleted by filter
+        flushBatch();
+        PreparedStatement stmt = deleteAll.getStatement(getCurrentValuesView(), recversion);
         try {
             try {
                 stmt.executeUpdate();
             } finally {
                 deleteAll.close();
             }
+            if (rowCache != null) {
+                rowCache.invalidateAll(callContext());
+            }
         } catch (SQLException e) {
             throw new CelestaException(e.getMessage());
         }
@@ -422,8 +884,7 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
     public final boolean tryGet(Object... values) {
         if (!canRead())
             throw new PermissionDeniedException(callContext(), meta(), Action.READ);
-        return getHelper.internalGet(this::_parseResultInternal, Optional.of(this::initXRec),
-                recversion, values);
+        return getRecord(values);
     }
 
     /**
@@ -433,8 +894,137 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
     public final boolean tryGetCurrent() {
         if (!canRead())
             throw new PermissionDeniedException(callContext(), meta(), Action.READ);
-        return getHelper.internalGet(this::_parseResultInternal, Optional.of(this::initXRec),
-                recversion, _currentKeyValues());
+        return getRecord(_currentKeyValues());
+    }
+
+    /**
+     * Reads the record by primary key from the cache, if the table is cached,
+     * or from the database.
+     */
+    private boolean getRecord(Object[] values) {
+        if (rowCache == null) {
+            return getHelper.internalGet(this::_parseResultInternal, Optional.of(this::initXRec),
+                    recversion, values);
+        }
+        if (meta().getPrimaryKey().size() != values.length) {
+            throw new CelestaException("Invalid number of 'get' arguments for '%s': expected %d, provided %d.",
+                    _objectName(), meta().getPrimaryKey().size(), values.length);
+        }
+        RowCache.CachedRecord cached = rowCache.get(callContext(), values);
+        if (cached != null) {
+            readRecord(cached);
+            return true;
+        }
+        long stamp = rowCache.getStamp();
+        boolean result = getHelper.internalGet(this::_parseResultInternal, Optional.of(this::initXRec),
+                recversion, values);
+        if (result) {
+            rowCache.put(callContext(), stamp, _currentKeyValues(), getCurrentValuesView(), recversion);
+        }
+        return result;
+    }
+
+    private void readRecord(RowCache.CachedRecord record) {
+        int i = 0;
+        for (String name : meta().getColumns().keySet()) {
+            _setFieldValue(name, record.getValue(i++));
+        }
+        setRecversion(record.getRecversion());
+        initXRec();
+    }
+
+    /**
+     * Reads the records with the given primary keys by a few queries instead of
+     * a query per key (as {@link #tryGet(Object...)} does).
+     * <p>
+     * For every record found, in the order of the keys, the record is read into
+     * the cursor buffer and the action is called with its snapshot. The keys of
+     * absent records are skipped.
+     *
+     * @param keys   values of the primary key fields of the records
+     * @param action action on the records
+     */
+    public final void getAll(Collection<Object[]> keys, Consumer<? super CursorRow> action) {
+        if (!canRead())
+            throw new PermissionDeniedException(callContext(), meta(), Action.READ);
+        int keySize = meta().getPrimaryKey().size();
+        for (Object[] key : keys) {
+            if (key.length != keySize)
+                throw new CelestaException("Invalid number of 'get' arguments for '%s': expected %d, provided %d.",
+                        _objectName(), keySize, key.length);
+        }
+        Function<BasicCursor, CursorRow> snapshotter = CursorRow.snapshotter(meta());
+        int maxKeyCount = getHelper.getMaxKeyCount();
+        List<Object[]> chunk = new ArrayList<>(Math.min(keys.size(), maxKeyCount));
+        for (Object[] key : keys) {
+            chunk.add(key);
+            if (chunk.size() == maxKeyCount) {
+                getChunk(chunk, snapshotter, action);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            getChunk(chunk, snapshotter, action);
+        }
+    }
+
+    private void getChunk(List<Object[]> keys, Function<BasicCursor, CursorRow> snapshotter,
+                          Consumer<? super CursorRow> action) {
+        Map<List<Object>, RowCache.CachedRecord> records = new HashMap<>();
+        List<Object[]> toRead = keys;
+        if (rowCache != null) {
+            toRead = new ArrayList<>();
+            for (Object[] key : keys) {
+                RowCache.CachedRecord cached = rowCache.get(callContext(), key);
+                if (cached == null) {
+                    toRead.add(key);
+                } else {
+                    records.put(Arrays.asList(key), cached);
+                }
+            }
+        }
+        boolean unmatched = false;
+        if (!toRead.isEmpty()) {
+            long stamp = rowCache == null ? 0 : rowCache.getStamp();
+            Set<List<Object>> requested = new HashSet<>();
+            for (Object[] key : toRead) {
+                requested.add(Arrays.asList(key));
+            }
+            int[] unmatchedCount = new int[1];
+            getHelper.internalGetAll((rs, projection) -> {
+                _parseResultInternal(rs, projection);
+                Object[] keyValues = _currentKeyValues();
+                Object[] values = getCurrentValuesView();
+                List<Object> key = Arrays.asList(keyValues);
+                records.put(key, new RowCache.CachedRecord(values, recversion));
+                if (!requested.contains(key)) {
+                    unmatchedCount[0]++;
+                }
+                if (rowCache != null) {
+                    rowCache.put(callContext(), stamp, keyValues, values, recversion);
+                }
+            }, toRead);
+            unmatched = unmatchedCount[0] > 0;
+        }
+        for (Object[] key : keys) {
+            RowCache.CachedRecord record = records.get(Arrays.asList(key));
+            if (record == null) {
+                // The database may have matched a row with a key which is not equal to the row's key
+                // (e.g. due to collation or type conversion), such a key is read alone.
+                if (!unmatched || !getRecord(key)) {
+                    continue;
+                }
+            } else {
+                readRecord(record);
+            }
+            action.accept(snapshotter.apply(this));
+        }
+    }
+
+    private void invalidateCachedRecord() {
+        if (rowCache != null) {
+            rowCache.invalidate(callContext(), _currentKeyValues());
+        }
     }
 
 
@@ -474,7 +1064,7 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
         PreparedStatement stmt = db().getOneFieldStatement(conn(), c, w.getWhere());
         int i = 1;
         w.programParams(program, db());
-        Object[] rec = _currentValues();
+        Object[] rec = getCurrentValuesView();
         for (ParameterSetter f : program) {
             f.execute(stmt, i++, rec, recversion);
         }
@@ -508,6 +1098,85 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
         return result;
     }
 
+    /**
+     * Returns a parallel stream of snapshots of the records of the filtered set.
+     * <p>
+     * The values of the first primary key column between the least and the
+     * greatest ones of the set are split into at most {@code partitions}
+     * disjoint ranges of equal length, so the ranges hold about the same number
+     * of records if the values are distributed evenly. Each range is read by
+     * a copy of the cursor with setRange(...) on the column in its own call context ({@link CallContext#getCopy()}),
+     * i.e. with its own connection, in the fork/join pool of the stream.
+     * Filters and ordering of this cursor apply to every range (so the order
+     * of the whole stream is kept only for the primary key ordering), the
+     * buffer of this cursor is not changed.
+     * <p>
+     * The set is read as a whole (in one call context copy) if the first
+     * primary key column is not of INT type, it is filtered or limit(...) is set.
+     *
+     * @param partitions
+     *            maximal number of ranges.
+     */
+    public final Stream<CursorRow> parallelStream(int partitions) {
+        if (partitions < 1)
+            throw new CelestaException("Invalid number of partitions: %d, should be positive", partitions);
+        if (!canRead())
+            throw new PermissionDeniedException(callContext(), meta(), Action.READ);
+        return getPartitionRanges(partitions).parallelStream().flatMap(this::streamPartition);
+    }
+
+    /**
+     * Finds ranges of the first primary key column values, an empty array
+     * stands for the whole set.
+     */
+    private List<int[]> getPartitionRanges(int partitions) {
+        Column keyColumnMeta = meta().getPrimaryKey().values().iterator().next();
+        String keyColumn = keyColumnMeta.getName();
+        if (partitions == 1 || !(keyColumnMeta instanceof IntegerColumn)
+                || getFilters().containsKey(keyColumn) || isLimited())
+            return Collections.singletonList(new int[0]);
+
+        int keyIndex = meta().getColumnIndex(keyColumn);
+        List<int[]> result = new ArrayList<>(partitions);
+        try (Cursor c = (Cursor) _getBufferCopy(callContext(), Collections.singletonList(keyColumn))) {
+            c.copyFiltersFrom(this);
+            c.orderBy(keyColumn);
+            // the least and the greatest values are read by the primary key index
+            if (!c.tryFirst())
+                return result;
+            long min = (Integer) c._currentValues()[keyIndex];
+            if (!c.tryLast())
+                throw new CelestaException("Record set of %s changed while splitting it into partitions",
+                        c._objectName());
+            long max = (Integer) c._currentValues()[keyIndex];
+            long length = max - min + 1;
+            long from = min;
+            for (int i = 1; i <= partitions; i++) {
+                long to = i == partitions ? max : min + length * i / partitions - 1;
+                if (to >= from) {
+                    result.add(new int[] {(int) from, (int) to});
+                    from = to + 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    private Stream<CursorRow> streamPartition(int[] range) {
+        CallContext context = callContext().getCopy();
+        try {
+            Cursor c = (Cursor) _getBufferCopy(context, fields.isEmpty() ? null : new ArrayList<>(fields));
+            c.copyFiltersFrom(this);
+            c.copyOrderFrom(this);
+            if (range.length > 0)
+                c.setRange(meta().getPrimaryKey().keySet().iterator().next(), range[0], range[1]);
+            return c.stream().onClose(context::close);
+        } catch (RuntimeException e) {
+            context.close();
+            throw e;
+        }
+    }
+
     /**
      * Возвращает максимальную длину текстового поля (если она определена).
      *
@@ -564,6 +1233,11 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
             }
     }
 
+    @Override
+    final boolean isOrderUnique() {
+        return true;
+    }
+
     @Override
     public final void clear() {
         super.clear();
@@ -629,8 +1303,8 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
     }
 
     @Override
-    protected void _parseResult(ResultSet rs) throws SQLException {
-        this._parseResultInternal(rs);
+    protected void _parseResult(ResultSet rs, boolean[] projection) throws SQLException {
+        this._parseResultInternal(rs, projection);
         this.initXRec();
     }
 
@@ -669,5 +1343,5 @@ public abstract class Cursor extends BasicCursor implements InFilterSupport {
 
     protected abstract void _setAutoIncrement(int val);
 
-    protected abstract void _parseResultInternal(ResultSet rs) throws SQLException;
+    protected abstract void _parseResultInternal(ResultSet rs, boolean[] projection) throws SQLException;
 }
@@ -4,6 +4,7 @@ import ru.curs.celesta.CelestaException;
 import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
 import ru.curs.celesta.dbutils.stmt.PreparedStatementHolderFactory;
 import ru.curs.celesta.dbutils.stmt.PreparedStmtHolder;
+import ru.curs.celesta.score.DataGrainElement;
 import ru.curs.celesta.score.TableElement;
 
 import java.sql.Connection;
@@ -11,6 +12,10 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -21,7 +26,7 @@ class CursorGetHelper {
 
   @FunctionalInterface
   interface ParseResultFunction {
-    void apply(ResultSet rs) throws SQLException;
+    void apply(ResultSet rs, boolean[] projection) throws SQLException;
   }
 
   @FunctionalInterface
@@ -34,9 +39,11 @@ class CursorGetHelper {
   private final TableElement meta;
   private final String tableName;
   private final Set<String> fields;
+  private final boolean[] projection;
 
   private final PreparedStmtHolder get;
-
+  // statements reading records by a number of keys, per number of the keys
+  private final Map<Integer, PreparedStmtHolder> getAll = new HashMap<>();
 
 
   public CursorGetHelper(DBAdaptor db, Connection conn, TableElement meta,
@@ -45,9 +52,11 @@ class CursorGetHelper {
     this.conn = conn;
     this.meta = meta;
     this.tableName = tableName;
-    this.fields = fields;
+    // the cursor's set of fields is modified on sorting
+    this.fields = fields.isEmpty() ? fields : new HashSet<>(fields);
+    this.projection = BasicCursor.getProjection((DataGrainElement) meta, fields);
 
-    this.get = PreparedStatementHolderFactory.createGetHolder(meta, db, conn);
+    this.get = PreparedStatementHolderFactory.createGetHolder(meta, db, conn, fields);
   }
 
 
@@ -55,6 +64,20 @@ class CursorGetHelper {
     return get;
   }
 
+  /**
+   * Returns the fields read by the statements of the helper, empty set means all fields.
+   */
+  Set<String> getFields() {
+    return fields;
+  }
+
+  /**
+   * Returns the mask of the columns read by the statements of the helper.
+   */
+  boolean[] getProjection() {
+    return projection;
+  }
+
 
   final boolean internalGet(ParseResultFunction parseResultFunc, Optional<ParseResultCallBack> initXRecFunc,
                             int recversion, Object... values) {
@@ -63,7 +86,7 @@ class CursorGetHelper {
     try (ResultSet rs = g.executeQuery()){
         boolean result = rs.next();
         if (result) {
-          parseResultFunc.apply(rs);
+          parseResultFunc.apply(rs, projection);
           initXRecFunc.ifPresent(ParseResultCallBack::apply);
         }
         return result;
@@ -74,6 +97,48 @@ class CursorGetHelper {
   }
 
 
+  /**
+   * Returns maximal number of the keys read by {@link #internalGetAll} at once.
+   */
+  final int getMaxKeyCount() {
+    return Integer.highestOneBit(Math.max(db.getMaxKeyCountPerQuery(meta.getPrimaryKey().size()), 1));
+  }
+
+  /**
+   * Reads the records with the keys by one query.
+   * <p>
+   * Number of the keys is rounded up to a power of two (repeating the last key),
+   * so that only a few statements are prepared.
+   *
+   * @param parseResultFunc  called for every record read
+   * @param keys             values of the primary keys, not more than {@link #getMaxKeyCount()}
+   */
+  final void internalGetAll(ParseResultFunction parseResultFunc, List<Object[]> keys) {
+    int keyCount = Integer.highestOneBit(keys.size());
+    if (keyCount < keys.size())
+      keyCount <<= 1;
+    int keySize = meta.getPrimaryKey().size();
+    Object[] params = new Object[keyCount * keySize];
+    for (int i = 0; i < keyCount; i++) {
+      System.arraycopy(keys.get(Math.min(i, keys.size() - 1)), 0, params, i * keySize, keySize);
+    }
+    PreparedStatement g = getAll.computeIfAbsent(keyCount,
+        n -> PreparedStatementHolderFactory.createGetAllHolder(meta, db, conn, fields, n))
+        .getStatement(params, 0);
+    try (ResultSet rs = g.executeQuery()) {
+      while (rs.next()) {
+        parseResultFunc.apply(rs, projection);
+      }
+    } catch (SQLException e) {
+      throw new CelestaException(e.getMessage());
+    }
+  }
+
+  final void closeGetAll() {
+    getAll.values().forEach(PreparedStmtHolder::close);
+    getAll.clear();
+  }
+
   final PreparedStatement prepareGet(int recversion, Object... values) {
     if (meta.getPrimaryKey().size() != values.length)
       throw new CelestaException("Invalid number of 'get' arguments for '%s': expected %d, provided %d.",
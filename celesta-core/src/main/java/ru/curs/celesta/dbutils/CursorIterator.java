@@ -14,6 +14,18 @@ public class CursorIterator<T extends BasicCursor> implements Iterator<T> {
         this.hasResults = cursor.tryFindSet();
     }
 
+    /**
+     * Creates iterator which reads the record set in chunks
+     * (see {@link BasicCursor#tryFindSet(int)}).
+     *
+     * @param cursor  cursor to iterate
+     * @param chunkSize  maximal number of records read by one query
+     */
+    public CursorIterator(T cursor, int chunkSize) {
+        this.cursor = cursor;
+        this.hasResults = cursor.tryFindSet(chunkSize);
+    }
+
     @Override
     public boolean hasNext() {
         if (!this.hasResults) {
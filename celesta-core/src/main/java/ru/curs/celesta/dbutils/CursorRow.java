@@ -0,0 +1,102 @@
+package ru.curs.celesta.dbutils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.score.DataGrainElement;
+
+/**
+ * Immutable snapshot of the field values of a cursor record.
+ * <p>
+ * Values themselves are not copied, so mutable values (e.g. dates) must not
+ * be changed.
+ */
+public final class CursorRow {
+
+    private final Map<String, Integer> columnIndices;
+    private final Object[] values;
+
+    private CursorRow(Map<String, Integer> columnIndices, Object[] values) {
+        this.columnIndices = columnIndices;
+        this.values = values;
+    }
+
+    /**
+     * Creates a function making snapshots of the current record of cursors
+     * of the same type. Column index is shared by all the snapshots.
+     *
+     * @param meta  cursor metadata
+     */
+    static Function<BasicCursor, CursorRow> snapshotter(DataGrainElement meta) {
+        Map<String, Integer> indices = new LinkedHashMap<>();
+        for (String name : meta.getColumns().keySet()) {
+            indices.put(name, indices.size());
+        }
+        Map<String, Integer> columnIndices = Collections.unmodifiableMap(indices);
+        return c -> new CursorRow(columnIndices, c._currentValues());
+    }
+
+    /**
+     * Returns value of the field.
+     *
+     * @param columnName  column name
+     */
+    public Object get(String columnName) {
+        Integer i = columnIndices.get(columnName);
+        if (i == null) {
+            throw new CelestaException("No column %s exists in the row.", columnName);
+        }
+        return values[i];
+    }
+
+    /**
+     * Returns value of the field by its index in the table.
+     *
+     * @param index  column index
+     */
+    public Object get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Column names in the table order.
+     */
+    public Set<String> getColumnNames() {
+        return columnIndices.keySet();
+    }
+
+    /**
+     * Returns a copy of the field values in the table order.
+     */
+    public Object[] getValues() {
+        return values.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CursorRow)) {
+            return false;
+        }
+        CursorRow other = (CursorRow) o;
+        return columnIndices.keySet().equals(other.columnIndices.keySet())
+                && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return BasicCursor.asCSVLine(values);
+    }
+}
@@ -272,7 +272,7 @@ public final class GridDriver {
 
     synchronized BigInteger getCursorOrdinal(BasicCursor c, Collection<String> fields) {
         int i = 0;
-        Object[] values = c._currentValues();
+        Object[] values = c.getCurrentValuesView();
         KeyEnumerator km;
         for (String cname : fields) {
             km = keyEnumerators.get(cname);
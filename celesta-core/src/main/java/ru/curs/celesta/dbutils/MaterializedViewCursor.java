@@ -72,6 +72,11 @@ public abstract class MaterializedViewCursor extends BasicCursor {
       }
   }
 
+  @Override
+  final boolean isOrderUnique() {
+    return true;
+  }
+
   /**
    * Осуществляет поиск записи по ключевым полям, выбрасывает исключение, если
    * запись не найдена.
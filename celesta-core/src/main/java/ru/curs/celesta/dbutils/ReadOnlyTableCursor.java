@@ -1,5 +1,6 @@
 package ru.curs.celesta.dbutils;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -10,9 +11,13 @@ import ru.curs.celesta.score.Table;
 
 /**
  * Курсор для таблиц, определённых только для чтения.
+ * <p>
+ * Если для таблицы задан снимок (см. {@link TableSnapshots}), наборы записей
+ * читаются из снимка в памяти, а из базы данных читаются только порядки сортировки.
  */
 public abstract class ReadOnlyTableCursor extends BasicCursor {
     private Table meta = null;
+    private boolean snapshotEnabled = true;
 
     public ReadOnlyTableCursor(CallContext context) {
         super(context);
@@ -51,4 +56,56 @@ public abstract class ReadOnlyTableCursor extends BasicCursor {
                 }
         }
     }
+
+    @Override
+    final boolean isOrderUnique() {
+        return !meta().getPrimaryKey().isEmpty();
+    }
+
+    @Override
+    final TableSnapshot getSnapshot() {
+        if (!snapshotEnabled || meta().getPrimaryKey().isEmpty())
+            return null;
+        return callContext().getCelesta().getTableSnapshots().get(meta(), this::readAllRows);
+    }
+
+    @Override
+    final List<Object[]> readSnapshotOrder() {
+        return readRows(true);
+    }
+
+    private List<Object[]> readAllRows() {
+        return readRows(false);
+    }
+
+    /**
+     * Reads values of all the rows from the database bypassing the snapshot.
+     *
+     * @param ordered whether the rows are read in the sort order of this cursor
+     */
+    private List<Object[]> readRows(boolean ordered) {
+        ReadOnlyTableCursor c = (ReadOnlyTableCursor) _getBufferCopy(callContext(), null);
+        try {
+            c.snapshotEnabled = false;
+            if (ordered)
+                c.copyOrderFrom(this);
+            List<Object[]> result = new ArrayList<>();
+            if (c.tryFindSet()) {
+                do {
+                    result.add(c._currentValues());
+                } while (c.nextInSet());
+            }
+            return result;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Перечитывает снимок таблицы из базы данных (если для таблицы задан снимок).
+     */
+    public final void reloadSnapshot() {
+        callContext().getCelesta().getTableSnapshots().reload(meta());
+        getSnapshot();
+    }
 }
@@ -0,0 +1,287 @@
+package ru.curs.celesta.dbutils;
+
+import ru.curs.celesta.CallContext;
+import ru.curs.celesta.score.Table;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of table records read by primary key ({@link Cursor#tryGet(Object...)}).
+ * <p>
+ * Records are cached only for the tables having the cache property in CelestaDoc,
+ * e.g. <code>&#47;** {"cache": 1000} *&#47;</code>, its value is the maximal count of
+ * cached records of the table, the least recently used records are evicted. The value
+ * can also be an object, e.g. <code>&#47;** {"cache": {"size": 1000, "ttl": 60}} *&#47;</code>,
+ * where ttl is the time to live of a cached record in seconds (0 if records do not expire,
+ * as for snapshots of {@link TableSnapshots}).
+ * <p>
+ * Records are invalidated when they are inserted, updated or deleted through cursors,
+ * and once again when the modifying transaction ends. Until then the cache is not used
+ * in the modifying call context for the table. Modifications made bypassing Celesta
+ * or by other Celesta instances are not seen by the cache until the record expires,
+ * but the record version check rejects update of a stale cached record, as it does
+ * for a record read long ago.
+ */
+public final class RowCache {
+
+    private final Map<Table, TableCache> tables = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Returns the cache of the table, or {@code null} if the table is not cached.
+     *
+     * @param table table
+     */
+    TableCache getTableCache(Table table) {
+        TableCache result = tables.computeIfAbsent(table, t -> new TableCache(t.getCacheSize(), t.getCacheTtl()));
+        return result.maxSize > 0 ? result : null;
+    }
+
+    /**
+     * Number of records found in the cache.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of records looked for in the cache, but not found.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Number of records evicted from the cache due to its size.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Number of records of the table in the cache.
+     *
+     * @param table table
+     */
+    public int size(Table table) {
+        TableCache tc = tables.get(table);
+        return tc == null ? 0 : tc.size();
+    }
+
+    /**
+     * Removes all records from the cache (e.g. after data has been modified bypassing Celesta).
+     */
+    public void clear() {
+        tables.values().forEach(TableCache::clear);
+    }
+
+    /**
+     * Makes a copy of a field value to be stored in (or taken from) the cache.
+     */
+    static Object copyValue(Object value) {
+        if (value instanceof Date) {
+            return ((Date) value).clone();
+        } else if (value instanceof BLOB) {
+            // BLOBs are not read by get
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * Cached record.
+     */
+    static final class CachedRecord {
+        private final Object[] values;
+        private final int recversion;
+        private final long expiresAt;
+
+        CachedRecord(Object[] values, int recversion) {
+            this(values, recversion, Long.MAX_VALUE);
+        }
+
+        CachedRecord(Object[] values, int recversion, long expiresAt) {
+            this.values = new Object[values.length];
+            for (int i = 0; i < values.length; i++) {
+                this.values[i] = copyValue(values[i]);
+            }
+            this.recversion = recversion;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt != Long.MAX_VALUE && now - expiresAt >= 0;
+        }
+
+        Object getValue(int i) {
+            return copyValue(values[i]);
+        }
+
+        int getRecversion() {
+            return recversion;
+        }
+    }
+
+    /**
+     * Records invalidated by an uncommitted transaction.
+     */
+    private static final class Writes {
+        private final Set<List<Object>> keys = new HashSet<>();
+        private boolean all;
+    }
+
+    /**
+     * Cache of the records of one table.
+     */
+    final class TableCache {
+        private final int maxSize;
+        private final long ttlNanos;
+        private final LinkedHashMap<List<Object>, CachedRecord> entries;
+        private final Map<CallContext, Writes> writers = new HashMap<>();
+        /**
+         * Incremented on every invalidation, so that the record read before it
+         * is not put into the cache.
+         */
+        private long stamp;
+
+        TableCache(int maxSize, int ttl) {
+            this.maxSize = maxSize;
+            this.ttlNanos = TimeUnit.SECONDS.toNanos(ttl);
+            this.entries = new LinkedHashMap<List<Object>, CachedRecord>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Object>, CachedRecord> eldest) {
+                    if (size() > TableCache.this.maxSize) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        /**
+         * Returns the cached record, or {@code null} if it is not found or the cache
+         * cannot be used in the context.
+         *
+         * @param context    call context
+         * @param keyValues  values of the primary key
+         */
+        synchronized CachedRecord get(CallContext context, Object[] keyValues) {
+            if (writers.containsKey(context)) {
+                return null;
+            }
+            List<Object> key = Arrays.asList(keyValues);
+            CachedRecord result = entries.get(key);
+            if (result != null && result.isExpired(System.nanoTime())) {
+                entries.remove(key);
+                result = null;
+            }
+            if (result == null) {
+                misses.increment();
+            } else {
+                hits.increment();
+            }
+            return result;
+        }
+
+        /**
+         * Returns the current stamp, which should be taken before the record is read.
+         */
+        synchronized long getStamp() {
+            return stamp;
+        }
+
+        /**
+         * Puts the record read from the database into the cache, unless it has been
+         * invalidated since the stamp was taken.
+         *
+         * @param context    call context
+         * @param stamp      stamp taken before the record was read
+         * @param keyValues  values of the primary key
+         * @param values     values of the record
+         * @param recversion version of the record
+         */
+        synchronized void put(CallContext context, long stamp, Object[] keyValues, Object[] values,
+                              int recversion) {
+            if (this.stamp == stamp && !writers.containsKey(context)) {
+                long expiresAt = ttlNanos == 0 ? Long.MAX_VALUE : System.nanoTime() + ttlNanos;
+                entries.put(Arrays.asList(keyValues), new CachedRecord(values, recversion, expiresAt));
+            }
+        }
+
+        /**
+         * Invalidates the record modified in the context.
+         *
+         * @param context   call context
+         * @param keyValues values of the primary key
+         */
+        synchronized void invalidate(CallContext context, Object[] keyValues) {
+            List<Object> key = Arrays.asList(keyValues);
+            entries.remove(key);
+            stamp++;
+            Writes w = getWrites(context);
+            if (!w.all) {
+                w.keys.add(key);
+                if (w.keys.size() > maxSize) {
+                    w.all = true;
+                    w.keys.clear();
+                }
+            }
+        }
+
+        /**
+         * Invalidates all the records of the table modified in the context.
+         *
+         * @param context call context
+         */
+        synchronized void invalidateAll(CallContext context) {
+            entries.clear();
+            stamp++;
+            Writes w = getWrites(context);
+            w.all = true;
+            w.keys.clear();
+        }
+
+        private Writes getWrites(CallContext context) {
+            Writes result = writers.get(context);
+            if (result == null) {
+                result = new Writes();
+                writers.put(context, result);
+                context.addTransactionEndListener(() -> endTransaction(context));
+            }
+            return result;
+        }
+
+        private synchronized void endTransaction(CallContext context) {
+            Writes w = writers.remove(context);
+            if (w.all) {
+                entries.clear();
+            } else {
+                entries.keySet().removeAll(w.keys);
+            }
+            stamp++;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            stamp++;
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package ru.curs.celesta.dbutils;
+
+import ru.curs.celesta.dbutils.filter.AbstractFilter;
+import ru.curs.celesta.dbutils.filter.Range;
+import ru.curs.celesta.dbutils.filter.SingleValue;
+import ru.curs.celesta.score.ColumnMeta;
+import ru.curs.celesta.score.DataGrainElement;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Column-oriented in-memory copy of a read-only table.
+ * <p>
+ * Sort orders are read from the database once per order and kept as permutations
+ * of the rows, so that sorting follows the collation and NULLs ordering of the
+ * database. Filters are evaluated in memory only where this gives the same result
+ * as the database: equality for numbers, dates and booleans and ranges for numbers
+ * and dates. String filters are left to the database, since string equality depends
+ * on its collation (e.g. MS SQL Server ignores trailing spaces, and case-insensitive
+ * collations ignore case).
+ */
+final class TableSnapshot {
+    private final Object[][] columns;
+    private final int size;
+    private final int[] keyColumns;
+    private final Map<List<Object>, Integer> rowsByKey;
+    private final Map<String, Order> orders = new ConcurrentHashMap<>();
+    private final long expiresAt;
+    private volatile boolean stale;
+
+    /**
+     * Creates the snapshot.
+     *
+     * @param rows       values of the rows
+     * @param columnCount number of the columns
+     * @param keyColumns indices of the primary key columns
+     * @param expiresAt  {@link System#nanoTime()} value when the snapshot expires,
+     *                   or {@link Long#MAX_VALUE}
+     */
+    TableSnapshot(List<Object[]> rows, int columnCount, int[] keyColumns, long expiresAt) {
+        this.size = rows.size();
+        this.columns = new Object[columnCount][size];
+        this.keyColumns = keyColumns;
+        this.rowsByKey = new HashMap<>(size * 2);
+        for (int row = 0; row < size; row++) {
+            Object[] values = rows.get(row);
+            for (int i = 0; i < columnCount; i++) {
+                columns[i][row] = RowCache.copyValue(values[i]);
+            }
+            rowsByKey.put(key(values), row);
+        }
+        this.expiresAt = expiresAt;
+    }
+
+    boolean isExpired(long now) {
+        return stale || expiresAt != Long.MAX_VALUE && now - expiresAt >= 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    Object getValue(int column, int row) {
+        return RowCache.copyValue(columns[column][row]);
+    }
+
+    /**
+     * Returns the row with the primary key of the record, or -1 if there is no such row.
+     *
+     * @param values values of the record
+     */
+    int findRow(Object[] values) {
+        Integer result = rowsByKey.get(key(values));
+        return result == null ? -1 : result;
+    }
+
+    /**
+     * Whether {@link #findRow(Object[])} finds the same row as the database. String
+     * keys which differ in Java may be equal in the collation of the database.
+     *
+     * @param values values of the record
+     */
+    boolean isKeyComparedExactly(Object[] values) {
+        for (int i : keyColumns) {
+            if (values[i] instanceof String) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether the row has the values of the record in the given columns.
+     */
+    boolean hasValues(int row, Object[] values, int[] columnIndices) {
+        for (int i : columnIndices) {
+            if (!Objects.equals(columns[i][row], values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<Object> key(Object[] values) {
+        Object[] result = new Object[keyColumns.length];
+        for (int i = 0; i < keyColumns.length; i++) {
+            result[i] = values[keyColumns[i]];
+        }
+        return Arrays.asList(result);
+    }
+
+    /**
+     * Returns the sort order, reading it with the loader if it is not read yet.
+     *
+     * @param orderBy order by clause
+     * @param loader  reads values of the rows in the order
+     * @return {@code null} if the rows read by the loader do not match the snapshot,
+     * the snapshot is expired then.
+     */
+    Order getOrder(String orderBy, Supplier<List<Object[]>> loader) {
+        Order result = orders.get(orderBy);
+        if (result == null) {
+            List<Object[]> keys = loader.get();
+            if (keys.size() != size) {
+                stale = true;
+                return null;
+            }
+            int[] rows = new int[size];
+            int[] positions = new int[size];
+            Arrays.fill(positions, -1);
+            for (int i = 0; i < size; i++) {
+                int row = findRow(keys.get(i));
+                if (row < 0 || positions[row] >= 0) {
+                    stale = true;
+                    return null;
+                }
+                rows[i] = row;
+                positions[row] = i;
+            }
+            result = new Order(rows, positions);
+            orders.put(orderBy, result);
+        }
+        return result;
+    }
+
+    /**
+     * Selects the rows matching the filters in the order.
+     *
+     * @param order    sort order
+     * @param filters  filters on the columns
+     * @param meta     the table
+     * @param offset   number of the rows to skip
+     * @param rowCount maximal number of the rows (0 for all rows)
+     * @return {@code null} if the filters cannot be evaluated in memory.
+     */
+    Selection select(Order order, Map<String, AbstractFilter> filters, DataGrainElement meta,
+                     long offset, long rowCount) {
+        int[] filterColumns = new int[filters.size()];
+        @SuppressWarnings("unchecked")
+        Predicate<Object>[] predicates = new Predicate[filters.size()];
+        int k = 0;
+        for (Map.Entry<String, AbstractFilter> e : filters.entrySet()) {
+            Predicate<Object> p = predicate(meta.getColumns().get(e.getKey()), e.getValue());
+            if (p == null) {
+                return null;
+            }
+            filterColumns[k] = meta.getColumnIndex(e.getKey());
+            predicates[k++] = p;
+        }
+
+        int[] rows = new int[size];
+        int count = 0;
+        long skipped = 0;
+        for (int row : order.rows) {
+            if (!matches(row, filterColumns, predicates)) {
+                continue;
+            }
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            rows[count++] = row;
+            if (count == rowCount) {
+                break;
+            }
+        }
+        return new Selection(Arrays.copyOf(rows, count), order);
+    }
+
+    private boolean matches(int row, int[] filterColumns, Predicate<Object>[] predicates) {
+        for (int i = 0; i < filterColumns.length; i++) {
+            if (!predicates[i].test(columns[filterColumns[i]][row])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the predicate for the column values equivalent to the filter,
+     * or {@code null} if the filter cannot be evaluated in memory.
+     */
+    static Predicate<Object> predicate(ColumnMeta meta, AbstractFilter filter) {
+        Class<?> type = meta.getJavaClass();
+        if (filter instanceof SingleValue) {
+            Object value = ((SingleValue) filter).getValue();
+            if (isIntegral(type) && isIntegralValue(value)) {
+                long v = ((Number) value).longValue();
+                return x -> x != null && ((Number) x).longValue() == v;
+            } else if (Number.class.isAssignableFrom(type)) {
+                BigDecimal v = toBigDecimal(value);
+                return v == null ? null : x -> x != null && toBigDecimal(x).compareTo(v) == 0;
+            } else if (Date.class.equals(type)) {
+                return value instanceof Date ? x -> x != null && ((Date) x).getTime() == ((Date) value).getTime()
+                        : null;
+            } else if (ZonedDateTime.class.equals(type)) {
+                return value instanceof ZonedDateTime
+                        ? x -> x != null && ((ZonedDateTime) x).toInstant().equals(((ZonedDateTime) value).toInstant())
+                        : null;
+            } else if (Boolean.class.equals(type)) {
+                return value instanceof Boolean ? value::equals : null;
+            }
+        } else if (filter instanceof Range) {
+            Object from = ((Range) filter).getValueFrom();
+            Object to = ((Range) filter).getValueTo();
+            if (isIntegral(type) && isIntegralValue(from) && isIntegralValue(to)) {
+                long f = ((Number) from).longValue();
+                long t = ((Number) to).longValue();
+                return x -> x != null && ((Number) x).longValue() >= f && ((Number) x).longValue() <= t;
+            } else if (Number.class.isAssignableFrom(type)) {
+                BigDecimal f = toBigDecimal(from);
+                BigDecimal t = toBigDecimal(to);
+                if (f != null && t != null) {
+                    return x -> {
+                        if (x == null) {
+                            return false;
+                        }
+                        BigDecimal v = toBigDecimal(x);
+                        return v.compareTo(f) >= 0 && v.compareTo(t) <= 0;
+                    };
+                }
+            } else if (Date.class.equals(type) && from instanceof Date && to instanceof Date) {
+                long f = ((Date) from).getTime();
+                long t = ((Date) to).getTime();
+                return x -> x != null && ((Date) x).getTime() >= f && ((Date) x).getTime() <= t;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isIntegral(Class<?> c) {
+        return Integer.class.equals(c) || Long.class.equals(c) || Short.class.equals(c) || Byte.class.equals(c);
+    }
+
+    private static boolean isIntegralValue(Object value) {
+        return value != null && isIntegral(value.getClass());
+    }
+
+    private static BigDecimal toBigDecimal(Object value) {
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            return BigDecimal.valueOf(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            return Double.isNaN(d) || Double.isInfinite(d) ? null : BigDecimal.valueOf(d);
+        }
+        return null;
+    }
+
+    /**
+     * Sort order of the rows.
+     */
+    static final class Order {
+        private final int[] rows;
+        private final int[] positions;
+
+        Order(int[] rows, int[] positions) {
+            this.rows = rows;
+            this.positions = positions;
+        }
+    }
+
+    /**
+     * Rows of a filtered set in the sort order.
+     */
+    static final class Selection {
+        private final int[] rows;
+        private final Order order;
+
+        Selection(int[] rows, Order order) {
+            this.rows = rows;
+            this.order = order;
+        }
+
+        int size() {
+            return rows.length;
+        }
+
+        int getRow(int index) {
+            return rows[index];
+        }
+
+        /**
+         * Index of the row in the set, or -1 if the row is not in the set.
+         */
+        int indexOf(int row) {
+            int i = search(row);
+            return i < rows.length && rows[i] == row ? i : -1;
+        }
+
+        /**
+         * Index of the first row of the set following the row in the sort order.
+         */
+        int indexAfter(int row) {
+            int i = search(row);
+            return i < rows.length && rows[i] == row ? i + 1 : i;
+        }
+
+        /**
+         * Index of the last row of the set preceding the row in the sort order.
+         */
+        int indexBefore(int row) {
+            return search(row) - 1;
+        }
+
+        /**
+         * Index of the first row of the set not preceding the row in the sort order.
+         */
+        private int search(int row) {
+            int position = order.positions[row];
+            int low = 0;
+            int high = rows.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (order.positions[rows[mid]] < position) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
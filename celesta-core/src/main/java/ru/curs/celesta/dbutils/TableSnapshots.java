@@ -0,0 +1,93 @@
+package ru.curs.celesta.dbutils;
+
+import ru.curs.celesta.score.Table;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * In-memory snapshots of read-only tables read through {@link ReadOnlyTableCursor}.
+ * <p>
+ * Snapshots are kept only for the tables having the snapshot property in CelestaDoc,
+ * e.g. <code>&#47;** {"snapshot": 600} *&#47;</code>, its value is the time to live of
+ * the snapshot in seconds (0 if the snapshot does not expire). A snapshot is loaded
+ * on the first use or after it has expired or has been discarded by {@link #reload(Table)}.
+ */
+public final class TableSnapshots {
+
+    private final Map<Table, Holder> holders = new ConcurrentHashMap<>();
+    private final LongAdder loads = new LongAdder();
+
+    /**
+     * Returns the snapshot of the table, loading it if needed, or {@code null}
+     * if the table has no snapshot.
+     *
+     * @param table  table
+     * @param loader reads values of all the rows of the table
+     */
+    TableSnapshot get(Table table, Supplier<List<Object[]>> loader) {
+        Holder h = holders.computeIfAbsent(table, Holder::new);
+        return h.ttl < 0 ? null : h.get(loader);
+    }
+
+    /**
+     * Discards the snapshot of the table, it is loaded again on the next use.
+     *
+     * @param table table
+     */
+    public void reload(Table table) {
+        Holder h = holders.get(table);
+        if (h != null) {
+            h.discard();
+        }
+    }
+
+    /**
+     * Discards the snapshots of all the tables.
+     */
+    public void reloadAll() {
+        holders.values().forEach(Holder::discard);
+    }
+
+    /**
+     * Number of snapshots loaded.
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    /**
+     * Snapshot of a table.
+     */
+    private final class Holder {
+        private final int ttl;
+        private final int columnCount;
+        private final int[] keyColumns;
+        private TableSnapshot snapshot;
+
+        Holder(Table table) {
+            ttl = table.getSnapshotTtl();
+            columnCount = table.getColumns().size();
+            keyColumns = table.getPrimaryKey().keySet().stream().mapToInt(table::getColumnIndex).toArray();
+        }
+
+        synchronized TableSnapshot get(Supplier<List<Object[]>> loader) {
+            long now = System.nanoTime();
+            if (snapshot == null || snapshot.isExpired(now)) {
+                List<Object[]> rows = loader.get();
+                snapshot = new TableSnapshot(rows, columnCount, keyColumns,
+                        ttl == 0 ? Long.MAX_VALUE : now + TimeUnit.SECONDS.toNanos(ttl));
+                loads.increment();
+            }
+            return snapshot;
+        }
+
+        synchronized void discard() {
+            snapshot = null;
+        }
+    }
+}
@@ -47,6 +47,7 @@ public final class LyraFormData implements Serializable {
      *            Fully qualified form class name.
      */
     public LyraFormData(BasicCursor c, Map<String, LyraFormField> map, String formId) {
+        Object[] vals = c._currentValues();
         if (c instanceof Cursor) {
             recversion = ((Cursor) c).getRecversion();
             keyValues = ((Cursor) c).getCurrentKeyValues();
@@ -54,11 +55,10 @@ public final class LyraFormData implements Serializable {
             // TODO: here we have an assumption that the first field is the key
             // field
             keyValues = new Object[1];
-            keyValues[0] = c._currentValues()[0];
+            keyValues[0] = vals[0];
         }
 
         this.formId = formId;
-        Object[] vals = c._currentValues();
 
         for (LyraFormField lff : map.values()) {
             Object val = lff.getAccessor().getValue(vals);
@@ -1,38 +1,44 @@
 package ru.curs.lyra.grid;
 
 import java.math.BigInteger;
-import java.util.Iterator;
-import java.util.Map.Entry;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 /**
  * Кусочно-линейная аппроксимация распределения значений первичного ключа.
+ * <p>
+ * Points are kept in an immutable table of sorted primitive arrays which is
+ * replaced as a whole by {@link #setPoint(BigInteger, int)}, so the reading
+ * methods take no locks. While all the ordinals fit into {@value #LONG_BITS} bits
+ * (integer and date keys, short strings) they are stored as longs and interpolation
+ * is done in long arithmetic; the first wider ordinal switches the table to BigInteger.
  */
 public class KeyInterpolator {
 
     private static final int MIN_GAP_QUOTIENT = 4;
     private static final int MIN_GAP_VALUE = 10;
+    /**
+     * Maximal bit length of ordinals stored as longs: a difference of two such ordinals fits into long.
+     */
+    private static final int LONG_BITS = 62;
+    private static final long INT_PRODUCT_LIMIT = 1L << 32;
 
-    private final TreeMap<Integer, BigInteger> data = new TreeMap<>();
     private final boolean descending;
-
-    // Least accurate value cache and its validity flag.
-    private BigInteger leastAccurateValue;
-    private boolean isLAVValid;
+    private volatile Points points;
 
     public KeyInterpolator(BigInteger minOrd, BigInteger maxOrd, int count, boolean descending) {
         this.descending = descending;
-        data.put(0, negateIfDesc(minOrd));
-        if (count > 0) {
-            data.put(count - 1, negateIfDesc(maxOrd));
+        if (count > 1) {
+            points = Points.of(new int[] {0, count - 1}, negateIfDesc(minOrd), negateIfDesc(maxOrd));
+        } else if (count == 1) {
             // self-testing count/maxOrd consistency for extremal cases
-            if (count == 1 && !minOrd.equals(maxOrd))
+            if (!minOrd.equals(maxOrd))
                 throw new IllegalArgumentException();
-        } else if (count < 0) {
+            points = Points.of(new int[] {0}, negateIfDesc(maxOrd));
+        } else if (count == 0) {
+            points = Points.of(new int[] {0}, negateIfDesc(minOrd));
+        } else {
             throw new IllegalArgumentException();
         }
-        isLAVValid = false;
-
     }
 
     /**
@@ -49,29 +55,7 @@ public class KeyInterpolator {
         final BigInteger neword = negateIfDesc(ord);
 
         synchronized (this) {
-            isLAVValid = false;
-            // System.out.printf("+(%d:%s)%n", count, ord.toString());
-            Entry<Integer, BigInteger> e;
-            data.put(count, neword);
-            int c = count;
-            // Discarding non-congruent points
-            while ((e = data.lowerEntry(c)) != null) {
-                if (e.getValue().compareTo(neword) >= 0) {
-                    c = e.getKey();
-                    data.remove(c);
-                } else {
-                    break;
-                }
-            }
-            c = count;
-            while ((e = data.higherEntry(c)) != null) {
-                if (e.getValue().compareTo(neword) <= 0) {
-                    c = e.getKey();
-                    data.remove(c);
-                } else {
-                    break;
-                }
-            }
+            points = points.with(count, neword);
         }
 
         // TODO: выбрасывать ненужные (не уточняющие) точки
@@ -90,7 +74,9 @@ public class KeyInterpolator {
      *
      */
     public BigInteger getExactPoint(int count) {
-        return negateIfDesc(data.get(count));
+        Points p = points;
+        int i = Arrays.binarySearch(p.counts, count);
+        return i < 0 ? null : negateIfDesc(p.value(i));
     }
 
     /**
@@ -102,17 +88,14 @@ public class KeyInterpolator {
     public int getClosestPosition(int count) {
         if (count < 0)
             throw new IllegalArgumentException();
-        synchronized (this) {
-            if (data.isEmpty())
-                throw new IllegalStateException();
-            Integer floor = data.floorKey(count);
-            int e0 = floor == null ? data.firstKey() : floor;
-            if (e0 == count)
-                return e0;
-            Integer ceiling = data.ceilingKey(count);
-            int e1 = ceiling == null ? data.lastKey() : ceiling;
-            return (count - e0 < e1 - count) ? e0 : e1;
-        }
+        Points p = points;
+        int floor = p.floor(count);
+        int e0 = p.counts[floor < 0 ? 0 : floor];
+        if (e0 == count)
+            return e0;
+        int ceiling = p.ceiling(count);
+        int e1 = p.counts[ceiling < p.size() ? ceiling : p.size() - 1];
+        return (count - e0 < e1 - count) ? e0 : e1;
     }
 
     /**
@@ -124,21 +107,15 @@ public class KeyInterpolator {
     public BigInteger getPoint(int count) {
         if (count < 0)
             throw new IllegalArgumentException();
-        Entry<Integer, BigInteger> e0, e1;
-        synchronized (this) {
-            e0 = data.floorEntry(count);
-            if (e0.getKey() == count)
-                return negateIfDesc(e0.getValue());
-            e1 = data.ceilingEntry(count);
-            // when count > maxcount
-            if (e1 == null)
-                return negateIfDesc(data.lastEntry().getValue());
-        }
-        BigInteger result = (e1.getValue().subtract(e0.getValue()).subtract(BigInteger.ONE))
-                .multiply(BigInteger.valueOf(count - e0.getKey() - 1));
-        BigInteger delta = BigInteger.valueOf(e1.getKey() - e0.getKey() - 1);
-        result = e0.getValue().add(divideAndRound(result, delta)).add(BigInteger.ONE);
-        return negateIfDesc(result);
+        Points p = points;
+        int i = p.floor(count);
+        // before the first point (it has been discarded as non-congruent)
+        if (i < 0)
+            return negateIfDesc(p.value(0));
+        // exact point or count > maxcount
+        if (p.counts[i] == count || i == p.size() - 1)
+            return negateIfDesc(p.value(i));
+        return negateIfDesc(p.interpolate(i, count));
     }
 
     private static BigInteger divideAndRound(BigInteger divident, BigInteger divisor) {
@@ -150,18 +127,34 @@ public class KeyInterpolator {
         }
     }
 
+    private static long divideAndRound(long divident, long divisor) {
+        long q = divident / divisor;
+        long r = divident % divisor;
+        return r > divisor - r ? q + 1 : q;
+    }
+
+    /**
+     * Rounded a * b / d for 0 &lt;= b &lt; d without overflow.
+     */
+    private static long multiplyDivideAndRound(long a, long b, long d) {
+        // a * b = (a / d) * b * d + (a % d) * b, where (a % d) * b < d * d fits into long
+        long rem = a % d * b;
+        return a / d * b + divideAndRound(rem, d);
+    }
+
     /**
      * Количество имеющихся точек в таблице.
      */
     public int getPointsCount() {
-        return data.size();
+        return points.size();
     }
 
     /**
      * Returns an (approximate) records count.
      */
     public int getApproximateCount() {
-        return data.lastEntry().getKey() + 1;
+        Points p = points;
+        return p.counts[p.size() - 1] + 1;
     }
 
     /**
@@ -173,46 +166,20 @@ public class KeyInterpolator {
      */
     public int getApproximatePosition(BigInteger key) {
         final BigInteger newkey = negateIfDesc(key);
-        int cmin = 0;
-        int cmid;
-        synchronized (this) {
-            int cmax = data.lastEntry().getKey();
-            while (cmax > cmin) {
-                cmid = (cmax + cmin) >> 1;
-                if (cmid == cmin)
-                    cmid = cmax;
-                Entry<Integer, BigInteger> ceiling = data.ceilingEntry(cmid);
-                int delta = ceiling.getValue().compareTo(newkey);
-                if (delta == 0) {
-                    return ceiling.getKey();
-                } else if (delta < 0) {
-                    // Ceiling is strictly lower than key: we should try higher
-                    // cmin
-                    cmin = ceiling.getKey();
-                } else {
-                    // Ceiling is strictly greater than key!
-                    Entry<Integer, BigInteger> lower = data.lowerEntry(cmid);
-                    delta = lower.getValue().compareTo(newkey);
-                    if (delta == 0)
-                        return lower.getKey();
-                    else if (delta > 0) {
-                        // Lower entry is strictly greater than key: we should
-                        // try
-                        // lower cmax
-                        cmax = lower.getKey();
-                    } else {
-                        // Lower entry is strictly lower,
-                        // Ceiling is strictly greater: interpolation
-                        int d = 1 + divideAndRound(
-                                BigInteger.valueOf(ceiling.getKey() - lower.getKey() - 1)
-                                        .multiply(newkey.subtract(lower.getValue()).subtract(BigInteger.ONE)),
-                                ceiling.getValue().subtract(lower.getValue()).subtract(BigInteger.ONE)).intValue();
-                        return lower.getKey() + d;
-                    }
-                }
-            }
+        Points p = points;
+        int i = p.higherValue(newkey);
+        if (i > 0 && p.compare(i - 1, newkey) == 0) {
+            return p.counts[i - 1];
+        } else if (i == 0) {
+            // all the points are greater than key
+            return 0;
+        } else if (i == p.size()) {
+            // all the points are lower than key
+            return p.counts[i - 1];
+        } else {
+            // lower point is strictly lower, ceiling is strictly greater: interpolation
+            return p.counts[i - 1] + 1 + p.inversePosition(i - 1, newkey);
         }
-        return cmin;
     }
 
     /**
@@ -221,58 +188,224 @@ public class KeyInterpolator {
      *
      * Returns null if there is no gap big enough.
      */
-    public synchronized BigInteger getLeastAccurateValue() {
-        if (isLAVValid)
-            return negateIfDesc(leastAccurateValue);
-
-        isLAVValid = true;
-        // only one point, nothing to talk about
-        if (data.size() < 2) {
-            leastAccurateValue = null;
-            return null;
+    public BigInteger getLeastAccurateValue() {
+        Points p = points;
+        if (!p.isLAVValid) {
+            p.leastAccurateValue = p.findLeastAccurateValue();
+            p.isLAVValid = true;
         }
+        return negateIfDesc(p.leastAccurateValue);
+    }
 
-        // looking for biggest gap in a table
-        int deltaMax = 0;
-        int cMax = data.lastKey();
-
-        int deltaMin = cMax / MIN_GAP_QUOTIENT;
-        if (deltaMin < MIN_GAP_VALUE)
-            deltaMin = MIN_GAP_VALUE;
-
-        Iterator<Entry<Integer, BigInteger>> i = data.entrySet().iterator();
-        Entry<Integer, BigInteger> c = i.next();
-        Entry<Integer, BigInteger> cPrev;
-        BigInteger v1 = BigInteger.ZERO;
-        BigInteger v2 = BigInteger.ZERO;
-        do {
-            cPrev = c;
-            c = i.next();
-            int d = c.getKey() - cPrev.getKey();
-            if (d > deltaMax) {
-                cMax += deltaMax;
-                deltaMax = d;
-                cMax -= deltaMax;
-                v1 = cPrev.getValue();
-                v2 = c.getValue();
-            }
-        } while (c.getKey() < cMax);
+    /**
+     * Resets the interpolator when all records are deleted.
+     */
+    public synchronized void resetToEmptyTable() {
+        points = new Points(new int[] {0}, new long[] {0}, null);
+    }
 
-        if (deltaMax > deltaMin) {
-            leastAccurateValue = v1.add(v2).shiftRight(1);
-        } else {
-            leastAccurateValue = null;
-        }
+    private static boolean fitsLong(BigInteger ord) {
+        return ord.bitLength() <= LONG_BITS;
+    }
 
-        return negateIfDesc(leastAccurateValue);
+    /**
+     * Long value of an ordinal; ordinals too wide to be stored as longs are
+     * mapped to the values greater (lower) than any stored one.
+     */
+    private static long clamp(BigInteger ord) {
+        if (fitsLong(ord)) {
+            return ord.longValue();
+        }
+        return ord.signum() > 0 ? Long.MAX_VALUE : Long.MIN_VALUE;
     }
 
     /**
-     * Resets the interpolator when all records are deleted.
+     * Immutable interpolation table: record numbers in ascending order and the
+     * ordinals for them, either in long or (when some are too wide) in BigInteger array.
      */
-    public synchronized void resetToEmptyTable() {
-        data.clear();
-        data.put(0, BigInteger.ZERO);
-        isLAVValid = false;
+    private static final class Points {
+        private final int[] counts;
+        private final long[] values;
+        private final BigInteger[] bigValues;
+
+        // Least accurate value cache and its validity flag.
+        private BigInteger leastAccurateValue;
+        private volatile boolean isLAVValid;
+
+        Points(int[] counts, long[] values, BigInteger[] bigValues) {
+            this.counts = counts;
+            this.values = values;
+            this.bigValues = bigValues;
+        }
+
+        static Points of(int[] counts, BigInteger... ords) {
+            for (BigInteger ord : ords) {
+                if (!fitsLong(ord)) {
+                    return new Points(counts, null, ords);
+                }
+            }
+            long[] values = new long[ords.length];
+            for (int i = 0; i < ords.length; i++) {
+                values[i] = ords[i].longValue();
+            }
+            return new Points(counts, values, null);
+        }
+
+        int size() {
+            return counts.length;
+        }
+
+        BigInteger value(int i) {
+            return bigValues == null ? BigInteger.valueOf(values[i]) : bigValues[i];
+        }
+
+        int compare(int i, BigInteger ord) {
+            return bigValues == null ? Long.compare(values[i], clamp(ord)) : bigValues[i].compareTo(ord);
+        }
+
+        /**
+         * Index of the last point with record number not greater than count, -1 if none.
+         */
+        int floor(int count) {
+            int i = Arrays.binarySearch(counts, count);
+            return i >= 0 ? i : -i - 2;
+        }
+
+        /**
+         * Index of the first point with record number not lower than count, size() if none.
+         */
+        int ceiling(int count) {
+            int i = Arrays.binarySearch(counts, count);
+            return i >= 0 ? i : -i - 1;
+        }
+
+        /**
+         * Index of the first point with ordinal greater than ord, size() if none.
+         */
+        int higherValue(BigInteger ord) {
+            int lo = 0;
+            int hi = counts.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(mid, ord) <= 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * Table with the point added and the points non-congruent to it discarded.
+         */
+        Points with(int count, BigInteger ord) {
+            int n = counts.length;
+            int i = Arrays.binarySearch(counts, count);
+            // points [0, lo) precede the new one, points [hi, n) follow it
+            int lo = i >= 0 ? i : -i - 1;
+            int hi = i >= 0 ? i + 1 : lo;
+            while (lo > 0 && compare(lo - 1, ord) >= 0) {
+                lo--;
+            }
+            while (hi < n && compare(hi, ord) <= 0) {
+                hi++;
+            }
+            int size = lo + 1 + n - hi;
+            int[] newCounts = new int[size];
+            System.arraycopy(counts, 0, newCounts, 0, lo);
+            newCounts[lo] = count;
+            System.arraycopy(counts, hi, newCounts, lo + 1, n - hi);
+            if (bigValues == null && fitsLong(ord)) {
+                long[] newValues = new long[size];
+                System.arraycopy(values, 0, newValues, 0, lo);
+                newValues[lo] = ord.longValue();
+                System.arraycopy(values, hi, newValues, lo + 1, n - hi);
+                return new Points(newCounts, newValues, null);
+            } else {
+                BigInteger[] newValues = new BigInteger[size];
+                for (int j = 0; j < lo; j++) {
+                    newValues[j] = value(j);
+                }
+                newValues[lo] = ord;
+                for (int j = hi; j < n; j++) {
+                    newValues[j - hi + lo + 1] = value(j);
+                }
+                return new Points(newCounts, null, newValues);
+            }
+        }
+
+        /**
+         * Ordinal for a record number between the points i and i + 1.
+         */
+        BigInteger interpolate(int i, int count) {
+            int c0 = counts[i];
+            int c1 = counts[i + 1];
+            if (bigValues == null) {
+                long v0 = values[i];
+                return BigInteger.valueOf(
+                        v0 + multiplyDivideAndRound(values[i + 1] - v0 - 1, count - c0 - 1, c1 - c0 - 1) + 1);
+            }
+            BigInteger v0 = bigValues[i];
+            BigInteger result = bigValues[i + 1].subtract(v0).subtract(BigInteger.ONE)
+                    .multiply(BigInteger.valueOf(count - c0 - 1));
+            BigInteger delta = BigInteger.valueOf(c1 - c0 - 1);
+            return v0.add(divideAndRound(result, delta)).add(BigInteger.ONE);
+        }
+
+        /**
+         * Offset (counting from the point i plus one) of an ordinal lying strictly
+         * between the points i and i + 1.
+         */
+        int inversePosition(int i, BigInteger ord) {
+            int delta = counts[i + 1] - counts[i] - 1;
+            if (bigValues == null) {
+                long v0 = values[i];
+                long offset = ord.longValue() - v0 - 1;
+                if (offset < INT_PRODUCT_LIMIT) {
+                    return (int) divideAndRound(delta * offset, values[i + 1] - v0 - 1);
+                }
+            }
+            BigInteger v0 = value(i);
+            return divideAndRound(
+                    BigInteger.valueOf(delta).multiply(ord.subtract(v0).subtract(BigInteger.ONE)),
+                    value(i + 1).subtract(v0).subtract(BigInteger.ONE)).intValue();
+        }
+
+        BigInteger findLeastAccurateValue() {
+            // only one point, nothing to talk about
+            if (counts.length < 2) {
+                return null;
+            }
+
+            // looking for biggest gap in a table
+            int deltaMax = 0;
+            int cMax = counts[counts.length - 1];
+
+            int deltaMin = cMax / MIN_GAP_QUOTIENT;
+            if (deltaMin < MIN_GAP_VALUE)
+                deltaMin = MIN_GAP_VALUE;
+
+            int gap = 0;
+            int i = 0;
+            do {
+                i++;
+                int d = counts[i] - counts[i - 1];
+                if (d > deltaMax) {
+                    cMax += deltaMax;
+                    deltaMax = d;
+                    cMax -= deltaMax;
+                    gap = i;
+                }
+            } while (counts[i] < cMax);
+
+            if (deltaMax <= deltaMin) {
+                return null;
+            } else if (bigValues == null) {
+                return BigInteger.valueOf((values[gap - 1] + values[gap]) >> 1);
+            } else {
+                return bigValues[gap - 1].add(bigValues[gap]).shiftRight(1);
+            }
+        }
     }
 }
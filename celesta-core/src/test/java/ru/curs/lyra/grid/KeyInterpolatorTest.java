@@ -159,4 +159,58 @@ public class KeyInterpolatorTest {
         assertEquals(1, ka.getApproximatePosition(BigInteger.valueOf(7)));
         assertEquals(1, ka.getApproximatePosition(BigInteger.valueOf(20)));
     }
+
+    @Test
+    public void wideOrdinalsAreInterpolatedAsNarrowOnes() {
+        BigInteger shift = BigInteger.ONE.shiftLeft(100);
+        KeyInterpolator narrow = new KeyInterpolator(BigInteger.valueOf(7), BigInteger.valueOf(1000), 100, false);
+        KeyInterpolator wide = new KeyInterpolator(BigInteger.valueOf(7).add(shift),
+                BigInteger.valueOf(1000).add(shift), 100, false);
+        for (int[] point : new int[][] {{100, 10}, {500, 50}, {800, 60}}) {
+            narrow.setPoint(BigInteger.valueOf(point[0]), point[1]);
+            wide.setPoint(BigInteger.valueOf(point[0]).add(shift), point[1]);
+        }
+
+        assertEquals(narrow.getPointsCount(), wide.getPointsCount());
+        for (int i = 0; i < 110; i++) {
+            assertEquals(narrow.getPoint(i).add(shift), wide.getPoint(i));
+        }
+        for (int v = 0; v < 1100; v++) {
+            assertEquals(narrow.getApproximatePosition(BigInteger.valueOf(v)),
+                    wide.getApproximatePosition(BigInteger.valueOf(v).add(shift)));
+        }
+        assertEquals(narrow.getLeastAccurateValue().add(shift), wide.getLeastAccurateValue());
+    }
+
+    @Test
+    public void wideOrdinalSwitchesToBigIntegers() {
+        KeyInterpolator ka = new KeyInterpolator(BigInteger.valueOf(100), BigInteger.ZERO, 101, true);
+        BigInteger wide = BigInteger.ONE.shiftLeft(70).negate();
+        ka.setPoint(wide, 201);
+
+        assertEquals(3, ka.getPointsCount());
+        assertEquals(BigInteger.ZERO, ka.getPoint(100));
+        assertEquals(wide, ka.getPoint(201));
+        // -(0 + 1 + round((2^70 - 1) * 50 / 100))
+        BigInteger middle = BigInteger.ONE.shiftLeft(69).negate();
+        assertEquals(middle, ka.getPoint(151));
+        assertEquals(151, ka.getApproximatePosition(middle));
+        assertEquals(50, ka.getApproximatePosition(BigInteger.valueOf(50)));
+        assertEquals(201, ka.getApproximatePosition(BigInteger.ONE.shiftLeft(80).negate()));
+    }
+
+    @Test
+    public void longOrdinalsDoNotOverflow() {
+        BigInteger min = BigInteger.ONE.shiftLeft(62).negate();
+        BigInteger max = BigInteger.ONE.shiftLeft(62).subtract(BigInteger.ONE);
+        KeyInterpolator ka = new KeyInterpolator(min, max, 1001, false);
+
+        // -2^62 + 1 + round((2^63 - 2) * 499 / 999)
+        BigInteger expected = min.add(BigInteger.ONE).add(BigInteger.ONE.shiftLeft(63).subtract(BigInteger.valueOf(2))
+                .multiply(BigInteger.valueOf(499)).add(BigInteger.valueOf(499)).divide(BigInteger.valueOf(999)));
+        assertEquals(expected, ka.getPoint(500));
+        assertEquals(500, ka.getApproximatePosition(expected));
+        assertEquals(500, ka.getApproximatePosition(BigInteger.ZERO));
+        assertEquals(BigInteger.valueOf(-1), ka.getLeastAccurateValue());
+    }
 }
@@ -12,7 +12,6 @@ import ru.curs.celesta.score.*;
 import javax.lang.model.element.Modifier;
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
@@ -78,6 +77,8 @@ public final class CursorGenerator {
         final String sourceFileNamePrefix = StringUtils.capitalize(ge.getName());
 
         boolean isVersionedGe = ge instanceof VersionedElement && ((VersionedElement) ge).isVersioned();
+        // setters of table cursors mark the columns as dirty, so that only they are compared on update
+        boolean isModifiableGe = ge instanceof Table && !((Table) ge).isReadOnly();
 
         String className = calcClassName(ge, sourceFileNamePrefix);
 
@@ -89,12 +90,12 @@ public final class CursorGenerator {
         if (ge instanceof DataGrainElement) {
             List<FieldSpec> fieldSpecs = buildFields((DataGrainElement) ge);
             cursorClass.addFields(fieldSpecs);
-            cursorClass.addMethods(generateGettersAndSetters(fieldSpecs));
+            cursorClass.addMethods(generateGettersAndSetters(fieldSpecs, isModifiableGe));
 
             DataGrainElement dge = (DataGrainElement) ge;
             Map<String, ? extends ColumnMeta> columns = dge.getColumns();
 
-            cursorClass.addMethod(buildSetFieldValue());
+            cursorClass.addMethod(buildSetFieldValue(columns, isModifiableGe));
 
             StringBuilder parseResultOverridingMethodNameBuilder = new StringBuilder("_parseResult");
 
@@ -120,9 +121,9 @@ public final class CursorGenerator {
             );
             cursorClass.addMethod(buildParseResultMethod);
 
-            cursorClass.addMethod(buildClearBuffer(columns, pk));
+            cursorClass.addMethod(buildClearBuffer(columns, pk, isModifiableGe));
 
-            cursorClass.addMethod(buildCurrentValues(columns));
+            cursorClass.addMethod(buildFillCurrentValues(columns));
 
             if (dge instanceof Table) {
                 Table t = (Table) dge;
@@ -136,7 +137,9 @@ public final class CursorGenerator {
                 );
             }
 
-            cursorClass.addMethods(buildCompileCopying(ge, className, columns.keySet(), isVersionedGe));
+            cursorClass.addMethods(
+                    buildCompileCopying(ge, className, columns.keySet(), isVersionedGe, isModifiableGe)
+            );
             cursorClass.addMethod(buildIterator(className));
         }
 
@@ -326,9 +329,10 @@ public final class CursorGenerator {
 
     }
 
-    private static List<MethodSpec> generateGettersAndSetters(List<FieldSpec> fieldSpecs) {
+    private static List<MethodSpec> generateGettersAndSetters(List<FieldSpec> fieldSpecs, boolean markDirty) {
         List<MethodSpec> result = new ArrayList<>();
 
+        AtomicInteger counter = new AtomicInteger(0);
         fieldSpecs.forEach(
                 fieldSpec -> {
                     String methodSuffix = String.valueOf(Character.toUpperCase(fieldSpec.name.charAt(0)));
@@ -340,13 +344,17 @@ public final class CursorGenerator {
                             .addModifiers(Modifier.PUBLIC)
                             .returns(fieldSpec.type)
                             .addStatement("return this.$N", fieldSpec.name).build();
-                    MethodSpec setter = MethodSpec.methodBuilder("set" + methodSuffix)
+                    MethodSpec.Builder setter = MethodSpec.methodBuilder("set" + methodSuffix)
                             .addModifiers(Modifier.PUBLIC)
                             .addParameter(fieldSpec.type, fieldSpec.name)
-                            .addStatement("this.$N = $N", fieldSpec.name, fieldSpec.name).build();
+                            .addStatement("this.$N = $N", fieldSpec.name, fieldSpec.name);
+                    int column = counter.getAndIncrement();
+                    if (markDirty) {
+                        setter.addStatement("_markDirty($L)", column);
+                    }
 
                     result.add(getter);
-                    result.add(setter);
+                    result.add(setter.build());
                 }
         );
 
@@ -360,21 +368,24 @@ public final class CursorGenerator {
                 .addModifiers(Modifier.PROTECTED)
                 .addAnnotation(Override.class)
                 .addParameter(ResultSet.class, "rs")
+                .addParameter(boolean[].class, "projection")
                 .addException(SQLException.class);
 
-        columns.entrySet().forEach(entry -> {
+        // fields are selected in the order of the columns, so they are read by column index
+        builder.addStatement("int column = 0");
+
+        int index = 0;
+        for (Map.Entry<String, ? extends ColumnMeta> entry : columns.entrySet()) {
             String name = entry.getKey();
             ColumnMeta meta = entry.getValue();
 
             if (BinaryColumn.CELESTA_TYPE.equals(meta.getCelestaType())) {
                 builder.addStatement("this.$N = null", name);
             } else {
-                builder.beginControlFlow("if (this.$N($S))", "inRec", name);
+                builder.beginControlFlow("if (projection[$L])", index);
                 if (ZonedDateTimeColumn.CELESTA_TYPE.equals(meta.getCelestaType())) {
-                    builder.addStatement(
-                            "$T ts = rs.$N($S, $T.getInstance($T.getTimeZone($S)))",
-                            Timestamp.class, meta.jdbcGetterName(), name, Calendar.class, TimeZone.class, "UTC"
-                    );
+                    builder.addStatement("$T ts = rs.$N(++column, _utcCalendar())",
+                            Timestamp.class, meta.jdbcGetterName());
                     builder.beginControlFlow("if ($N != null)", "ts");
                     builder.addStatement("this.$N = $T.of(ts.toLocalDateTime(), $T.systemDefault())",
                             name, ZonedDateTime.class, ZoneOffset.class);
@@ -383,43 +394,56 @@ public final class CursorGenerator {
                     builder.addStatement("this.$N = null", name);
                     builder.endControlFlow();
                 } else {
-                    builder.addStatement("this.$N = rs.$N($S)", name, meta.jdbcGetterName(), name);
+                    builder.addStatement("this.$N = rs.$N(++column)", name, meta.jdbcGetterName());
                     builder.beginControlFlow("if (rs.$N())", "wasNull");
                     builder.addStatement("this.$N = null", name);
                     builder.endControlFlow();
                 }
                 builder.endControlFlow();
             }
-        });
+            index++;
+        }
 
         if (isVersionedObject) {
-            builder.addStatement("this.setRecversion(rs.getInt($S))", "recversion");
+            builder.addStatement("this.setRecversion(rs.getInt(++column))");
         }
 
         return builder.build();
     }
 
-    private static MethodSpec buildSetFieldValue() {
+    private static MethodSpec buildSetFieldValue(Map<String, ? extends ColumnMeta> columns, boolean markDirty) {
         String nameParam = "name";
         String valueParam = "value";
 
-        return MethodSpec.methodBuilder("_setFieldValue")
+        MethodSpec.Builder builder = MethodSpec.methodBuilder("_setFieldValue")
                 .addAnnotation(Override.class)
                 .addModifiers(Modifier.PROTECTED)
                 .addParameter(String.class, nameParam)
                 .addParameter(Object.class, valueParam)
-                .beginControlFlow("try")
-                .addStatement("$T f = getClass().getDeclaredField($N)", Field.class, nameParam)
-                .addStatement("f.setAccessible(true)")
-                .addStatement("f.set(this, value)")
-                .endControlFlow()
-                .beginControlFlow("catch ($T e)", Exception.class)
-                .addStatement("throw new $T(e)", RuntimeException.class)
+                .beginControlFlow("switch ($N)", nameParam);
+
+        AtomicInteger counter = new AtomicInteger(0);
+        columns.forEach((name, meta) -> {
+            builder.addCode("case $S:\n$>", name)
+                    .addStatement("this.$N = ($T) $N", name, meta.getJavaClass(), valueParam);
+            int column = counter.getAndIncrement();
+            if (markDirty) {
+                builder.addStatement("_markDirty($L)", column);
+            }
+            builder.addStatement("break")
+                    .addCode("$<");
+        });
+
+        return builder.addCode("default:\n$>")
+                .addStatement("throw new $T($S, $N, _objectName())", CelestaException.class,
+                        "No column %s exists in %s.", nameParam)
+                .addCode("$<")
                 .endControlFlow()
                 .build();
     }
 
-    private static MethodSpec buildClearBuffer(Map<String, ? extends ColumnMeta> columns, Set<Column> pk) {
+    private static MethodSpec buildClearBuffer(Map<String, ? extends ColumnMeta> columns, Set<Column> pk,
+                                               boolean markDirty) {
 
         ParameterSpec param = ParameterSpec.builder(boolean.class, "withKeys").build();
 
@@ -438,6 +462,10 @@ public final class CursorGenerator {
                 .filter(e -> !pk.contains(e.getValue()))
                 .forEach(e -> builder.addStatement("this.$N = null", e.getKey()));
 
+        if (markDirty) {
+            builder.addStatement("_markAllDirty()");
+        }
+
         return builder.build();
     }
 
@@ -459,20 +487,16 @@ public final class CursorGenerator {
         return builder.build();
     }
 
-    private static MethodSpec buildCurrentValues(Map<String, ? extends ColumnMeta> columns) {
-        ArrayTypeName resultType = ArrayTypeName.of(Object.class);
-
-        MethodSpec.Builder builder = MethodSpec.methodBuilder("_currentValues")
-                .addModifiers(Modifier.PUBLIC)
+    private static MethodSpec buildFillCurrentValues(Map<String, ? extends ColumnMeta> columns) {
+        MethodSpec.Builder builder = MethodSpec.methodBuilder("_fillCurrentValues")
+                .addModifiers(Modifier.PROTECTED)
                 .addAnnotation(Override.class)
-                .returns(resultType)
-                .addStatement("$T result = new Object[$L]", resultType, columns.size());
+                .addParameter(ArrayTypeName.of(Object.class), "values");
 
         AtomicInteger counter = new AtomicInteger(0);
         columns.forEach(
-                (name, c) -> builder.addStatement("result[$L] = this.$N", counter.getAndIncrement(), name)
+                (name, c) -> builder.addStatement("values[$L] = this.$N", counter.getAndIncrement(), name)
         );
-        builder.addStatement("return result");
         return builder.build();
     }
 
@@ -539,7 +563,8 @@ public final class CursorGenerator {
     }
 
     private static List<MethodSpec> buildCompileCopying(
-            GrainElement ge, String className, Collection<String> columns, boolean isVersionedObject
+            GrainElement ge, String className, Collection<String> columns, boolean isVersionedObject,
+            boolean markDirty
     ) {
         final String copyFieldsFromMethodName = "copyFieldsFrom";
 
@@ -600,6 +625,9 @@ public final class CursorGenerator {
         if (isVersionedObject)
             copyFieldsFromBuilder.addStatement("this.setRecversion(from.getRecversion())");
 
+        if (markDirty)
+            copyFieldsFromBuilder.addStatement("_markAllDirty()");
+
         return Arrays.asList(getBufferCopy, copyFieldsFromBuilder.build());
     }
 
@@ -1,24 +1,22 @@
 package data.table;
 
 import java.io.Serializable;
-import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
-import java.util.TimeZone;
 import java.util.function.Consumer;
 
 import ru.curs.celesta.CallContext;
+import ru.curs.celesta.CelestaException;
 import ru.curs.celesta.ICelesta;
 import ru.curs.celesta.dbutils.BLOB;
 import ru.curs.celesta.dbutils.BasicCursor;
@@ -52,6 +50,7 @@ public final class TestTableCursor extends Cursor implements Iterable<TestTableC
 
     public void setId(Integer id) {
         this.id = id;
+        _markDirty(0);
     }
 
     public String getStr() {
@@ -60,6 +59,7 @@ public final class TestTableCursor extends Cursor implements Iterable<TestTableC
 
     public void setStr(String str) {
         this.str = str;
+        _markDirty(1);
     }
 
     public Boolean getDeleted() {
@@ -68,6 +68,7 @@ public final class TestTableCursor extends Cursor implements Iterable<TestTableC
 
     public void setDeleted(Boolean deleted) {
         this.deleted = deleted;
+        _markDirty(2);
     }
 
     public Double getWeight() {
@@ -76,6 +77,7 @@ public final class TestTableCursor extends Cursor implements Iterable<TestTableC
 
     public void setWeight(Double weight) {
         this.weight = weight;
+        _markDirty(3);
     }
 
     public String getContent() {
@@ -84,6 +86,7 @@ public final class TestTableCursor extends Cursor implements Iterable<TestTableC
 
     public void setContent(String content) {
         this.content = content;
+        _markDirty(4);
     }
 
     public Date getCreated() {
@@ -92,6 +95,7 @@ public final class TestTableCursor extends Cursor implements Iterable<TestTableC
 
     public void setCreated(Date created) {
         this.created = created;
+        _markDirty(5);
     }
 
     public BLOB getRawData() {
@@ -100,6 +104,7 @@ public final class TestTableCursor extends Cursor implements Iterable<TestTableC
 
     public void setRawData(BLOB rawData) {
         this.rawData = rawData;
+        _markDirty(6);
     }
 
     public BigDecimal getCost() {
@@ -108,6 +113,7 @@ public final class TestTableCursor extends Cursor implements Iterable<TestTableC
 
     public void setCost(BigDecimal cost) {
         this.cost = cost;
+        _markDirty(7);
     }
 
     public ZonedDateTime getToDelete() {
@@ -116,17 +122,50 @@ public final class TestTableCursor extends Cursor implements Iterable<TestTableC
 
     public void setToDelete(ZonedDateTime toDelete) {
         this.toDelete = toDelete;
+        _markDirty(8);
     }
 
     @Override
     protected void _setFieldValue(String name, Object value) {
-        try {
-            Field f = getClass().getDeclaredField(name);
-
-            f.setAccessible(true);
-            f.set(this, value);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        switch (name) {
+            case "id":
+                this.id = (Integer) value;
+                _markDirty(0);
+                break;
+            case "str":
+                this.str = (String) value;
+                _markDirty(1);
+                break;
+            case "deleted":
+                this.deleted = (Boolean) value;
+                _markDirty(2);
+                break;
+            case "weight":
+                this.weight = (Double) value;
+                _markDirty(3);
+                break;
+            case "content":
+                this.content = (String) value;
+                _markDirty(4);
+                break;
+            case "created":
+                this.created = (Date) value;
+                _markDirty(5);
+                break;
+            case "rawData":
+                this.rawData = (BLOB) value;
+                _markDirty(6);
+                break;
+            case "cost":
+                this.cost = (BigDecimal) value;
+                _markDirty(7);
+                break;
+            case "toDelete":
+                this.toDelete = (ZonedDateTime) value;
+                _markDirty(8);
+                break;
+            default:
+                throw new CelestaException("No column %s exists in %s.", name, _objectName());
         }
     }
 
@@ -138,59 +177,60 @@ public final class TestTableCursor extends Cursor implements Iterable<TestTableC
     }
 
     @Override
-    protected void _parseResultInternal(ResultSet rs) throws SQLException {
-        if (this.inRec("id")) {
-            this.id = rs.getInt("id");
+    protected void _parseResultInternal(ResultSet rs, boolean[] projection) throws SQLException {
+        int column = 0;
+        if (projection[0]) {
+            this.id = rs.getInt(++column);
             if (rs.wasNull()) {
                 this.id = null;
             }
         }
-        if (this.inRec("str")) {
-            this.str = rs.getString("str");
+        if (projection[1]) {
+            this.str = rs.getString(++column);
             if (rs.wasNull()) {
                 this.str = null;
             }
         }
-        if (this.inRec("deleted")) {
-            this.deleted = rs.getBoolean("deleted");
+        if (projection[2]) {
+            this.deleted = rs.getBoolean(++column);
             if (rs.wasNull()) {
                 this.deleted = null;
             }
         }
-        if (this.inRec("weight")) {
-            this.weight = rs.getDouble("weight");
+        if (projection[3]) {
+            this.weight = rs.getDouble(++column);
             if (rs.wasNull()) {
                 this.weight = null;
             }
         }
-        if (this.inRec("content")) {
-            this.content = rs.getString("content");
+        if (projection[4]) {
+            this.content = rs.getString(++column);
             if (rs.wasNull()) {
                 this.content = null;
             }
         }
-        if (this.inRec("created")) {
-            this.created = rs.getTimestamp("created");
+        if (projection[5]) {
+            this.created = rs.getTimestamp(++column);
             if (rs.wasNull()) {
                 this.created = null;
             }
         }
         this.rawData = null;
-        if (this.inRec("cost")) {
-            this.cost = rs.getBigDecimal("cost");
+        if (projection[7]) {
+            this.cost = rs.getBigDecimal(++column);
             if (rs.wasNull()) {
                 this.cost = null;
             }
         }
-        if (this.inRec("toDelete")) {
-            Timestamp ts = rs.getTimestamp("toDelete", Calendar.getInstance(TimeZone.getTimeZone("UTC")));
+        if (projection[8]) {
+            Timestamp ts = rs.getTimestamp(++column, _utcCalendar());
             if (ts != null) {
                 this.toDelete = ZonedDateTime.of(ts.toLocalDateTime(), ZoneOffset.systemDefault());
             } else {
                 this.toDelete = null;
             }
         }
-        this.setRecversion(rs.getInt("recversion"));
+        this.setRecversion(rs.getInt(++column));
     }
 
     @Override
@@ -206,21 +246,20 @@ public final class TestTableCursor extends Cursor implements Iterable<TestTableC
         this.rawData = null;
         this.cost = null;
         this.toDelete = null;
+        _markAllDirty();
     }
 
     @Override
-    public Object[] _currentValues() {
-        Object[] result = new Object[9];
-        result[0] = this.id;
-        result[1] = this.str;
-        result[2] = this.deleted;
-        result[3] = this.weight;
-        result[4] = this.content;
-        result[5] = this.created;
-        result[6] = this.rawData;
-        result[7] = this.cost;
-        result[8] = this.toDelete;
-        return result;
+    protected void _fillCurrentValues(Object[] values) {
+        values[0] = this.id;
+        values[1] = this.str;
+        values[2] = this.deleted;
+        values[3] = this.weight;
+        values[4] = this.content;
+        values[5] = this.created;
+        values[6] = this.rawData;
+        values[7] = this.cost;
+        values[8] = this.toDelete;
     }
 
     public void calcRawData() {
@@ -285,6 +324,7 @@ public final class TestTableCursor extends Cursor implements Iterable<TestTableC
         this.cost = from.cost;
         this.toDelete = from.toDelete;
         this.setRecversion(from.getRecversion());
+        _markAllDirty();
     }
 
 
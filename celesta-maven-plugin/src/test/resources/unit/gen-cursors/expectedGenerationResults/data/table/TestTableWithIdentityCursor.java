@@ -1,6 +1,5 @@
 package data.table;
 
-import java.lang.reflect.Field;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Iterator;
@@ -11,6 +10,7 @@ import java.util.Set;
 import java.util.function.Consumer;
 
 import ru.curs.celesta.CallContext;
+import ru.curs.celesta.CelestaException;
 import ru.curs.celesta.ICelesta;
 import ru.curs.celesta.dbutils.BasicCursor;
 import ru.curs.celesta.dbutils.Cursor;
@@ -35,17 +35,18 @@ public final class TestTableWithIdentityCursor extends Cursor implements Iterabl
 
     public void setIdentityId(Integer identityId) {
         this.identityId = identityId;
+        _markDirty(0);
     }
 
     @Override
     protected void _setFieldValue(String name, Object value) {
-        try {
-            Field f = getClass().getDeclaredField(name);
-
-            f.setAccessible(true);
-            f.set(this, value);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        switch (name) {
+            case "identityId":
+                this.identityId = (Integer) value;
+                _markDirty(0);
+                break;
+            default:
+                throw new CelestaException("No column %s exists in %s.", name, _objectName());
         }
     }
 
@@ -57,14 +58,15 @@ public final class TestTableWithIdentityCursor extends Cursor implements Iterabl
     }
 
     @Override
-    protected void _parseResultInternal(ResultSet rs) throws SQLException {
-        if (this.inRec("identityId")) {
-            this.identityId = rs.getInt("identityId");
+    protected void _parseResultInternal(ResultSet rs, boolean[] projection) throws SQLException {
+        int column = 0;
+        if (projection[0]) {
+            this.identityId = rs.getInt(++column);
             if (rs.wasNull()) {
                 this.identityId = null;
             }
         }
-        this.setRecversion(rs.getInt("recversion"));
+        this.setRecversion(rs.getInt(++column));
     }
 
     @Override
@@ -72,13 +74,12 @@ public final class TestTableWithIdentityCursor extends Cursor implements Iterabl
         if (withKeys) {
             this.identityId = null;
         }
+        _markAllDirty();
     }
 
     @Override
-    public Object[] _currentValues() {
-        Object[] result = new Object[1];
-        result[0] = this.identityId;
-        return result;
+    protected void _fillCurrentValues(Object[] values) {
+        values[0] = this.identityId;
     }
 
     @Override
@@ -128,6 +129,7 @@ public final class TestTableWithIdentityCursor extends Cursor implements Iterabl
         TestTableWithIdentityCursor from = (TestTableWithIdentityCursor)c;
         this.identityId = from.identityId;
         this.setRecversion(from.getRecversion());
+        _markAllDirty();
     }
 
     @Override
@@ -1,6 +1,5 @@
 package data.view;
 
-import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -10,6 +9,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import ru.curs.celesta.CallContext;
+import ru.curs.celesta.CelestaException;
 import ru.curs.celesta.dbutils.BasicCursor;
 import ru.curs.celesta.dbutils.CursorIterator;
 import ru.curs.celesta.dbutils.MaterializedViewCursor;
@@ -54,13 +54,18 @@ public final class TestTableMvCursor extends MaterializedViewCursor implements I
 
     @Override
     protected void _setFieldValue(String name, Object value) {
-        try {
-            Field f = getClass().getDeclaredField(name);
-
-            f.setAccessible(true);
-            f.set(this, value);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        switch (name) {
+            case "surrogate_count":
+                this.surrogate_count = (Integer) value;
+                break;
+            case "c":
+                this.c = (Integer) value;
+                break;
+            case "cost":
+                this.cost = (BigDecimal) value;
+                break;
+            default:
+                throw new CelestaException("No column %s exists in %s.", name, _objectName());
         }
     }
 
@@ -72,21 +77,22 @@ public final class TestTableMvCursor extends MaterializedViewCursor implements I
     }
 
     @Override
-    protected void _parseResult(ResultSet rs) throws SQLException {
-        if (this.inRec("surrogate_count")) {
-            this.surrogate_count = rs.getInt("surrogate_count");
+    protected void _parseResult(ResultSet rs, boolean[] projection) throws SQLException {
+        int column = 0;
+        if (projection[0]) {
+            this.surrogate_count = rs.getInt(++column);
             if (rs.wasNull()) {
                 this.surrogate_count = null;
             }
         }
-        if (this.inRec("c")) {
-            this.c = rs.getInt("c");
+        if (projection[1]) {
+            this.c = rs.getInt(++column);
             if (rs.wasNull()) {
                 this.c = null;
             }
         }
-        if (this.inRec("cost")) {
-            this.cost = rs.getBigDecimal("cost");
+        if (projection[2]) {
+            this.cost = rs.getBigDecimal(++column);
             if (rs.wasNull()) {
                 this.cost = null;
             }
@@ -103,12 +109,10 @@ public final class TestTableMvCursor extends MaterializedViewCursor implements I
     }
 
     @Override
-    public Object[] _currentValues() {
-        Object[] result = new Object[3];
-        result[0] = this.surrogate_count;
-        result[1] = this.c;
-        result[2] = this.cost;
-        return result;
+    protected void _fillCurrentValues(Object[] values) {
+        values[0] = this.surrogate_count;
+        values[1] = this.c;
+        values[2] = this.cost;
     }
 
     @Override
@@ -1,6 +1,5 @@
 package data.view;
 
-import java.lang.reflect.Field;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Iterator;
@@ -10,6 +9,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import ru.curs.celesta.CallContext;
+import ru.curs.celesta.CelestaException;
 import ru.curs.celesta.dbutils.BasicCursor;
 import ru.curs.celesta.dbutils.CursorIterator;
 import ru.curs.celesta.dbutils.ParameterizedViewCursor;
@@ -36,20 +36,20 @@ public final class TestTablePvCursor extends ParameterizedViewCursor implements
 
     @Override
     protected void _setFieldValue(String name, Object value) {
-        try {
-            Field f = getClass().getDeclaredField(name);
-
-            f.setAccessible(true);
-            f.set(this, value);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        switch (name) {
+            case "s":
+                this.s = (Integer) value;
+                break;
+            default:
+                throw new CelestaException("No column %s exists in %s.", name, _objectName());
         }
     }
 
     @Override
-    protected void _parseResult(ResultSet rs) throws SQLException {
-        if (this.inRec("s")) {
-            this.s = rs.getInt("s");
+    protected void _parseResult(ResultSet rs, boolean[] projection) throws SQLException {
+        int column = 0;
+        if (projection[0]) {
+            this.s = rs.getInt(++column);
             if (rs.wasNull()) {
                 this.s = null;
             }
@@ -62,10 +62,8 @@ public final class TestTablePvCursor extends ParameterizedViewCursor implements
     }
 
     @Override
-    public Object[] _currentValues() {
-        Object[] result = new Object[1];
-        result[0] = this.s;
-        return result;
+    protected void _fillCurrentValues(Object[] values) {
+        values[0] = this.s;
     }
 
     @Override
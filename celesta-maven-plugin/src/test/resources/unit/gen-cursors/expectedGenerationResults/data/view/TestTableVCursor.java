@@ -1,6 +1,5 @@
 package data.view;
 
-import java.lang.reflect.Field;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Iterator;
@@ -9,6 +8,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import ru.curs.celesta.CallContext;
+import ru.curs.celesta.CelestaException;
 import ru.curs.celesta.dbutils.BasicCursor;
 import ru.curs.celesta.dbutils.CursorIterator;
 import ru.curs.celesta.dbutils.ViewCursor;
@@ -35,20 +35,20 @@ public final class TestTableVCursor extends ViewCursor implements Iterable<TestT
 
     @Override
     protected void _setFieldValue(String name, Object value) {
-        try {
-            Field f = getClass().getDeclaredField(name);
-
-            f.setAccessible(true);
-            f.set(this, value);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        switch (name) {
+            case "id":
+                this.id = (Integer) value;
+                break;
+            default:
+                throw new CelestaException("No column %s exists in %s.", name, _objectName());
         }
     }
 
     @Override
-    protected void _parseResult(ResultSet rs) throws SQLException {
-        if (this.inRec("id")) {
-            this.id = rs.getInt("id");
+    protected void _parseResult(ResultSet rs, boolean[] projection) throws SQLException {
+        int column = 0;
+        if (projection[0]) {
+            this.id = rs.getInt(++column);
             if (rs.wasNull()) {
                 this.id = null;
             }
@@ -61,10 +61,8 @@ public final class TestTableVCursor extends ViewCursor implements Iterable<TestT
     }
 
     @Override
-    public Object[] _currentValues() {
-        Object[] result = new Object[1];
-        result[0] = this.id;
-        return result;
+    protected void _fillCurrentValues(Object[] values) {
+        values[0] = this.id;
     }
 
     @Override
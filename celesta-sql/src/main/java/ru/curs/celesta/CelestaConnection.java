@@ -22,15 +22,34 @@ import java.util.concurrent.Executor;
 public abstract class CelestaConnection implements Connection {
 
   private final Connection connection;
+  private final PreparedStatementCache statementCache;
 
   CelestaConnection(Connection connection) {
+    this(connection, null);
+  }
+
+  CelestaConnection(Connection connection, PreparedStatementCache statementCache) {
     this.connection = connection;
+    this.statementCache = statementCache;
   }
 
   public Connection getConnection() {
     return connection;
   }
 
+  /**
+   * Returns the number of idle statements in the prepared statement cache of the connection.
+   */
+  public int getStatementCacheSize() {
+    return statementCache == null ? 0 : statementCache.size();
+  }
+
+  void closeStatementCache() {
+    if (statementCache != null) {
+      statementCache.close();
+    }
+  }
+
   @Override
   public Statement createStatement() throws SQLException {
     return connection.createStatement();
@@ -38,7 +57,10 @@ public abstract class CelestaConnection implements Connection {
 
   @Override
   public PreparedStatement prepareStatement(String sql) throws SQLException {
-    return connection.prepareStatement(sql);
+    if (statementCache == null) {
+      return connection.prepareStatement(sql);
+    }
+    return statementCache.get(this, connection, sql);
   }
 
   @Override
@@ -3,7 +3,15 @@ package ru.curs.celesta;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -11,28 +19,77 @@ import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
 
 /**
  * Пул соединений с базой данных.
- *
+ * <p>
+ * The count of borrowed connections is bounded by
+ * {@link ConnectionPoolConfiguration#getMaxPoolSize()}, borrowers wait for a free
+ * connection in FIFO order. Connections are validated by a background task when
+ * they stay idle longer than {@link ConnectionPoolConfiguration#getValidationInterval()}
+ * rather than on every borrow, and are retired after
+ * {@link ConnectionPoolConfiguration#getMaxLifetime()}.
  */
 public final class ConnectionPool implements AutoCloseable {
 
-    private final ConcurrentLinkedQueue<CelestaConnection> pool = new ConcurrentLinkedQueue<>();
+    /**
+     * Idle connections, the most recently returned one is the first.
+     */
+    private final ConcurrentLinkedDeque<PooledConnection> pool = new ConcurrentLinkedDeque<>();
     private final String jdbcConnectionUrl;
     private final String driverClassName;
     private final String login;
     private final String password;
+    private final int minPoolSize;
+    private final int maxPoolSize;
+    private final long borrowTimeout;
+    private final long validationInterval;
+    private final int validationTimeout;
+    private final long maxLifetime;
+    private final int statementCacheSize;
+    private final Semaphore permits;
+    private final ScheduledExecutorService keepAlive;
     private DBAdaptor dbAdaptor;
     private volatile boolean isClosed;
+    private volatile boolean driverLoaded;
+
+    private final AtomicInteger totalCount = new AtomicInteger();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder borrowTimeoutCount = new LongAdder();
+    private final LongAdder borrowWaitNanos = new LongAdder();
+    private final AtomicLong maxBorrowWaitNanos = new AtomicLong();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
 
     public static ConnectionPool create(ConnectionPoolConfiguration configuration) {
-        return new ConnectionPool(configuration.getJdbcConnectionUrl(), configuration.getDriverClassName(),
-                configuration.getLogin(), configuration.getPassword());
+        return new ConnectionPool(configuration);
     }
 
-    private ConnectionPool(String jdbcConnectionUrl, String driverClassName, String login, String password) {
-        this.driverClassName = driverClassName;
-        this.login = login;
-        this.password = password;
-        this.jdbcConnectionUrl = jdbcConnectionUrl;
+    private ConnectionPool(ConnectionPoolConfiguration configuration) {
+        this.driverClassName = configuration.getDriverClassName();
+        this.login = configuration.getLogin();
+        this.password = configuration.getPassword();
+        this.jdbcConnectionUrl = configuration.getJdbcConnectionUrl();
+        this.minPoolSize = configuration.getMinPoolSize();
+        this.maxPoolSize = configuration.getMaxPoolSize();
+        this.borrowTimeout = configuration.getBorrowTimeout();
+        this.validationInterval = configuration.getValidationInterval();
+        this.validationTimeout = configuration.getValidationTimeout();
+        this.maxLifetime = configuration.getMaxLifetime();
+        this.statementCacheSize = configuration.getStatementCacheSize();
+        this.permits = maxPoolSize > 0 ? new Semaphore(maxPoolSize, true) : null;
+
+        if (validationInterval > 0) {
+            keepAlive = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "celesta-connection-pool-keep-alive");
+                t.setDaemon(true);
+                return t;
+            });
+            keepAlive.scheduleWithFixedDelay(this::maintain,
+                    validationInterval, validationInterval, TimeUnit.MILLISECONDS);
+        } else {
+            keepAlive = null;
+        }
 
         Runtime.getRuntime().addShutdownHook(new Thread(this::close));
     }
@@ -52,51 +109,161 @@ public final class ConnectionPool implements AutoCloseable {
             throw new CelestaException("ConnectionPool is closed");
         }
 
-        // First, we are trying to provide a connection from pool
-        Connection c = pool.poll();
-        while (c != null) {
-            try {
-                if (dbAdaptor.isValidConnection(c, 1))
+        acquirePermit();
+        try {
+            // First, we are trying to provide a connection from pool
+            PooledConnection c;
+            while ((c = pool.pollFirst()) != null) {
+                if (isUsable(c)) {
+                    c.borrow();
                     return c;
-            } catch (CelestaException e) {
-                // do something to make CheckStyle happy ))
-                c = null;
+                }
+                retire(c);
+            }
+
+            c = createConnection();
+            c.borrow();
+            return c;
+        } catch (RuntimeException e) {
+            releasePermit();
+            throw e;
+        }
+    }
+
+    private void acquirePermit() {
+        long start = System.nanoTime();
+        if (permits != null) {
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CelestaException("Interrupted while waiting for a connection from the pool");
+            }
+            if (!acquired) {
+                borrowTimeoutCount.increment();
+                throw new CelestaException("Could not get a connection from the pool within %d ms: "
+                        + "all %d connections are in use", borrowTimeout, activeCount.get());
             }
-            c = pool.poll();
         }
+        long wait = System.nanoTime() - start;
+        borrowCount.increment();
+        borrowWaitNanos.add(wait);
+        maxBorrowWaitNanos.accumulateAndGet(wait, Math::max);
+        activeCount.incrementAndGet();
+    }
+
+    private void releasePermit() {
+        activeCount.decrementAndGet();
+        if (permits != null) {
+            permits.release();
+        }
+    }
 
+    private PooledConnection createConnection() {
         try {
-            Class.forName(driverClassName);
+            loadDriver();
+            Connection c;
             if (login.isEmpty()) {
                 c = DriverManager.getConnection(jdbcConnectionUrl);
             } else {
                 c = DriverManager.getConnection(jdbcConnectionUrl, login, password);
             }
             c.setAutoCommit(false);
-
-            CelestaConnection celestaConnection = new CelestaConnection(c) {
-                @Override
-                public void close() {
-                    try {
-                        if (isClosed) {
-                            getConnection().close();
-                        } else {
-                            commit();
-                            pool.add(this);
-                        }
-                    } catch (SQLException e){
-                        //ignore everything
-                        e.printStackTrace();
-                    }
-                }
-            };
-            return celestaConnection;
-
+            totalCount.incrementAndGet();
+            createdCount.increment();
+            return new PooledConnection(c);
         } catch (SQLException | ClassNotFoundException e) {
             throw new CelestaException("Could not connect to %s with error: %s",
                     PasswordHider.maskPassword(jdbcConnectionUrl), e.getMessage());
         }
+    }
 
+    private void loadDriver() throws ClassNotFoundException {
+        if (!driverLoaded) {
+            Class.forName(driverClassName);
+            driverLoaded = true;
+        }
+    }
+
+    /**
+     * Cheap check of an idle connection which does not hit the database.
+     */
+    private boolean isUsable(PooledConnection c) {
+        try {
+            return !(c.isExpired() || c.getConnection().isClosed());
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void retire(PooledConnection c) {
+        totalCount.decrementAndGet();
+        evictedCount.increment();
+        c.closeStatementCache();
+        try {
+            c.getConnection().close();
+        } catch (SQLException e) {
+            // the connection is broken anyway
+            return;
+        }
+    }
+
+    /**
+     * Validates connections which have been idle for a long time, retires expired ones
+     * and keeps the minimal count of idle connections.
+     */
+    private void maintain() {
+        if (isClosed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (PooledConnection c : pool) {
+            if (now - c.returnedAt < validationInterval && !c.isExpired()) {
+                continue;
+            }
+            // the connection could have been borrowed meanwhile
+            if (!pool.removeFirstOccurrence(c)) {
+                continue;
+            }
+            if (isUsable(c) && isValid(c)) {
+                c.returnedAt = System.currentTimeMillis();
+                pool.offerLast(c);
+            } else {
+                retire(c);
+            }
+        }
+
+        while (!isClosed && pool.size() < minPoolSize
+                && (maxPoolSize <= 0 || totalCount.get() < maxPoolSize)) {
+            // a new connection is created under a permit, so that the pool never exceeds its maximal size
+            if (permits != null && !permits.tryAcquire()) {
+                return;
+            }
+            try {
+                PooledConnection c = createConnection();
+                c.returnedAt = System.currentTimeMillis();
+                pool.offerLast(c);
+            } catch (CelestaException e) {
+                // the database is not available now, we will try next time
+                return;
+            } finally {
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        }
+    }
+
+    private boolean isValid(PooledConnection c) {
+        if (dbAdaptor == null) {
+            return true;
+        }
+        try {
+            return dbAdaptor.isValidConnection(c.getConnection(), validationTimeout);
+        } catch (CelestaException e) {
+            return false;
+        }
     }
 
     /**
@@ -122,9 +289,12 @@ public final class ConnectionPool implements AutoCloseable {
     public void close() {
         if (!isClosed) {
             isClosed = true;
-            CelestaConnection c;
+            if (keepAlive != null) {
+                keepAlive.shutdownNow();
+            }
+            PooledConnection c;
             while ((c = pool.poll()) != null) {
-                c.close();
+                retire(c);
             }
         }
     }
@@ -139,6 +309,78 @@ public final class ConnectionPool implements AutoCloseable {
         return pool.size();
     }
 
+    /**
+     * Returns the number of connections which are borrowed from the pool.
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * Returns the number of open connections, both idle and borrowed.
+     */
+    public int getTotalCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Returns the number of successful borrows.
+     */
+    public long getBorrowCount() {
+        return borrowCount.sum();
+    }
+
+    /**
+     * Returns the number of borrows failed because of timeout.
+     */
+    public long getBorrowTimeoutCount() {
+        return borrowTimeoutCount.sum();
+    }
+
+    /**
+     * Returns the total time spent by borrowers waiting for a connection, in milliseconds.
+     */
+    public long getTotalBorrowWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(borrowWaitNanos.sum());
+    }
+
+    /**
+     * Returns the maximal time a borrower waited for a connection, in milliseconds.
+     */
+    public long getMaxBorrowWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxBorrowWaitNanos.get());
+    }
+
+    /**
+     * Returns the number of physical connections opened by the pool.
+     */
+    public long getCreatedCount() {
+        return createdCount.sum();
+    }
+
+    /**
+     * Returns the number of physical connections closed by the pool
+     * because they were broken, expired or the pool was closed.
+     */
+    public long getEvictedCount() {
+        return evictedCount.sum();
+    }
+
+    /**
+     * Returns the number of prepared statements taken from the statement caches of connections.
+     */
+    public long getStatementCacheHitCount() {
+        return statementCacheHits.sum();
+    }
+
+    /**
+     * Returns the number of prepared statements which were not found in the statement caches
+     * of connections and have been prepared.
+     */
+    public long getStatementCacheMissCount() {
+        return statementCacheMisses.sum();
+    }
+
     /**
      * If the poll is closed then this method will return true.
      *
@@ -148,6 +390,54 @@ public final class ConnectionPool implements AutoCloseable {
     public boolean isClosed(){
         return isClosed;
     }
+
+    /**
+     * Connection of the pool: closing returns it to the pool.
+     */
+    private final class PooledConnection extends CelestaConnection {
+        private final long createdAt = System.currentTimeMillis();
+        private final AtomicBoolean borrowed = new AtomicBoolean();
+        private volatile long returnedAt;
+
+        PooledConnection(Connection connection) {
+            super(connection, statementCacheSize > 0
+                    ? new PreparedStatementCache(statementCacheSize, statementCacheHits, statementCacheMisses)
+                    : null);
+        }
+
+        void borrow() {
+            borrowed.set(true);
+        }
+
+        boolean isExpired() {
+            return maxLifetime > 0 && System.currentTimeMillis() - createdAt >= maxLifetime;
+        }
+
+        @Override
+        public void close() {
+            // repeated close of the same borrow must not release the permit twice
+            if (!borrowed.compareAndSet(true, false)) {
+                return;
+            }
+            try {
+                if (isClosed || isExpired()) {
+                    retire(this);
+                } else {
+                    try {
+                        commit();
+                        returnedAt = System.currentTimeMillis();
+                        pool.offerFirst(this);
+                    } catch (SQLException e){
+                        //ignore everything
+                        e.printStackTrace();
+                        retire(this);
+                    }
+                }
+            } finally {
+                releasePermit();
+            }
+        }
+    }
 }
 
 /**
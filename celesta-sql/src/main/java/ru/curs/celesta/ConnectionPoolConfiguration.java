@@ -6,7 +6,13 @@ public class ConnectionPoolConfiguration {
   private String driverClassName;
   private String login;
   private String password;
-
+  private int minPoolSize;
+  private int maxPoolSize;
+  private long borrowTimeout = 30_000;
+  private long validationInterval = 30_000;
+  private int validationTimeout = 1;
+  private long maxLifetime = 1_800_000;
+  private int statementCacheSize = 100;
 
   public String getJdbcConnectionUrl() {
     return jdbcConnectionUrl;
@@ -40,4 +46,85 @@ public class ConnectionPoolConfiguration {
     this.password = password;
   }
 
+  /**
+   * Minimal count of idle connections kept open by the pool (0 by default).
+   */
+  public int getMinPoolSize() {
+    return minPoolSize;
+  }
+
+  public void setMinPoolSize(int minPoolSize) {
+    this.minPoolSize = minPoolSize;
+  }
+
+  /**
+   * Maximal count of connections borrowed at the same time,
+   * 0 (the default) means no limit.
+   */
+  public int getMaxPoolSize() {
+    return maxPoolSize;
+  }
+
+  public void setMaxPoolSize(int maxPoolSize) {
+    this.maxPoolSize = maxPoolSize;
+  }
+
+  /**
+   * Time in milliseconds to wait for a free connection when the pool is exhausted.
+   */
+  public long getBorrowTimeout() {
+    return borrowTimeout;
+  }
+
+  public void setBorrowTimeout(long borrowTimeout) {
+    this.borrowTimeout = borrowTimeout;
+  }
+
+  /**
+   * Time in milliseconds after which an idle connection is validated
+   * by the background task, 0 turns the background task off.
+   */
+  public long getValidationInterval() {
+    return validationInterval;
+  }
+
+  public void setValidationInterval(long validationInterval) {
+    this.validationInterval = validationInterval;
+  }
+
+  /**
+   * Timeout of connection validation in seconds.
+   */
+  public int getValidationTimeout() {
+    return validationTimeout;
+  }
+
+  public void setValidationTimeout(int validationTimeout) {
+    this.validationTimeout = validationTimeout;
+  }
+
+  /**
+   * Time in milliseconds after which a connection is closed and replaced
+   * by a new one, 0 means no limit.
+   */
+  public long getMaxLifetime() {
+    return maxLifetime;
+  }
+
+  public void setMaxLifetime(long maxLifetime) {
+    this.maxLifetime = maxLifetime;
+  }
+
+  /**
+   * Maximal count of idle prepared statements cached by each connection,
+   * 0 turns the cache off.
+   */
+  public int getStatementCacheSize() {
+    return statementCacheSize;
+  }
+
+  public void setStatementCacheSize(int statementCacheSize) {
+    this.statementCacheSize = statementCacheSize;
+  }
+
 }
@@ -0,0 +1,104 @@
+package ru.curs.celesta;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LRU cache of prepared statements of a physical connection keyed by SQL text.
+ * <p>
+ * A statement is handed out to one user at a time: closing the statement returns it
+ * to the cache, so that identical SQL prepared by another cursor or call context
+ * on the same connection reuses it.
+ */
+final class PreparedStatementCache {
+
+  private final int capacity;
+  private final LongAdder hits;
+  private final LongAdder misses;
+  /**
+   * Idle statements by SQL text, the least recently used SQL text is the first.
+   */
+  private final LinkedHashMap<String, Deque<CachedPreparedStatement.Entry>> idle = new LinkedHashMap<>(16, 0.75f, true);
+  private int idleCount;
+  private boolean closed;
+
+  PreparedStatementCache(int capacity, LongAdder hits, LongAdder misses) {
+    this.capacity = capacity;
+    this.hits = hits;
+    this.misses = misses;
+  }
+
+  /**
+   * Borrows a statement for the SQL text.
+   *
+   * @param owner  connection handed out to the borrower, returned by the statement's getConnection()
+   * @param conn  physical connection which prepares new statements
+   * @param sql  SQL text
+   */
+  synchronized PreparedStatement get(Connection owner, Connection conn, String sql) throws SQLException {
+    Deque<CachedPreparedStatement.Entry> statements = idle.get(sql);
+    CachedPreparedStatement.Entry entry;
+    if (statements != null) {
+      entry = statements.pollFirst();
+      idleCount--;
+      if (statements.isEmpty()) {
+        idle.remove(sql);
+      }
+      hits.increment();
+    } else {
+      misses.increment();
+      entry = new CachedPreparedStatement.Entry(conn.prepareStatement(sql), sql);
+    }
+    return new CachedPreparedStatement(entry, owner, this);
+  }
+
+  synchronized void release(CachedPreparedStatement.Entry statement) {
+    if (closed || !statement.reset()) {
+      statement.close();
+      return;
+    }
+    idle.computeIfAbsent(statement.getSql(), k -> new ArrayDeque<>()).offerFirst(statement);
+    idleCount++;
+
+    Iterator<Map.Entry<String, Deque<CachedPreparedStatement.Entry>>> eldest = idle.entrySet().iterator();
+    while (idleCount > capacity) {
+      Map.Entry<String, Deque<CachedPreparedStatement.Entry>> e = eldest.next();
+      while (idleCount > capacity && !e.getValue().isEmpty()) {
+        e.getValue().pollLast().close();
+        idleCount--;
+      }
+      if (e.getValue().isEmpty()) {
+        eldest.remove();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of idle statements in the cache.
+   */
+  synchronized int size() {
+    return idleCount;
+  }
+
+  /**
+   * Closes all idle statements, statements released afterwards are closed immediately.
+   */
+  synchronized void close() {
+    closed = true;
+    for (Deque<CachedPreparedStatement.Entry> statements : idle.values()) {
+      for (CachedPreparedStatement.Entry statement : statements) {
+        statement.close();
+      }
+    }
+    idle.clear();
+    idleCount = 0;
+  }
+
+}
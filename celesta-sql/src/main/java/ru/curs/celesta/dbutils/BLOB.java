@@ -1,16 +1,43 @@
 package ru.curs.celesta.dbutils;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.sql.Blob;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ru.curs.celesta.CelestaException;
 
 /**
  * Класс для работы с BLOB-полями.
+ * <p>
+ * Data is read and written in bulk. Values up to {@link #DEFAULT_INLINE_LIMIT}
+ * bytes are kept in memory, larger ones are spilled to a temporary file, which is
+ * deleted once the data is no longer referenced by any BLOB or stream.
  */
 public final class BLOB implements Cloneable {
-    private DataPage data;
+    /**
+     * Maximal size of data kept in memory.
+     */
+    static final int DEFAULT_INLINE_LIMIT = 1 << 20;
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int BUFFER_SIZE = 0x10000;
+
+    private final int inlineLimit;
+    private Data data;
     private boolean isModified;
     private int size;
 
@@ -18,6 +45,17 @@ public final class BLOB implements Cloneable {
      * Пустой (NULL) BLOB.
      */
     public BLOB() {
+        this(DEFAULT_INLINE_LIMIT);
+    }
+
+    /**
+     * Пустой (NULL) BLOB с заданным порогом выгрузки во временный файл.
+     *
+     * @param inlineLimit
+     *            Максимальный размер данных, хранимых в памяти.
+     */
+    BLOB(int inlineLimit) {
+        this.inlineLimit = inlineLimit;
     }
 
     /**
@@ -29,25 +67,36 @@ public final class BLOB implements Cloneable {
      *             При ошибке чтения.
      */
     BLOB(final InputStream source) throws IOException {
-        InputStream counter = new InputStream() {
-            @Override
-            public int read() throws IOException {
-                int result = source.read();
-                if (result >= 0)
-                    size++;
-                return result;
-            }
-        };
-        int buf = counter.read();
-        data = buf < 0 ? new DataPage(0) : new DataPage(buf, counter);
+        this(source, DEFAULT_INLINE_LIMIT);
+    }
+
+    /**
+     * BLOB на основе данных потока с заданным порогом выгрузки во временный файл.
+     *
+     * @param source
+     *            Поток, из которого данные прочитываются в BLOB.
+     * @param inlineLimit
+     *            Максимальный размер данных, хранимых в памяти.
+     * @throws IOException
+     *             При ошибке чтения.
+     */
+    BLOB(final InputStream source, int inlineLimit) throws IOException {
+        this(inlineLimit);
+        data = new Data(inlineLimit);
+        byte[] buf = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = source.read(buf)) >= 0) {
+            data.write(buf, 0, n);
+            size += n;
+        }
     }
 
     /**
-     * Клон-BLOB, указывающий на ту же самую страницу данных.
+     * Клон-BLOB, указывающий на те же самые данные.
      */
     @Override
     public BLOB clone() {
-        BLOB result = new BLOB();
+        BLOB result = new BLOB(inlineLimit);
         result.data = data;
         result.size = size;
         return result;
@@ -64,7 +113,11 @@ public final class BLOB implements Cloneable {
      * Возвращает поток для чтения данных.
      */
     public InputStream getInStream() {
-        return data == null ? null : data.getInStream();
+        try {
+            return data == null ? null : data.getInStream(size);
+        } catch (IOException e) {
+            throw new CelestaException("Could not read BLOB data: %s", e.getMessage());
+        }
     }
 
     /**
@@ -73,28 +126,40 @@ public final class BLOB implements Cloneable {
      */
     public OutputStream getOutStream() {
         isModified = true;
-        data = new DataPage();
+        data = new Data(inlineLimit);
         size = 0;
         return new OutputStream() {
-            private DataPage tail = data;
+            private final Data target = data;
+
+            @Override
+            public void write(int b) throws IOException {
+                target.write(b);
+                if (data == target)
+                    size++;
+            }
 
             @Override
-            public void write(int b) {
-                tail = tail.write(b);
-                size++;
+            public void write(byte[] b, int off, int len) throws IOException {
+                target.write(b, off, len);
+                if (data == target)
+                    size += len;
             }
         };
     }
 
     void saveToJDBCBlob(Blob b) throws SQLException {
-        DataPage currPage = data;
-        int i = 1;
-        while (currPage != null && currPage.pos == currPage.data.length) {
-            i += b.setBytes(i, currPage.data);
-            currPage = currPage.nextPage;
+        if (data == null)
+            return;
+        byte[] buf = new byte[BUFFER_SIZE];
+        long pos = 1;
+        try (InputStream is = getInStream()) {
+            int n;
+            while ((n = is.read(buf)) >= 0) {
+                pos += b.setBytes(pos, buf, 0, n);
+            }
+        } catch (IOException e) {
+            throw new SQLException(e);
         }
-        if (currPage != null)
-            b.setBytes(i, currPage.data, 0, currPage.pos);
     }
 
     /**
@@ -120,64 +185,202 @@ public final class BLOB implements Cloneable {
         return size;
     }
 
+    /**
+     * Whether the data has been spilled to a temporary file.
+     */
+    boolean isSpilled() {
+        return data != null && data.isSpilled();
+    }
+
     /**
      * Данные BLOB-поля.
+     * <p>
+     * Data is only appended, so clones and streams sharing it read a stable prefix.
+     * Until the inline limit is exceeded data is kept in the array, after that
+     * it goes to the temporary file and the array is used as a write buffer.
      */
-    private static final class DataPage {
-        private static final int DEFAULT_PAGE_SIZE = 0xFFFF;
-        private static final int BYTE_MASK = 0xFF;
+    private static final class Data {
+        private static final ReferenceQueue<Data> UNREACHABLE = new ReferenceQueue<>();
+        private static final Set<SpillFile> SPILL_FILES = ConcurrentHashMap.newKeySet();
+
+        private final int inlineLimit;
+        private byte[] bytes;
+        private int count;
+        private FileChannel file;
+        private long fileSize;
+
+        Data(int inlineLimit) {
+            this.inlineLimit = inlineLimit;
+            bytes = new byte[Math.min(INITIAL_CAPACITY, inlineLimit)];
+        }
+
+        synchronized boolean isSpilled() {
+            return file != null;
+        }
+
+        synchronized void write(int b) throws IOException {
+            makeRoom(1);
+            bytes[count++] = (byte) b;
+        }
+
+        synchronized void write(byte[] b, int off, int len) throws IOException {
+            if (file != null && len >= bytes.length) {
+                flush();
+                writeToFile(ByteBuffer.wrap(b, off, len));
+                return;
+            }
+            while (len > 0) {
+                makeRoom(len);
+                int n = Math.min(len, bytes.length - count);
+                System.arraycopy(b, off, bytes, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        /**
+         * Makes room for len bytes in the array (for at least one byte when spilled).
+         */
+        private void makeRoom(int len) throws IOException {
+            if (file == null) {
+                if ((long) count + len <= inlineLimit) {
+                    if (count + len > bytes.length) {
+                        // a new array: streams may still read the old one
+                        bytes = Arrays.copyOf(bytes,
+                                (int) Math.min(Math.max((long) bytes.length << 1, count + len), inlineLimit));
+                    }
+                    return;
+                }
+                spill();
+            }
+            if (count == bytes.length) {
+                flush();
+            }
+        }
 
-        private final byte[] data;
-        private DataPage nextPage;
-        private int pos;
+        private void spill() throws IOException {
+            Path path = Files.createTempFile("celesta-blob", ".tmp");
+            try {
+                file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                Files.deleteIfExists(path);
+                throw e;
+            }
+            SPILL_FILES.add(new SpillFile(this, file, path));
+            writeToFile(ByteBuffer.wrap(bytes, 0, count));
+            // a new buffer: streams may still read the old array
+            bytes = new byte[BUFFER_SIZE];
+            count = 0;
+        }
 
-        DataPage() {
-            this(DEFAULT_PAGE_SIZE);
+        private void flush() throws IOException {
+            writeToFile(ByteBuffer.wrap(bytes, 0, count));
+            count = 0;
         }
 
-        private DataPage(int size) {
-            data = new byte[size];
+        private void writeToFile(ByteBuffer buf) throws IOException {
+            while (buf.hasRemaining()) {
+                fileSize += file.write(buf, fileSize);
+            }
         }
 
-        private DataPage(int firstByte, InputStream source) throws IOException {
-            this();
-            int buf = firstByte;
-            while (pos < data.length && buf >= 0) {
-                data[pos++] = (byte) buf;
-                buf = source.read();
+        synchronized InputStream getInStream(int size) throws IOException {
+            if (file == null) {
+                return new ByteArrayInputStream(bytes, 0, size);
             }
-            nextPage = buf < 0 ? null : new DataPage(buf, source);
+            flush();
+            return new SpilledInputStream(size);
         }
 
-        DataPage write(int b) {
-            if (pos < data.length) {
-                data[pos++] = (byte) (b & BYTE_MASK);
-                return this;
-            } else {
-                DataPage result = new DataPage();
-                nextPage = result;
-                return result.write(b);
+        /**
+         * Stream over the temporary file; positional reads let several streams
+         * share the channel.
+         */
+        private final class SpilledInputStream extends InputStream {
+            private final long size;
+            private long pos;
+
+            SpilledInputStream(long size) {
+                this.size = size;
+            }
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0)
+                    return 0;
+                if (pos >= size)
+                    return -1;
+                int n = file.read(ByteBuffer.wrap(b, off, (int) Math.min(len, size - pos)), pos);
+                if (n < 0)
+                    return -1;
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public long skip(long n) {
+                long result = Math.max(0, Math.min(n, size - pos));
+                pos += result;
+                return result;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(size - pos, Integer.MAX_VALUE);
             }
         }
 
-        InputStream getInStream() {
-            return new InputStream() {
-                private int i = 0;
-                private DataPage currentPage = DataPage.this;
-
-                @Override
-                public int read() {
-                    if (i < currentPage.pos)
-                        return (int) currentPage.data[i++] & BYTE_MASK;
-                    else if (currentPage.nextPage != null) {
-                        i = 0;
-                        currentPage = currentPage.nextPage;
-                        return read();
-                    } else {
-                        return -1;
+        /**
+         * Closes and deletes the temporary file when its data becomes unreachable
+         * (or at JVM shutdown). Unreachable data are cleaned by a daemon thread
+         * which is started with the first spill.
+         */
+        private static final class SpillFile extends PhantomReference<Data> {
+            static {
+                Runtime.getRuntime().addShutdownHook(new Thread(
+                        () -> SPILL_FILES.forEach(SpillFile::clean), "celesta-blob-cleanup"));
+                Thread cleaner = new Thread(SpillFile::cleanUnreachable, "celesta-blob-cleaner");
+                cleaner.setDaemon(true);
+                cleaner.start();
+            }
+
+            private final FileChannel channel;
+            private final Path path;
+
+            SpillFile(Data data, FileChannel channel, Path path) {
+                super(data, UNREACHABLE);
+                this.channel = channel;
+                this.path = path;
+            }
+
+            private static void cleanUnreachable() {
+                while (true) {
+                    Reference<? extends Data> r;
+                    try {
+                        r = UNREACHABLE.remove();
+                    } catch (InterruptedException e) {
+                        return;
                     }
+                    ((SpillFile) r).clean();
                 }
-            };
+            }
+
+            void clean() {
+                SPILL_FILES.remove(this);
+                try {
+                    channel.close();
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    // the file is left in the temporary directory
+                }
+            }
         }
     }
 }
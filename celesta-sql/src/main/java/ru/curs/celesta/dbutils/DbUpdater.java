@@ -2,6 +2,7 @@ package ru.curs.celesta.dbutils;
 
 import ru.curs.celesta.CelestaException;
 import ru.curs.celesta.ConnectionPool;
+import ru.curs.celesta.CurrentScore;
 import ru.curs.celesta.ICallContext;
 import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
 import ru.curs.celesta.dbutils.meta.*;
@@ -13,6 +14,12 @@ import ru.curs.celesta.syscursors.ISchemaCursor;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class DbUpdater<T extends ICallContext> {
 
@@ -32,13 +39,23 @@ public abstract class DbUpdater<T extends ICallContext> {
     protected final AbstractScore score;
     private final boolean forceDdInitialize;
     protected final ConnectionPool connectionPool;
+    // number of grains being updated concurrently
+    private final int threads;
     protected ISchemaCursor schemaCursor;
+    // snapshot of the database objects of the grain being updated
+    private DbCatalog catalog;
 
     public DbUpdater(ConnectionPool connectionPool, AbstractScore score, boolean forceDdInitialize, DBAdaptor dbAdaptor) {
+        this(connectionPool, score, forceDdInitialize, dbAdaptor, 1);
+    }
+
+    public DbUpdater(ConnectionPool connectionPool, AbstractScore score, boolean forceDdInitialize,
+                     DBAdaptor dbAdaptor, int threads) {
         this.connectionPool = connectionPool;
         this.score = score;
         this.forceDdInitialize = forceDdInitialize;
         this.dbAdaptor = dbAdaptor;
+        this.threads = threads;
     }
 
 
@@ -48,6 +65,12 @@ public abstract class DbUpdater<T extends ICallContext> {
 
     protected abstract String getSchemasTableName();
 
+    /**
+     * Создаёт экземпляр, обновляющий отдельную гранулу в собственном контексте
+     * при параллельном обновлении гранул.
+     */
+    protected abstract DbUpdater<T> createWorker();
+
     public void updateSystemSchema() {
         try (T context = createContext()) {
             updateSystemSchema(context);
@@ -110,21 +133,18 @@ public abstract class DbUpdater<T extends ICallContext> {
             List<Grain> grains = new ArrayList<>(score.getGrains().values());
             Collections.sort(grains, GRAIN_COMPARATOR);
 
-            // Выполняем итерацию по гранулам.
-            boolean success = true;
-            for (Grain g : grains) {
-                if (! g.isAutoupdate()) {
-                    continue;
-                }
-                // Запись о грануле есть?
-                GrainInfo gi = dbGrains.get(g.getName());
-                if (gi == null) {
-                    insertGrainRec(g);
-                    success = updateGrain(g, connectionPool) & success;
-                } else {
-                    // Запись есть -- решение об апгрейде принимается на основе
-                    // версии и контрольной суммы.
-                    success = decideToUpgrade(g, gi, connectionPool) & success;
+            boolean success;
+            if (threads > 1) {
+                connectionPool.commit(context.getConn());
+                success = updateGrainsConcurrently(grains, dbGrains);
+            } else {
+                // Выполняем итерацию по гранулам.
+                success = true;
+                for (Grain g : grains) {
+                    if (! g.isAutoupdate()) {
+                        continue;
+                    }
+                    success = updateGrain(g, dbGrains.get(g.getName())) & success;
                 }
             }
             if (!success) {
@@ -137,6 +157,118 @@ public abstract class DbUpdater<T extends ICallContext> {
     }
 
 
+    private boolean updateGrain(Grain g, GrainInfo gi) {
+        // Запись о грануле есть?
+        if (gi == null) {
+            insertGrainRec(g);
+            return updateGrain(g, connectionPool);
+        } else {
+            // Запись есть -- решение об апгрейде принимается на основе
+            // версии и контрольной суммы.
+            return decideToUpgrade(g, gi, connectionPool);
+        }
+    }
+
+    /**
+     * Обновляет гранулы в нескольких потоках. Гранула обновляется после
+     * гранул, на таблицы которых ссылаются её внешние ключи и представления,
+     * каждая -- отдельным экземпляром (см. {@link #createWorker()}) на своём
+     * соединении.
+     * <p>
+     * Как и при последовательном обновлении, ошибка решения об апгрейде
+     * прерывает обновление: после неё новые гранулы не начинают обновляться,
+     * а первая в порядке зависимости ошибка выбрасывается после того,
+     * как завершится обновление уже начатых гранул.
+     *
+     * @param grains   гранулы в порядке зависимости
+     * @param dbGrains сведения о гранулах из базы данных
+     */
+    private boolean updateGrainsConcurrently(List<Grain> grains, Map<String, GrainInfo> dbGrains) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "celesta-dbupdate-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicBoolean aborted = new AtomicBoolean();
+        try {
+            Map<Grain, CompletableFuture<Boolean>> results = new LinkedHashMap<>();
+            for (Grain g : grains) {
+                CompletableFuture<?>[] dependencies = getDependencies(g).stream()
+                        .map(results::get)
+                        .filter(Objects::nonNull)
+                        .toArray(CompletableFuture<?>[]::new);
+                CompletableFuture<Boolean> result;
+                if (g.isAutoupdate()) {
+                    GrainInfo gi = dbGrains.get(g.getName());
+                    result = CompletableFuture.allOf(dependencies).thenApplyAsync(v -> {
+                        if (aborted.get()) {
+                            // the error which stopped the update is thrown by the caller
+                            return true;
+                        }
+                        // H2 triggers of materialized views look for the score of the current thread
+                        CurrentScore.set(score);
+                        DbUpdater<T> worker = createWorker();
+                        try (T context = worker.createContext()) {
+                            worker.initDataAccessors(context);
+                            return worker.updateGrain(g, gi);
+                        } catch (RuntimeException e) {
+                            aborted.set(true);
+                            throw e;
+                        }
+                    }, executor);
+                } else {
+                    result = CompletableFuture.completedFuture(true);
+                }
+                results.put(g, result);
+            }
+
+            boolean success = true;
+            RuntimeException error = null;
+            for (CompletableFuture<Boolean> result : results.values()) {
+                try {
+                    success = result.join() & success;
+                } catch (CompletionException e) {
+                    if (error == null) {
+                        error = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                    }
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+            return success;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Возвращает гранулы, на таблицы которых ссылаются внешние ключи
+     * и представления гранулы.
+     *
+     * @param g Гранула.
+     */
+    static Set<Grain> getDependencies(Grain g) {
+        Set<Grain> result = new HashSet<>();
+        for (Table t : g.getElements(Table.class).values()) {
+            for (ForeignKey fk : t.getForeignKeys()) {
+                result.add(fk.getReferencedTable().getGrain());
+            }
+        }
+        List<AbstractView> views = new ArrayList<>();
+        views.addAll(g.getElements(View.class).values());
+        views.addAll(g.getElements(ParameterizedView.class).values());
+        views.addAll(g.getElements(MaterializedView.class).values());
+        for (AbstractView v : views) {
+            for (TableRef tRef : v.getTables().values()) {
+                result.add(tRef.getTable().getGrain());
+            }
+        }
+        result.remove(g);
+        return result;
+    }
+
     void updateSysGrain(T context) {
         try {
             Connection conn = context.getConn();
@@ -195,14 +327,38 @@ public abstract class DbUpdater<T extends ICallContext> {
                 return updateGrain(g, connectionPool);
             case EQUALS:
                 // Версия не изменилась: апгрейдим лишь в том случае, если
-                // изменилась контрольная сумма.
-                if (gi.length != g.getLength() || gi.checksum != g.getChecksum())
+                // изменилась контрольная сумма или способ поддержки
+                // материализованных представлений триггерами.
+                if (gi.length != g.getLength() || gi.checksum != g.getChecksum()
+                        || !materializedViewTriggersAreActual(g))
                     return updateGrain(g, connectionPool);
             default:
                 return true;
         }
     }
 
+    /**
+     * Проверяет, что триггеры материализованных представлений гранулы созданы
+     * текущим способом (см. {@link DBAdaptor#getMaterializedViewChecksum(MaterializedView)}).
+     *
+     * @param g Гранула.
+     */
+    private boolean materializedViewTriggersAreActual(Grain g) {
+        final Connection conn = schemaCursor.callContext().getConn();
+        for (MaterializedView mv : g.getElements(MaterializedView.class).values()) {
+            TriggerQuery query = new TriggerQuery()
+                    .withSchema(mv.getGrain().getName())
+                    .withTableName(mv.getRefTable().getTable().getName())
+                    .withName(mv.getTriggerName(TriggerType.POST_INSERT));
+            String checksum = String.format(MaterializedView.CHECKSUM_COMMENT_TEMPLATE,
+                    dbAdaptor.getMaterializedViewChecksum(mv));
+            if (dbAdaptor.getTriggerBody(conn, query).map(b -> !b.contains(checksum)).orElse(false)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Выполняет обновление на уровне отдельной гранулы.
      *
@@ -227,6 +383,9 @@ public abstract class DbUpdater<T extends ICallContext> {
             // Удаляем все параметризованные представления
             dropAllParameterizedViews(g);
 
+            // Загружаем сведения о таблицах и последовательностях гранулы.
+            catalog = dbAdaptor.getCatalog(schemaCursor.callContext().getConn(), g);
+
             // Выполняем удаление ненужных индексов, чтобы облегчить задачу
             // обновления столбцов на таблицах.
             dropOrphanedGrainIndices(g);
@@ -296,6 +455,8 @@ public abstract class DbUpdater<T extends ICallContext> {
             schemaCursor.update();
             connectionPool.commit(schemaCursor.callContext().getConn());
             return false;
+        } finally {
+            catalog = null;
         }
     }
 
@@ -327,7 +488,7 @@ public abstract class DbUpdater<T extends ICallContext> {
         Connection conn = schemaCursor.callContext().getConn();
 
         for (SequenceElement s : g.getElements(SequenceElement.class).values()) {
-            if (dbAdaptor.sequenceExists(conn, g.getName(), s.getName())) {
+            if (sequenceExists(conn, s)) {
                 DbSequenceInfo sequenceInfo = dbAdaptor.getSequenceInfo(conn, s);
                 if (sequenceInfo.reflects(s))
                     dbAdaptor.alterSequence(conn, s);
@@ -413,7 +574,7 @@ public abstract class DbUpdater<T extends ICallContext> {
                 // Удаление индексов на тех полях, которые подвергнутся
                 // изменению
                 for (Map.Entry<String, Column> ee : e.getValue().getColumns().entrySet()) {
-                    DbColumnInfo ci = dbAdaptor.getColumnInfo(conn, ee.getValue());
+                    DbColumnInfo ci = getColumnInfo(conn, ee.getValue());
                     if (ci == null || !ci.reflects(ee.getValue())) {
                         dbAdaptor.dropIndex(g, dBIndexInfo);
                         break;
@@ -454,20 +615,20 @@ public abstract class DbUpdater<T extends ICallContext> {
 
         final Connection conn = schemaCursor.callContext().getConn();
 
-        if (!dbAdaptor.tableExists(conn, t.getGrain().getName(), t.getName())) {
+        if (!tableExists(conn, t)) {
             // Таблицы не существует в базе данных, создаём с нуля.
             dbAdaptor.createTable(conn, t);
             return true;
         }
 
         DbPkInfo pkInfo;
-        Set<String> dbColumns = dbAdaptor.getColumns(conn, t);
+        Set<String> dbColumns = getColumns(conn, t);
         boolean modified = updateColumns(t, conn, dbColumns, dbFKeys);
 
         // Для версионированных таблиц синхронизируем поле recversion
         if (t.isVersioned())
             if (dbColumns.contains(VersionedElement.REC_VERSION)) {
-                DbColumnInfo ci = dbAdaptor.getColumnInfo(conn, t.getRecVersionField());
+                DbColumnInfo ci = getColumnInfo(conn, t.getRecVersionField());
                 if (!ci.reflects(t.getRecVersionField())) {
                     dbAdaptor.updateColumn(conn, t.getRecVersionField(), ci);
                     modified = true;
@@ -476,11 +637,14 @@ public abstract class DbUpdater<T extends ICallContext> {
                 dbAdaptor.createColumn(conn, t.getRecVersionField());
                 modified = true;
             }
+        if (modified) {
+            invalidate(t);
+        }
 
 
         // Ещё раз проверяем первичный ключ и при необходимости (если его нет
         // или он был сброшен) создаём.
-        pkInfo = dbAdaptor.getPKInfo(conn, t);
+        pkInfo = getPKInfo(conn, t);
         if (pkInfo.isEmpty())
             dbAdaptor.createPK(conn, t);
 
@@ -492,7 +656,7 @@ public abstract class DbUpdater<T extends ICallContext> {
     void updateMaterializedView(MaterializedView mv, boolean refTableIsModified) {
         final Connection conn = schemaCursor.callContext().getConn();
 
-        boolean mViewExists = dbAdaptor.tableExists(conn, mv.getGrain().getName(), mv.getName());
+        boolean mViewExists = tableExists(conn, mv);
 
         if (mViewExists) {
 
@@ -507,7 +671,8 @@ public abstract class DbUpdater<T extends ICallContext> {
 
                 Optional<String> insertTriggerBody = dbAdaptor.getTriggerBody(conn, query);
                 boolean checksumIsMatched = insertTriggerBody.map(b -> b.contains(
-                        String.format(MaterializedView.CHECKSUM_COMMENT_TEMPLATE, mv.getChecksum()))).orElse(false);
+                        String.format(MaterializedView.CHECKSUM_COMMENT_TEMPLATE,
+                                dbAdaptor.getMaterializedViewChecksum(mv)))).orElse(false);
                 if (checksumIsMatched) {
                     return;
                 }
@@ -527,12 +692,13 @@ public abstract class DbUpdater<T extends ICallContext> {
             {
         // Таблица существует в базе данных, определяем: надо ли удалить
         // первичный ключ
-        DbPkInfo pkInfo = dbAdaptor.getPKInfo(conn, t);
+        DbPkInfo pkInfo = getPKInfo(conn, t);
         boolean result = false;
         boolean keyDropped = pkInfo.isEmpty();
         if (!(pkInfo.reflects(t) || keyDropped)) {
             dropReferencedFKs(t, conn, dbFKeys);
             dbAdaptor.dropPk(conn, t, pkInfo.getName());
+            invalidate(t);
             keyDropped = true;
         }
 
@@ -541,7 +707,7 @@ public abstract class DbUpdater<T extends ICallContext> {
                 // Таблица содержит колонку с таким именем, надо проверить
                 // все её атрибуты и при необходимости -- попытаться
                 // обновить.
-                DbColumnInfo ci = dbAdaptor.getColumnInfo(conn, e.getValue());
+                DbColumnInfo ci = getColumnInfo(conn, e.getValue());
                 if (!ci.reflects(e.getValue())) {
                     // Если колонка, требующая обновления, входит в первичный
                     // ключ -- сбрасываем первичный ключ.
@@ -551,17 +717,58 @@ public abstract class DbUpdater<T extends ICallContext> {
                         keyDropped = true;
                     }
                     dbAdaptor.updateColumn(conn, e.getValue(), ci);
+                    invalidate(t);
                     result = true;
                 }
             } else {
                 // Таблица не содержит колонку с таким именем, добавляем
                 dbAdaptor.createColumn(conn, e.getValue());
+                invalidate(t);
                 result = true;
             }
         }
         return result;
     }
 
+    private boolean tableExists(Connection conn, TableElement t) {
+        return catalog != null ? catalog.tableExists(t.getName())
+                : dbAdaptor.tableExists(conn, t.getGrain().getName(), t.getName());
+    }
+
+    private boolean sequenceExists(Connection conn, SequenceElement s) {
+        return catalog != null ? catalog.sequenceExists(s.getName())
+                : dbAdaptor.sequenceExists(conn, s.getGrain().getName(), s.getName());
+    }
+
+    private Set<String> getColumns(Connection conn, TableElement t) {
+        Set<String> result = catalog == null ? null : catalog.getColumns(t.getName());
+        return result != null ? result : dbAdaptor.getColumns(conn, t);
+    }
+
+    private DbColumnInfo getColumnInfo(Connection conn, Column c) {
+        String tableName = c.getParentTable().getName();
+        if (catalog != null && catalog.isColumnAbsent(tableName, c.getName())) {
+            return null;
+        }
+        DbColumnInfo result = catalog == null ? null : catalog.getColumnInfo(tableName, c.getName());
+        return result != null ? result : dbAdaptor.getColumnInfo(conn, c);
+    }
+
+    private DbPkInfo getPKInfo(Connection conn, TableElement t) {
+        DbPkInfo result = catalog == null ? null : catalog.getPKInfo(t.getName());
+        return result != null ? result : dbAdaptor.getPKInfo(conn, t);
+    }
+
+    /**
+     * Marks the table as modified, so that its structure is queried from
+     * the database rather than from the snapshot.
+     */
+    private void invalidate(TableElement t) {
+        if (catalog != null) {
+            catalog.invalidate(t.getName());
+        }
+    }
+
     private void dropReferencedFKs(TableElement t, Connection conn, List<DbFkInfo> dbFKeys) {
         Iterator<DbFkInfo> i = dbFKeys.iterator();
         while (i.hasNext()) {
@@ -130,26 +130,34 @@ public abstract class DBAdaptor implements QueryBuildingHelper, StaticDataAdapto
      * @return Comma separated {@link String} field names.
      */
     static String getTableFieldsListExceptBlobs(DataGrainElement t, Set<String> fields) {
-        final List<String> flds;
+        return getFieldList(getTableFieldsExceptBlobs(t, fields));
+    }
 
+    /**
+     * Returns the list of field names of a {@link DataGrainElement} except binary ones.
+     * For versioned tables "recversion" is appended to the result.
+     * <p>
+     * Fields follow in the order of the columns of the element, so that cursors
+     * read them from the result set by column index.
+     *
+     * @param t      the {@link DataGrainElement} type, that's owner of fields.
+     * @param fields fields to filter, empty set means all fields of the element.
+     * @return list of field names.
+     */
+    static List<String> getTableFieldsExceptBlobs(DataGrainElement t, Set<String> fields) {
         Predicate<ColumnMeta> notBinary = c -> !BinaryColumn.CELESTA_TYPE.equals(c.getCelestaType());
 
-        if (fields.isEmpty()) {
-            flds = t.getColumns().entrySet().stream()
-                    .filter(e -> notBinary.test(e.getValue()))
-                    .map(Map.Entry::getKey)
-                    .collect(Collectors.toList());
-        } else {
-            flds = fields.stream()
-                    .filter(f -> notBinary.test(t.getColumns().get(f)))
-                    .collect(Collectors.toList());
-        }
+        final List<String> flds = t.getColumns().entrySet().stream()
+                .filter(e -> notBinary.test(e.getValue()))
+                .map(Map.Entry::getKey)
+                .filter(f -> fields.isEmpty() || fields.contains(f))
+                .collect(Collectors.toList());
         // To the list of fields of the versioned tables we necessarily add "recversion"
         if (t instanceof Table && ((Table) t).isVersioned()) {
             flds.add(VersionedElement.REC_VERSION);
         }
 
-        return getFieldList(flds);
+        return flds;
     }
 
     /**
@@ -666,6 +674,18 @@ public abstract class DBAdaptor implements QueryBuildingHelper, StaticDataAdapto
         }
     }
 
+    /**
+     * Returns the checksum kept in the insert trigger of the materialized view
+     * (see {@link MaterializedView#CHECKSUM_COMMENT_TEMPLATE}). It changes together
+     * with the way the triggers maintain the view, so that the triggers are recreated
+     * when the way is changed.
+     *
+     * @param mv materialized view
+     */
+    public String getMaterializedViewChecksum(MaterializedView mv) {
+        return mv.getChecksum();
+    }
+
     //TODO: Javadoc
     public void initDataForMaterializedView(Connection conn, MaterializedView mv) {
         this.ddlAdaptor.initDataForMaterializedView(conn, mv);
@@ -761,6 +781,30 @@ public abstract class DBAdaptor implements QueryBuildingHelper, StaticDataAdapto
         return false;
     }
 
+    /**
+     * Returns JDBC fetch size for a query reading a record set in chunks
+     * of the given size.
+     * <p>
+     * By default the whole chunk is fetched in one round trip.
+     *
+     * @param chunkSize  maximal number of rows returned by the query
+     */
+    public int getChunkFetchSize(int chunkSize) {
+        return chunkSize;
+    }
+
+    /**
+     * Returns maximal number of records read by one query by their primary keys.
+     * <p>
+     * Oracle does not allow more than 1000 expressions in a list, PostgreSQL
+     * does not allow more than 32767 parameters.
+     *
+     * @param keySize  number of the primary key columns
+     */
+    public int getMaxKeyCountPerQuery(int keySize) {
+        return Math.min(512, Short.MAX_VALUE / keySize);
+    }
+
     /**
      * Удаляет первичный ключ на таблице с использованием известного имени
      * первичного ключа.
@@ -790,6 +834,42 @@ public abstract class DBAdaptor implements QueryBuildingHelper, StaticDataAdapto
         return z;
     }
 
+    /**
+     * Returns a PreparedStatement that inserts a record and returns the stored row
+     * (the fields except BLOBs, including identity, defaults and recversion)
+     * when executed with {@link #executeInsertReturning(PreparedStatement)}.
+     * <p>
+     * By default a plain insert statement is returned, so the stored row
+     * is not available in one round trip and should be re-read by the caller.
+     *
+     * @param conn      Connection to use.
+     * @param t         Table to insert into.
+     * @param nullsMask Mask of the fields having null values.
+     * @param program   Parameter setting program to fill.
+     * @param fields    Fields of the stored row to return, empty set means all fields.
+     */
+    public PreparedStatement getInsertRecordReturningStatement(Connection conn, Table t, boolean[] nullsMask,
+                                                               List<ParameterSetter> program, Set<String> fields) {
+        return getInsertRecordStatement(conn, t, nullsMask, program);
+    }
+
+    /**
+     * Executes a statement obtained with
+     * {@link #getInsertRecordReturningStatement(Connection, Table, boolean[], List, Set)}.
+     * <p>
+     * A duplicate primary key is reported either by an integrity constraint violation
+     * (an {@link SQLException} is thrown) or by an empty result set.
+     *
+     * @param stmt Statement to execute.
+     * @return result set containing the stored row, or null if the adaptor
+     * is unable to return the stored row and it should be re-read.
+     * @throws SQLException if the statement fails.
+     */
+    public ResultSet executeInsertReturning(PreparedStatement stmt) throws SQLException {
+        stmt.execute();
+        return null;
+    }
+
     // =========> END PUBLIC METHODS <=========
 
     // =========> PUBLIC ABSTRACT METHODS <=========
@@ -866,6 +946,15 @@ public abstract class DBAdaptor implements QueryBuildingHelper, StaticDataAdapto
     //TODO: Javadoc In English
     public abstract Map<String, DbIndexInfo> getIndices(Connection conn, Grain g);
 
+    /**
+     * Returns a snapshot of the tables (with their columns and primary keys) and
+     * sequences of the grain, loaded by a few set-based catalog queries.
+     *
+     * @param conn Connection.
+     * @param g    Grain.
+     */
+    public abstract DbCatalog getCatalog(Connection conn, Grain g);
+
     //TODO: Javadoc
     public abstract List<String> getParameterizedViewList(Connection conn, Grain g);
 
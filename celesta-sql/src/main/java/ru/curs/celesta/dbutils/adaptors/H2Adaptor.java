@@ -42,6 +42,15 @@ final public class H2Adaptor extends OpenSourceDbAdaptor {
         return new H2DdlGenerator(this);
     }
 
+    /**
+     * H2 checks every row against all the values of an IN list, and a query
+     * to an embedded database costs no network round trip, so lists are short.
+     */
+    @Override
+    public int getMaxKeyCountPerQuery(int keySize) {
+        return 16;
+    }
+
     private void configureDb(boolean isH2ReferentialIntegrity) {
 
         try (Connection connection = connectionPool.get()) {
@@ -150,42 +159,7 @@ final public class H2Adaptor extends OpenSourceDbAdaptor {
 
             try (ResultSet rs = metaData.getColumns(null, grainName, tableName, c.getName())) {
                 if (rs.next()) {
-                    DbColumnInfo result = new DbColumnInfo();
-                    result.setName(rs.getString(COLUMN_NAME));
-                    String typeName = rs.getString("TYPE_NAME");
-                    String columnDefault = rs.getString("COLUMN_DEF");
-
-
-                    String columnDefaultForIdentity = "NEXTVAL('" + tableString(grainName, tableName + "_seq") + "')";
-
-                    if ("integer".equalsIgnoreCase(typeName) &&
-                            columnDefaultForIdentity.equals(columnDefault)) {
-                        result.setType(IntegerColumn.class);
-                        result.setNullable(rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
-                        return result;
-                    } else if ("clob".equalsIgnoreCase(typeName)) {
-                        result.setType(StringColumn.class);
-                        result.setMax(true);
-                    } else {
-                        for (Class<? extends Column> cc : COLUMN_CLASSES)
-                            if (getColumnDefiner(cc).dbFieldType().equalsIgnoreCase(typeName)) {
-                                result.setType(cc);
-                                break;
-                            }
-                    }
-                    result.setNullable(rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
-                    if (result.getType() == StringColumn.class || result.getType() == DecimalColumn.class) {
-                        result.setLength(rs.getInt("COLUMN_SIZE"));
-                    }
-                    if (result.getType() == DecimalColumn.class) {
-                        result.setScale(rs.getInt("DECIMAL_DIGITS"));
-                    }
-
-                    if (columnDefault != null) {
-                        columnDefault = modifyDefault(result, columnDefault, conn);
-                        result.setDefaultValue(columnDefault);
-                    }
-                    return result;
+                    return readColumnInfo(conn, rs, grainName, tableName);
                 } else {
                     return null;
                 }
@@ -195,6 +169,47 @@ final public class H2Adaptor extends OpenSourceDbAdaptor {
         }
     }
 
+    @Override
+    DbColumnInfo readColumnInfo(Connection conn, ResultSet rs, String grainName, String tableName)
+            throws SQLException {
+        DbColumnInfo result = new DbColumnInfo();
+        result.setName(rs.getString(COLUMN_NAME));
+        String typeName = rs.getString("TYPE_NAME");
+        String columnDefault = rs.getString("COLUMN_DEF");
+
+
+        String columnDefaultForIdentity = "NEXTVAL('" + tableString(grainName, tableName + "_seq") + "')";
+
+        if ("integer".equalsIgnoreCase(typeName) &&
+                columnDefaultForIdentity.equals(columnDefault)) {
+            result.setType(IntegerColumn.class);
+            result.setNullable(rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
+            return result;
+        } else if ("clob".equalsIgnoreCase(typeName)) {
+            result.setType(StringColumn.class);
+            result.setMax(true);
+        } else {
+            for (Class<? extends Column> cc : COLUMN_CLASSES)
+                if (getColumnDefiner(cc).dbFieldType().equalsIgnoreCase(typeName)) {
+                    result.setType(cc);
+                    break;
+                }
+        }
+        result.setNullable(rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
+        if (result.getType() == StringColumn.class || result.getType() == DecimalColumn.class) {
+            result.setLength(rs.getInt("COLUMN_SIZE"));
+        }
+        if (result.getType() == DecimalColumn.class) {
+            result.setScale(rs.getInt("DECIMAL_DIGITS"));
+        }
+
+        if (columnDefault != null) {
+            columnDefault = modifyDefault(result, columnDefault, conn);
+            result.setDefaultValue(columnDefault);
+        }
+        return result;
+    }
+
     private String modifyDefault(DbColumnInfo ci, String defaultBody, Connection conn) {
         String result = defaultBody;
 
@@ -283,6 +298,24 @@ final public class H2Adaptor extends OpenSourceDbAdaptor {
         return result;
     }
 
+    @Override
+    void loadPKInfo(Connection conn, String schema, DbCatalog catalog) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT table_name AS tableName, constraint_name AS indexName, column_name as colName " +
+                        "FROM  INFORMATION_SCHEMA.INDEXES " +
+                        "WHERE table_schema = ? " +
+                        "AND index_type_name = 'PRIMARY KEY' " +
+                        "ORDER BY table_name, ordinal_position")) {
+            stmt.setString(1, schema);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    catalog.addPkColumn(rs.getString("tableName"), rs.getString("indexName"),
+                            rs.getString("colName"));
+                }
+            }
+        }
+    }
+
     @Override
     public List<DbFkInfo> getFKInfo(Connection conn, Grain g) {
 
@@ -50,6 +50,7 @@ import ru.curs.celesta.ConnectionPool;
 import ru.curs.celesta.DBType;
 
 import static ru.curs.celesta.dbutils.adaptors.constants.MsSqlConstants.*;
+import static ru.curs.celesta.dbutils.adaptors.function.CommonFunctions.getFieldList;
 
 import ru.curs.celesta.dbutils.adaptors.ddl.*;
 import ru.curs.celesta.dbutils.jdbc.SqlUtils;
@@ -66,6 +67,8 @@ public final class MSSQLAdaptor extends DBAdaptor {
 
     private static final String SELECT_TOP_1 = "select top 1 %s from ";
     private static final String WHERE_S = " where %s;";
+    // SQL Server accepts at most 2100 parameters in a request
+    private static final int MAX_PARAMETER_COUNT = 2100;
 
     public MSSQLAdaptor(ConnectionPool connectionPool, DdlConsumer ddlConsumer) {
         super(connectionPool, ddlConsumer);
@@ -76,6 +79,11 @@ public final class MSSQLAdaptor extends DBAdaptor {
         return new MsSqlDdlGenerator(this);
     }
 
+    @Override
+    public int getMaxKeyCountPerQuery(int keySize) {
+        return Math.min(super.getMaxKeyCountPerQuery(keySize), MAX_PARAMETER_COUNT / keySize);
+    }
+
     @Override
     public boolean tableExists(Connection conn, String schema, String name) {
         //TODO: It's a not good idea. We must check more concretely, cuz this method will work for other objects such as view etc.
@@ -130,7 +138,51 @@ public final class MSSQLAdaptor extends DBAdaptor {
     @Override
     public PreparedStatement getInsertRecordStatement(Connection conn, Table t, boolean[] nullsMask,
                                                       List<ParameterSetter> program) {
+        return prepareStatement(conn, getInsertSql(t, nullsMask, program, "") + ";");
+    }
+
+    @Override
+    public PreparedStatement getInsertRecordReturningStatement(Connection conn, Table t, boolean[] nullsMask,
+                                                               List<ParameterSetter> program, Set<String> fields) {
+        // OUTPUT without INTO clause is not allowed for tables having triggers,
+        // so the stored row goes through a table variable.
+        List<String> returnedFields = getTableFieldsExceptBlobs(t, fields);
+        StringBuilder declaration = new StringBuilder();
+        StringBuilder output = new StringBuilder();
+        for (String f : returnedFields) {
+            if (declaration.length() > 0) {
+                declaration.append(", ");
+                output.append(", ");
+            }
+            Column c = t.getColumns().get(f);
+            if (c == null) {
+                // recversion field
+                declaration.append(String.format("\"%s\" int", f));
+            } else {
+                declaration.append(getColumnDefiner(c.getClass()).getMainDefinition(c));
+            }
+            output.append(String.format("inserted.\"%s\"", f));
+        }
 
+        String sql = String.format("declare @inserted table (%s);%n%s;%nselect %s from @inserted;",
+                declaration.toString(),
+                getInsertSql(t, nullsMask, program, String.format(" output %s into @inserted", output)),
+                getFieldList(returnedFields));
+
+        return prepareStatement(conn, sql);
+    }
+
+    @Override
+    public ResultSet executeInsertReturning(PreparedStatement stmt) throws SQLException {
+        // skipping update counts that precede the result set
+        boolean hasResultSet = stmt.execute();
+        while (!hasResultSet && stmt.getUpdateCount() != -1) {
+            hasResultSet = stmt.getMoreResults();
+        }
+        return hasResultSet ? stmt.getResultSet() : null;
+    }
+
+    private String getInsertSql(Table t, boolean[] nullsMask, List<ParameterSetter> program, String output) {
         Iterator<String> columns = t.getColumns().keySet().iterator();
         // Создаём параметризуемую часть запроса, пропуская нулевые значения.
         StringBuilder fields = new StringBuilder();
@@ -150,18 +202,14 @@ public final class MSSQLAdaptor extends DBAdaptor {
             program.add(ParameterSetter.create(i, this));
         }
 
-        final String sql;
-
         if (fields.length() == 0 && params.length() == 0) {
-            sql = "insert into " + tableString(t.getGrain().getName(), t.getName()) + " default values;";
+            return "insert into " + tableString(t.getGrain().getName(), t.getName()) + output + " default values";
         } else {
-            sql = String.format(
+            return String.format(
                     "insert " + tableString(t.getGrain().getName(), t.getName())
-                            + " (%s) values (%s);", fields.toString(), params.toString()
+                            + " (%s)%s values (%s)", fields.toString(), output, params.toString()
             );
         }
-
-        return prepareStatement(conn, sql);
     }
 
     @Override
@@ -259,64 +307,15 @@ public final class MSSQLAdaptor extends DBAdaptor {
      * @param conn Соединение с БД.
      * @param c    Столбец.
      */
-    // CHECKSTYLE:OFF
     @Override
     public DbColumnInfo getColumnInfo(Connection conn, Column c) {
-        // CHECKSTYLE:ON
         try {
             DatabaseMetaData metaData = conn.getMetaData();
             ResultSet rs = metaData.getColumns(null, c.getParentTable().getGrain().getName(),
                     c.getParentTable().getName(), c.getName());
             try {
                 if (rs.next()) {
-                    DbColumnInfo result = new DbColumnInfo();
-                    result.setName(rs.getString(COLUMN_NAME));
-                    String typeName = rs.getString("TYPE_NAME");
-                    if ("varbinary".equalsIgnoreCase(typeName) && checkIfVarcharMax(conn, c)) {
-                        result.setType(BinaryColumn.class);
-                    } else if ("int".equalsIgnoreCase(typeName)) {
-                        result.setType(IntegerColumn.class);
-                    } else if ("float".equalsIgnoreCase(typeName) && rs.getInt("COLUMN_SIZE") == DOUBLE_PRECISION) {
-                        result.setType(FloatingColumn.class);
-                    } else {
-                        for (Class<? extends Column> cc : COLUMN_CLASSES)
-                            if (getColumnDefiner(cc).dbFieldType().equalsIgnoreCase(typeName)) {
-                                result.setType(cc);
-                                break;
-                            }
-                    }
-                    result.setNullable(rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
-                    if (result.getType() == StringColumn.class) {
-                        result.setLength(rs.getInt("COLUMN_SIZE"));
-                        result.setMax(checkIfVarcharMax(conn, c));
-                    }
-                    if (result.getType() == DecimalColumn.class) {
-                        result.setLength(rs.getInt("COLUMN_SIZE"));
-                        result.setScale(rs.getInt("DECIMAL_DIGITS"));
-                    }
-                    String defaultBody = rs.getString("COLUMN_DEF");
-                    if (defaultBody != null) {
-                        int i = 0;
-                        // Снимаем наружные скобки
-                        while (defaultBody.charAt(i) == '('
-                                && defaultBody.charAt(defaultBody.length() - i - 1) == ')') {
-                            i++;
-                        }
-                        defaultBody = defaultBody.substring(i, defaultBody.length() - i);
-                        if (IntegerColumn.class == result.getType()) {
-                            Pattern p = Pattern.compile("NEXT VALUE FOR \\[.*]\\.\\[(.*)]");
-                            Matcher m = p.matcher(defaultBody);
-                            if (m.matches()) {
-                                String sequenceName = m.group(1);
-                                defaultBody = "NEXTVAL(" + sequenceName + ")";
-                            }
-                        }
-                        if (BooleanColumn.class == result.getType()
-                                || DateTimeColumn.class == result.getType() || ZonedDateTimeColumn.class == result.getType())
-                            defaultBody = defaultBody.toUpperCase();
-                        result.setDefaultValue(defaultBody);
-                    }
-                    return result;
+                    return readColumnInfo(rs, () -> checkIfVarcharMax(conn, c));
                 } else {
                     return null;
                 }
@@ -329,6 +328,70 @@ public final class MSSQLAdaptor extends DBAdaptor {
 
     }
 
+    /**
+     * Reads information on the column from the current row of
+     * {@link DatabaseMetaData#getColumns} result set.
+     *
+     * @param rs    Result set.
+     * @param isMax Check whether the column is declared with max length.
+     */
+    // CHECKSTYLE:OFF
+    private DbColumnInfo readColumnInfo(ResultSet rs, MaxLengthCheck isMax) throws SQLException {
+        // CHECKSTYLE:ON
+        DbColumnInfo result = new DbColumnInfo();
+        result.setName(rs.getString(COLUMN_NAME));
+        String typeName = rs.getString("TYPE_NAME");
+        if ("varbinary".equalsIgnoreCase(typeName) && isMax.check()) {
+            result.setType(BinaryColumn.class);
+        } else if ("int".equalsIgnoreCase(typeName)) {
+            result.setType(IntegerColumn.class);
+        } else if ("float".equalsIgnoreCase(typeName) && rs.getInt("COLUMN_SIZE") == DOUBLE_PRECISION) {
+            result.setType(FloatingColumn.class);
+        } else {
+            for (Class<? extends Column> cc : COLUMN_CLASSES)
+                if (getColumnDefiner(cc).dbFieldType().equalsIgnoreCase(typeName)) {
+                    result.setType(cc);
+                    break;
+                }
+        }
+        result.setNullable(rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
+        if (result.getType() == StringColumn.class) {
+            result.setLength(rs.getInt("COLUMN_SIZE"));
+            result.setMax(isMax.check());
+        }
+        if (result.getType() == DecimalColumn.class) {
+            result.setLength(rs.getInt("COLUMN_SIZE"));
+            result.setScale(rs.getInt("DECIMAL_DIGITS"));
+        }
+        String defaultBody = rs.getString("COLUMN_DEF");
+        if (defaultBody != null) {
+            int i = 0;
+            // Снимаем наружные скобки
+            while (defaultBody.charAt(i) == '('
+                    && defaultBody.charAt(defaultBody.length() - i - 1) == ')') {
+                i++;
+            }
+            defaultBody = defaultBody.substring(i, defaultBody.length() - i);
+            if (IntegerColumn.class == result.getType()) {
+                Pattern p = Pattern.compile("NEXT VALUE FOR \\[.*]\\.\\[(.*)]");
+                Matcher m = p.matcher(defaultBody);
+                if (m.matches()) {
+                    String sequenceName = m.group(1);
+                    defaultBody = "NEXTVAL(" + sequenceName + ")";
+                }
+            }
+            if (BooleanColumn.class == result.getType()
+                    || DateTimeColumn.class == result.getType() || ZonedDateTimeColumn.class == result.getType())
+                defaultBody = defaultBody.toUpperCase();
+            result.setDefaultValue(defaultBody);
+        }
+        return result;
+    }
+
+    private interface MaxLengthCheck {
+        boolean check() throws SQLException;
+    }
+
     @Override
     public DbPkInfo getPKInfo(Connection conn, TableElement t) {
 
@@ -360,6 +423,66 @@ public final class MSSQLAdaptor extends DBAdaptor {
         return result;
     }
 
+    @Override
+    public DbCatalog getCatalog(Connection conn, Grain g) {
+        DbCatalog catalog = new DbCatalog();
+        try {
+            // any schema object, as in objectExists
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "select name from sys.objects where schema_id = SCHEMA_ID(?)")) {
+                stmt.setString(1, g.getName());
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        catalog.addTable(rs.getString(1));
+                        catalog.addSequence(rs.getString(1));
+                    }
+                }
+            }
+
+            Set<String> maxColumns = new HashSet<>();
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "select o.name, c.name from sys.columns c inner join sys.objects o on o.object_id = c.object_id "
+                            + "where o.schema_id = SCHEMA_ID(?) and c.max_length = -1")) {
+                stmt.setString(1, g.getName());
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        maxColumns.add(rs.getString(1) + "." + rs.getString(2));
+                    }
+                }
+            }
+            try (ResultSet rs = conn.getMetaData().getColumns(null, g.getName(), null, null)) {
+                while (rs.next()) {
+                    // the schema is a pattern
+                    if (g.getName().equals(rs.getString("TABLE_SCHEM"))) {
+                        String tableName = rs.getString("TABLE_NAME");
+                        String columnName = rs.getString(COLUMN_NAME);
+                        catalog.addColumn(tableName, columnName,
+                                readColumnInfo(rs, () -> maxColumns.contains(tableName + "." + columnName)));
+                    }
+                }
+            }
+
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "select cons.TABLE_NAME, cons.CONSTRAINT_NAME, cols.COLUMN_NAME "
+                            + "from INFORMATION_SCHEMA.KEY_COLUMN_USAGE cols "
+                            + "inner join INFORMATION_SCHEMA.TABLE_CONSTRAINTS cons "
+                            + "on cols.TABLE_SCHEMA = cons.TABLE_SCHEMA " + "and cols.TABLE_NAME = cons.TABLE_NAME "
+                            + "and cols.CONSTRAINT_NAME = cons.CONSTRAINT_NAME "
+                            + "where cons.CONSTRAINT_TYPE = 'PRIMARY KEY' and cons.TABLE_SCHEMA = ? "
+                            + "order by cons.TABLE_NAME, ORDINAL_POSITION")) {
+                stmt.setString(1, g.getName());
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        catalog.addPkColumn(rs.getString(1), rs.getString(2), rs.getString(3));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new CelestaException("Could not get catalog information: %s", e.getMessage());
+        }
+        return catalog;
+    }
+
     @Override
     public List<DbFkInfo> getFKInfo(Connection conn, Grain g) {
         // Full foreign key information query
@@ -442,8 +565,8 @@ public final class MSSQLAdaptor extends DBAdaptor {
     private String getLimitedSqlWithOffset(String orderBy, String fieldList, String from, String where, String rowFilter) {
         return String.format(
                 "with a as " + "(select ROW_NUMBER() OVER (ORDER BY %s) as [limit_row_number], %s from %s %s) "
-                        + " select * from a where [limit_row_number] %s",
-                orderBy, fieldList, from, where, rowFilter);
+                        + " select %s from a where [limit_row_number] %s",
+                orderBy, fieldList, from, where, fieldList, rowFilter);
     }
 
     @Override
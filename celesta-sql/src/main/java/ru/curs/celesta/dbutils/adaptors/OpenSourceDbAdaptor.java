@@ -4,7 +4,10 @@ import ru.curs.celesta.CelestaException;
 import ru.curs.celesta.ConnectionPool;
 import ru.curs.celesta.dbutils.adaptors.ddl.DdlConsumer;
 import ru.curs.celesta.dbutils.jdbc.SqlUtils;
+import ru.curs.celesta.dbutils.meta.DbCatalog;
+import ru.curs.celesta.dbutils.meta.DbColumnInfo;
 import ru.curs.celesta.dbutils.query.FromClause;
+import ru.curs.celesta.score.Grain;
 import ru.curs.celesta.score.*;
 
 import java.sql.*;
@@ -160,4 +163,65 @@ public abstract class OpenSourceDbAdaptor extends DBAdaptor {
         }
     }
 
+    @Override
+    public DbCatalog getCatalog(Connection conn, Grain g) {
+        String schema = g.getName().replace("\"", "");
+        DbCatalog catalog = new DbCatalog();
+        try {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT table_name FROM information_schema.tables WHERE table_schema = ?")) {
+                stmt.setString(1, schema);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        catalog.addTable(rs.getString(1));
+                    }
+                }
+            }
+            try (ResultSet rs = conn.getMetaData().getColumns(null, schema, null, null)) {
+                while (rs.next()) {
+                    // the schema is a pattern
+                    if (schema.equals(rs.getString("TABLE_SCHEM"))) {
+                        String tableName = rs.getString("TABLE_NAME");
+                        catalog.addColumn(tableName, rs.getString(COLUMN_NAME),
+                                readColumnInfo(conn, rs, schema, tableName));
+                    }
+                }
+            }
+            loadPKInfo(conn, schema, catalog);
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT sequence_name FROM information_schema.sequences WHERE sequence_schema = ?")) {
+                stmt.setString(1, schema);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        catalog.addSequence(rs.getString(1));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new CelestaException("Could not get catalog information: %s", e.getMessage());
+        }
+        return catalog;
+    }
+
+    /**
+     * Reads information on the column from the current row of
+     * {@link java.sql.DatabaseMetaData#getColumns} result set.
+     *
+     * @param conn      Connection.
+     * @param rs        Result set.
+     * @param schema    Schema name.
+     * @param tableName Table name.
+     */
+    abstract DbColumnInfo readColumnInfo(Connection conn, ResultSet rs, String schema, String tableName)
+            throws SQLException;
+
+    /**
+     * Adds primary keys of all the tables of the schema to the catalog.
+     *
+     * @param conn    Connection.
+     * @param schema  Schema name.
+     * @param catalog Catalog.
+     */
+    abstract void loadPKInfo(Connection conn, String schema, DbCatalog catalog) throws SQLException;
+
 }
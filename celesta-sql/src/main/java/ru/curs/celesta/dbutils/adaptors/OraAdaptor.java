@@ -78,6 +78,7 @@ public final class OraAdaptor extends DBAdaptor {
     private static final Pattern DATE_PATTERN = Pattern.compile("'(\\d\\d\\d\\d)-([01]\\d)-([0123]\\d)'");
     private static final Pattern HEX_STRING = Pattern.compile("'([0-9A-F]+)'");
     private static final Pattern TABLE_PATTERN = Pattern.compile("([a-zA-Z][a-zA-Z0-9]*)_([a-zA-Z_][a-zA-Z0-9_]*)");
+    private static final int MAX_FETCH_SIZE = 1000;
 
     private static final Map<TriggerType, String> TRIGGER_EVENT_TYPE_DICT = new HashMap<>();
 
@@ -158,7 +159,31 @@ public final class OraAdaptor extends DBAdaptor {
     @Override
     public PreparedStatement getInsertRecordStatement(Connection conn, Table t, boolean[] nullsMask,
                                                       List<ParameterSetter> program) {
+        return prepareStatement(conn, getInsertSql(t, nullsMask, program));
+    }
+
+    @Override
+    public PreparedStatement getInsertRecordReturningStatement(Connection conn, Table t, boolean[] nullsMask,
+                                                               List<ParameterSetter> program, Set<String> fields) {
+        // The driver appends "RETURNING ... INTO ..." clause for the requested columns
+        String[] returnedFields = getTableFieldsExceptBlobs(t, fields).stream()
+                .map(f -> "\"" + f + "\"")
+                .toArray(String[]::new);
+        String sql = getInsertSql(t, nullsMask, program);
+        try {
+            return conn.prepareStatement(sql, returnedFields);
+        } catch (SQLException e) {
+            throw new CelestaException(e.getMessage());
+        }
+    }
 
+    @Override
+    public ResultSet executeInsertReturning(PreparedStatement stmt) throws SQLException {
+        stmt.executeUpdate();
+        return stmt.getGeneratedKeys();
+    }
+
+    private String getInsertSql(Table t, boolean[] nullsMask, List<ParameterSetter> program) {
         Iterator<String> columns = t.getColumns().keySet().iterator();
         // Создаём параметризуемую часть запроса, пропуская нулевые значения.
         StringBuilder fields = new StringBuilder();
@@ -178,8 +203,6 @@ public final class OraAdaptor extends DBAdaptor {
             program.add(ParameterSetter.create(i, this));
         }
 
-        final String sql;
-
         if (fields.length() == 0 && params.length() == 0) {
             //Для выполнения пустого insert ищем любое поле, отличное от recversion
             String columnToInsert = t.getColumns().keySet()
@@ -187,17 +210,16 @@ public final class OraAdaptor extends DBAdaptor {
                     .filter(k -> !VersionedElement.REC_VERSION.equals(k))
                     .findFirst().get();
 
-            sql = String.format(
+            return String.format(
                     "insert into " + tableString(t.getGrain().getName(), t.getName())
                             + " (\"%s\") values (DEFAULT)", columnToInsert
             );
         } else {
-            sql = String.format(
+            return String.format(
                     "insert into " + tableString(t.getGrain().getName(), t.getName())
                             + " (%s) values (%s)", fields.toString(), params.toString()
             );
         }
-        return prepareStatement(conn, sql);
     }
 
     @Override
@@ -502,6 +524,67 @@ public final class OraAdaptor extends DBAdaptor {
         return result;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Column information is not loaded (as it depends on check constraints,
+     * defaults and sequence triggers of every column) and is queried separately.
+     */
+    @Override
+    public DbCatalog getCatalog(Connection conn, Grain g) {
+        DbCatalog catalog = new DbCatalog();
+        // names of the grain objects start with the grain name
+        String prefix = g.getName() + "_";
+        String pattern = g.getName() + "@_%";
+        try {
+            try (PreparedStatement stmt = conn.prepareStatement("select table_name from all_tables where owner = "
+                    + "sys_context('userenv','session_user') and table_name like ? escape '@'")) {
+                stmt.setString(1, pattern);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        catalog.addTable(rs.getString(1).substring(prefix.length()));
+                    }
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT table_name, column_name FROM user_tab_cols "
+                    + "WHERE table_name like ? escape '@' order by table_name, column_id")) {
+                stmt.setString(1, pattern);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        catalog.addColumn(rs.getString(1).substring(prefix.length()), rs.getString(2), null);
+                    }
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("select cons.table_name, cons.constraint_name, "
+                    + "column_name from all_constraints cons "
+                    + "inner join all_cons_columns cols on cons.constraint_name = cols.constraint_name  "
+                    + "and cons.owner = cols.owner where "
+                    + "cons.owner = sys_context('userenv','session_user') "
+                    + "and cons.table_name like ? escape '@'"
+                    + " and cons.constraint_type = 'P' order by cons.table_name, cols.position")) {
+                stmt.setString(1, pattern);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        catalog.addPkColumn(rs.getString(1).substring(prefix.length()),
+                                rs.getString(2), rs.getString(3));
+                    }
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "select sequence_name from user_sequences where sequence_name like ? escape '@'")) {
+                stmt.setString(1, pattern);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        catalog.addSequence(rs.getString(1).substring(prefix.length()));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new CelestaException("Could not get catalog information: %s", e.getMessage());
+        }
+        return catalog;
+    }
+
     @Override
     public List<DbFkInfo> getFKInfo(Connection conn, Grain g) {
         String sql = String.format(
@@ -796,6 +879,15 @@ public final class OraAdaptor extends DBAdaptor {
         return false;
     }
 
+    /**
+     * Oracle driver allocates buffers for all the rows of a fetch in advance,
+     * so fetch size is limited.
+     */
+    @Override
+    public int getChunkFetchSize(int chunkSize) {
+        return Math.min(chunkSize, MAX_FETCH_SIZE);
+    }
+
 
     @Override
     String getSelectTriggerBodySql(TriggerQuery query) {
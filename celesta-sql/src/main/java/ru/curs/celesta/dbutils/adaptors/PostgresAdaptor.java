@@ -47,6 +47,7 @@ import ru.curs.celesta.ConnectionPool;
 import ru.curs.celesta.DBType;
 
 import static ru.curs.celesta.dbutils.adaptors.constants.OpenSourceConstants.*;
+import static ru.curs.celesta.dbutils.adaptors.function.CommonFunctions.getFieldList;
 
 import ru.curs.celesta.dbutils.adaptors.ddl.*;
 import ru.curs.celesta.dbutils.meta.*;
@@ -62,13 +63,37 @@ final public class PostgresAdaptor extends OpenSourceDbAdaptor {
 
     private static final Pattern HEX_STRING = Pattern.compile("'\\\\x([0-9A-Fa-f]+)'");
 
+    private final boolean statementLevelMvTriggers;
+
     public PostgresAdaptor(ConnectionPool connectionPool, DdlConsumer ddlConsumer) {
+        this(connectionPool, ddlConsumer, false);
+    }
+
+    public PostgresAdaptor(ConnectionPool connectionPool, DdlConsumer ddlConsumer, boolean statementLevelMvTriggers) {
         super(connectionPool, ddlConsumer);
+        this.statementLevelMvTriggers = statementLevelMvTriggers;
+        if (statementLevelMvTriggers) {
+            // the generator built by the super constructor does not see the setting yet
+            this.ddlAdaptor = new DdlAdaptor(getDdlGenerator(), ddlConsumer);
+        }
+    }
+
+    /**
+     * Whether materialized views are maintained by statement-level triggers
+     * over transition tables instead of row-level ones.
+     */
+    public boolean isStatementLevelMvTriggers() {
+        return statementLevelMvTriggers;
+    }
+
+    @Override
+    public String getMaterializedViewChecksum(MaterializedView mv) {
+        return statementLevelMvTriggers ? mv.getChecksum() + "S" : mv.getChecksum();
     }
 
     @Override
     DdlGenerator getDdlGenerator() {
-        return new PostgresDdlGenerator(this);
+        return new PostgresDdlGenerator(this, statementLevelMvTriggers);
     }
 
     @Override
@@ -105,7 +130,31 @@ final public class PostgresAdaptor extends OpenSourceDbAdaptor {
     @Override
     public PreparedStatement getInsertRecordStatement(Connection conn, Table t, boolean[] nullsMask,
                                                       List<ParameterSetter> program) {
+        // no returning clause here: the statement is used in JDBC batches
+        final String sql = getInsertSql(t, nullsMask, program) + ";";
+
+        return prepareStatement(conn, sql);
+    }
+
+    @Override
+    public PreparedStatement getInsertRecordReturningStatement(Connection conn, Table t, boolean[] nullsMask,
+                                                               List<ParameterSetter> program, Set<String> fields) {
+        // Duplicate primary key yields an empty result set instead of an error,
+        // since an error would abort the whole transaction in PostgreSQL.
+        String sql = String.format("%s on conflict (%s) do nothing returning %s;",
+                getInsertSql(t, nullsMask, program),
+                getFieldList(t.getPrimaryKey().keySet()),
+                getTableFieldsListExceptBlobs(t, fields));
+
+        return prepareStatement(conn, sql);
+    }
+
+    @Override
+    public ResultSet executeInsertReturning(PreparedStatement stmt) throws SQLException {
+        return stmt.executeQuery();
+    }
 
+    private String getInsertSql(Table t, boolean[] nullsMask, List<ParameterSetter> program) {
         Iterator<String> columns = t.getColumns().keySet().iterator();
         // Создаём параметризуемую часть запроса, пропуская нулевые значения.
         StringBuilder fields = new StringBuilder();
@@ -125,29 +174,12 @@ final public class PostgresAdaptor extends OpenSourceDbAdaptor {
             program.add(ParameterSetter.create(i, this));
         }
 
-        String returning = "";
-        for (Column c : t.getColumns().values())
-            if (c instanceof IntegerColumn) {
-                IntegerColumn ic = (IntegerColumn) c;
-
-                if (ic.getSequence() != null) {
-                    returning = " returning " + c.getQuotedName();
-                    break;
-                }
-
-            }
-
-        final String sql;
-
         if (fields.length() == 0 && params.length() == 0) {
-            sql = String.format("insert into " + tableString(t.getGrain().getName(),
-                    t.getName()) + " default values %s;", returning);
+            return "insert into " + tableString(t.getGrain().getName(), t.getName()) + " default values";
         } else {
-            sql = String.format("insert into " + tableString(t.getGrain().getName(),
-                    t.getName()) + " (%s) values (%s)%s;", fields.toString(), params.toString(), returning);
+            return String.format("insert into " + tableString(t.getGrain().getName(),
+                    t.getName()) + " (%s) values (%s)", fields.toString(), params.toString());
         }
-
-        return prepareStatement(conn, sql);
     }
 
     @Override
@@ -159,46 +191,7 @@ final public class PostgresAdaptor extends OpenSourceDbAdaptor {
                     c.getParentTable().getName().replace("\"", ""), c.getName()
                             .replace("\"", ""))) {
                 if (rs.next()) {
-                    DbColumnInfo result = new DbColumnInfo();
-                    result.setName(rs.getString(COLUMN_NAME));
-                    String typeName = rs.getString("TYPE_NAME");
-                    if ("serial".equalsIgnoreCase(typeName)) {
-                        result.setType(IntegerColumn.class);
-                        result.setNullable(rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
-
-                        String defaultBody = rs.getString("COLUMN_DEF");
-                        Pattern p = Pattern.compile("nextval\\('[\"]?[^\"]+[\"]?\\.[\"]?([^\"]+)+[\"]?'::regclass\\)");
-                        Matcher m = p.matcher(defaultBody);
-
-                        if (m.matches()) {
-                            String sequenceName = m.group(1);
-                            result.setDefaultValue("NEXTVAL(" + sequenceName + ")");
-                        }
-
-                        return result;
-                    } else if ("text".equalsIgnoreCase(typeName)) {
-                        result.setType(StringColumn.class);
-                        result.setMax(true);
-                    } else {
-                        for (Class<? extends Column> cc : COLUMN_CLASSES)
-                            if (getColumnDefiner(cc).dbFieldType().equalsIgnoreCase(typeName)) {
-                                result.setType(cc);
-                                break;
-                            }
-                    }
-                    result.setNullable(rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
-                    if (result.getType() == StringColumn.class || result.getType() == DecimalColumn.class) {
-                        result.setLength(rs.getInt("COLUMN_SIZE"));
-                    }
-                    if (result.getType() == DecimalColumn.class) {
-                        result.setScale(rs.getInt("DECIMAL_DIGITS"));
-                    }
-                    String defaultBody = rs.getString("COLUMN_DEF");
-                    if (defaultBody != null) {
-                        defaultBody = modifyDefault(result, defaultBody);
-                        result.setDefaultValue(defaultBody);
-                    }
-                    return result;
+                    return readColumnInfo(conn, rs, null, null);
                 } else {
                     return null;
                 }
@@ -208,6 +201,51 @@ final public class PostgresAdaptor extends OpenSourceDbAdaptor {
         }
     }
 
+    @Override
+    DbColumnInfo readColumnInfo(Connection conn, ResultSet rs, String schema, String tableName)
+            throws SQLException {
+        DbColumnInfo result = new DbColumnInfo();
+        result.setName(rs.getString(COLUMN_NAME));
+        String typeName = rs.getString("TYPE_NAME");
+        if ("serial".equalsIgnoreCase(typeName)) {
+            result.setType(IntegerColumn.class);
+            result.setNullable(rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
+
+            String defaultBody = rs.getString("COLUMN_DEF");
+            Pattern p = Pattern.compile("nextval\\('[\"]?[^\"]+[\"]?\\.[\"]?([^\"]+)+[\"]?'::regclass\\)");
+            Matcher m = p.matcher(defaultBody);
+
+            if (m.matches()) {
+                String sequenceName = m.group(1);
+                result.setDefaultValue("NEXTVAL(" + sequenceName + ")");
+            }
+
+            return result;
+        } else if ("text".equalsIgnoreCase(typeName)) {
+            result.setType(StringColumn.class);
+            result.setMax(true);
+        } else {
+            for (Class<? extends Column> cc : COLUMN_CLASSES)
+                if (getColumnDefiner(cc).dbFieldType().equalsIgnoreCase(typeName)) {
+                    result.setType(cc);
+                    break;
+                }
+        }
+        result.setNullable(rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
+        if (result.getType() == StringColumn.class || result.getType() == DecimalColumn.class) {
+            result.setLength(rs.getInt("COLUMN_SIZE"));
+        }
+        if (result.getType() == DecimalColumn.class) {
+            result.setScale(rs.getInt("DECIMAL_DIGITS"));
+        }
+        String defaultBody = rs.getString("COLUMN_DEF");
+        if (defaultBody != null) {
+            defaultBody = modifyDefault(result, defaultBody);
+            result.setDefaultValue(defaultBody);
+        }
+        return result;
+    }
+
     private String modifyDefault(DbColumnInfo ci, String defaultBody) {
         String result = defaultBody;
         if (DateTimeColumn.class == ci.getType()) {
@@ -331,6 +369,28 @@ final public class PostgresAdaptor extends OpenSourceDbAdaptor {
         return result;
     }
 
+    @Override
+    void loadPKInfo(Connection conn, String schema, DbCatalog catalog) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT c.relname AS tablename, i.relname AS indexname, a.attname AS colname " + "FROM pg_index x "
+                        + "INNER JOIN pg_class c ON c.oid = x.indrelid "
+                        + "INNER JOIN pg_class i ON i.oid = x.indexrelid "
+                        + "INNER JOIN pg_namespace n ON n.oid = c.relnamespace "
+                        + "CROSS JOIN LATERAL unnest(x.indkey::int2[]) WITH ORDINALITY AS k(attnum, pos) "
+                        + "INNER JOIN pg_attribute a ON a.attrelid = c.oid AND a.attnum = k.attnum "
+                        + "WHERE c.relkind = 'r'::\"char\" AND i.relkind = 'i'::\"char\" "
+                        + "and n.nspname = ? and x.indisprimary "
+                        + "ORDER BY c.relname, k.pos")) {
+            stmt.setString(1, schema);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    catalog.addPkColumn(rs.getString("tablename"), rs.getString("indexname"),
+                            rs.getString("colname"));
+                }
+            }
+        }
+    }
+
     @Override
     public List<DbFkInfo> getFKInfo(Connection conn, Grain g) {
         // Full foreign key information query
@@ -12,6 +12,7 @@ public class DbAdaptorFactory {
   private ConnectionPool connectionPool;
   private DdlConsumer ddlConsumer;
   private boolean h2ReferentialIntegrity;
+  private boolean pgStatementLevelMvTriggers;
 
   public DbAdaptorFactory setDbType(DBType dbType) {
     this.dbType = dbType;
@@ -33,12 +34,17 @@ public class DbAdaptorFactory {
     return this;
   }
 
+  public DbAdaptorFactory setPgStatementLevelMvTriggers(boolean pgStatementLevelMvTriggers) {
+    this.pgStatementLevelMvTriggers = pgStatementLevelMvTriggers;
+    return this;
+  }
+
   public DBAdaptor createDbAdaptor() {
 
     if (DBType.H2.equals(dbType))
       return new H2Adaptor(this.connectionPool, this.ddlConsumer, this.h2ReferentialIntegrity);
     if (DBType.POSTGRESQL.equals(dbType))
-      return new PostgresAdaptor(this.connectionPool, this.ddlConsumer);
+      return new PostgresAdaptor(this.connectionPool, this.ddlConsumer, this.pgStatementLevelMvTriggers);
     if (DBType.MSSQL.equals(dbType))
       return new MSSQLAdaptor(this.connectionPool, this.ddlConsumer);
     if (DBType.ORACLE.equals(dbType))
@@ -16,6 +16,7 @@ import java.io.StringWriter;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static ru.curs.celesta.dbutils.adaptors.constants.CommonConstants.ALTER_TABLE;
@@ -37,7 +38,8 @@ public abstract class DdlGenerator {
 
     DBAdaptor dmlAdaptor;
 
-    Map<String, Map<String, Set<String>>> triggers = new HashMap<>();
+    // grains may be updated concurrently
+    Map<String, Map<String, Set<String>>> triggers = new ConcurrentHashMap<>();
 
     public DdlGenerator(DBAdaptor dmlAdaptor) {
         this.dmlAdaptor = dmlAdaptor;
@@ -338,7 +340,7 @@ public abstract class DdlGenerator {
                 tableString(t.getGrain().getName(), t.getName())
         );
 
-        this.triggers.computeIfAbsent(t.getGrain().getName(), s -> new HashMap<>())
+        this.triggers.computeIfAbsent(t.getGrain().getName(), s -> new ConcurrentHashMap<>())
                 .remove(t.getName());
 
         return sql;
@@ -413,20 +415,20 @@ public abstract class DdlGenerator {
     }
 
     final void rememberTrigger(TriggerQuery query) {
-        this.triggers.computeIfAbsent(query.getSchema(), s -> new HashMap<>())
-                .computeIfAbsent(query.getTableName(), t -> new HashSet<>())
+        this.triggers.computeIfAbsent(query.getSchema(), s -> new ConcurrentHashMap<>())
+                .computeIfAbsent(query.getTableName(), t -> ConcurrentHashMap.newKeySet())
                 .add(query.getName());
     }
 
     final void forgetTrigger(TriggerQuery query) {
-        this.triggers.computeIfAbsent(query.getSchema(), s -> new HashMap<>())
-                .computeIfAbsent(query.getTableName(), t -> new HashSet<>())
+        this.triggers.computeIfAbsent(query.getSchema(), s -> new ConcurrentHashMap<>())
+                .computeIfAbsent(query.getTableName(), t -> ConcurrentHashMap.newKeySet())
                 .remove(query.getName());
     }
 
     final boolean isTriggerKnown(TriggerQuery query) {
-        return this.triggers.computeIfAbsent(query.getSchema(), s -> new HashMap<>())
-                .computeIfAbsent(query.getTableName(), t -> new HashSet<>())
+        return this.triggers.computeIfAbsent(query.getSchema(), s -> new ConcurrentHashMap<>())
+                .computeIfAbsent(query.getTableName(), t -> ConcurrentHashMap.newKeySet())
                 .contains(query.getName());
     }
 
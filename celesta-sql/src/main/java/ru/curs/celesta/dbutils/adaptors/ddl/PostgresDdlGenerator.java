@@ -27,8 +27,20 @@ import static ru.curs.celesta.dbutils.adaptors.constants.OpenSourceConstants.*;
 
 public class PostgresDdlGenerator extends OpenSourceDdlGenerator {
 
+    private final boolean statementLevelMvTriggers;
+
     public PostgresDdlGenerator(DBAdaptor dmlAdaptor) {
+        this(dmlAdaptor, false);
+    }
+
+    /**
+     * @param dmlAdaptor  DML adaptor
+     * @param statementLevelMvTriggers  whether materialized views are maintained
+     *                                  by statement-level triggers
+     */
+    public PostgresDdlGenerator(DBAdaptor dmlAdaptor, boolean statementLevelMvTriggers) {
         super(dmlAdaptor);
+        this.statementLevelMvTriggers = statementLevelMvTriggers;
     }
 
     @Override
@@ -319,6 +331,10 @@ public class PostgresDdlGenerator extends OpenSourceDdlGenerator {
 
     @Override
     public List<String> createTableTriggersForMaterializedViews(Table t) {
+        if (statementLevelMvTriggers) {
+            return createStatementLevelTriggersForMaterializedViews(t);
+        }
+
         List<String> result = new ArrayList<>();
 
         List<MaterializedView> mvList = t.getGrain().getElements(MaterializedView.class).values().stream()
@@ -436,7 +452,7 @@ public class PostgresDdlGenerator extends OpenSourceDdlGenerator {
                             "LOCK TABLE ONLY %s IN EXCLUSIVE MODE; \n" +
                             "%s " +
                             "RETURN NEW; END; $BODY$\n" + "  LANGUAGE plpgsql VOLATILE COST 100;",
-                    insertTriggerFunctionFullName, mv.getChecksum(), fullMvName, insertSql);
+                    insertTriggerFunctionFullName, dmlAdaptor.getMaterializedViewChecksum(mv), fullMvName, insertSql);
 
             //System.out.println(sql);
             result.add(sql);
@@ -494,4 +510,180 @@ public class PostgresDdlGenerator extends OpenSourceDdlGenerator {
 
         return result;
     }
+
+    /**
+     * Creates statement-level triggers maintaining materialized views (PostgreSQL 10+).
+     * <p>
+     * Rows of the transition tables are aggregated per group and the deltas are applied
+     * to the materialized view by a single upsert (or update) per statement, so a bulk
+     * operation on the table touches every group of the view only once.
+     */
+    private List<String> createStatementLevelTriggersForMaterializedViews(Table t) {
+        List<String> result = new ArrayList<>();
+
+        List<MaterializedView> mvList = t.getGrain().getElements(MaterializedView.class).values().stream()
+                .filter(mv -> mv.getRefTable().getTable().equals(t))
+                .collect(Collectors.toList());
+
+        String fullTableName = tableString(t.getGrain().getName(), t.getName());
+
+        TriggerQuery query = new TriggerQuery()
+                .withSchema(t.getGrain().getName())
+                .withTableName(t.getName());
+
+        for (MaterializedView mv : mvList) {
+            String fullMvName = tableString(mv.getGrain().getName(), mv.getName());
+
+            String insertTriggerName = mv.getTriggerName(TriggerType.POST_INSERT);
+            String updateTriggerName = mv.getTriggerName(TriggerType.POST_UPDATE);
+            String deleteTriggerName = mv.getTriggerName(TriggerType.POST_DELETE);
+
+            String insertTriggerFunctionFullName = String.format("\"%s\".\"%s_insertTriggerFunc\"()", t.getGrain().getName(), mv.getName());
+            String updateTriggerFunctionFullName = String.format("\"%s\".\"%s_updateTriggerFunc\"()", t.getGrain().getName(), mv.getName());
+            String deleteTriggerFunctionFullName = String.format("\"%s\".\"%s_deleteTriggerFunc\"()", t.getGrain().getName(), mv.getName());
+
+            Map<String, Expr> aggrCols = mv.getAggregateColumns();
+            String surrogateCount = "\"" + MaterializedView.SURROGATE_COUNT + "\"";
+
+            List<String> mvColumns = new ArrayList<>();
+            List<String> keyColumns = new ArrayList<>();
+            List<String> groupByExprs = new ArrayList<>();
+            List<String> groupColumns = new ArrayList<>();
+            List<String> deltaColumns = new ArrayList<>();
+            List<String> keyCondition = new ArrayList<>();
+            List<String> increments = new ArrayList<>();
+            List<String> decrements = new ArrayList<>();
+            List<String> nonNullSums = new ArrayList<>();
+            List<String> zeroSums = new ArrayList<>();
+
+            for (String alias : mv.getColumns().keySet()) {
+                if (MaterializedView.SURROGATE_COUNT.equals(alias)) {
+                    continue;
+                }
+                String col = "\"" + alias + "\"";
+                mvColumns.add(col);
+                if (mv.isGroupByColumn(alias)) {
+                    Column colRef = mv.getColumnRef(alias);
+                    String expr = DateTimeColumn.CELESTA_TYPE.equals(colRef.getCelestaType())
+                            ? "date_trunc('DAY', \"" + colRef.getName() + "\")"
+                            : "\"" + colRef.getName() + "\"";
+                    keyColumns.add(col);
+                    groupByExprs.add(expr);
+                    groupColumns.add(expr + " AS " + col);
+                    deltaColumns.add(expr + " AS " + col);
+                    keyCondition.add("m." + col + " = d." + col);
+                } else if (aggrCols.get(alias) instanceof Sum) {
+                    deltaColumns.add("SUM(\"" + mv.getColumnRef(alias).getName() + "\") AS " + col);
+                    // NULLs are ignored by SUM
+                    increments.add(String.format("%1$s = COALESCE(m.%1$s + EXCLUDED.%1$s, m.%1$s, EXCLUDED.%1$s)", col));
+                    decrements.add(String.format("%1$s = m.%1$s - COALESCE(d.%1$s, 0)", col));
+                    if (mv.getColumnRef(alias).isNullable()) {
+                        nonNullSums.add("\"" + mv.getColumnRef(alias).getName() + "\" IS NOT NULL");
+                        zeroSums.add("m." + col + " = 0");
+                    }
+                } else if (aggrCols.get(alias) instanceof Count) {
+                    deltaColumns.add("COUNT(*) AS " + col);
+                    increments.add(String.format("%1$s = m.%1$s + EXCLUDED.%1$s", col));
+                    decrements.add(String.format("%1$s = m.%1$s - d.%1$s", col));
+                }
+            }
+            mvColumns.add(surrogateCount);
+            deltaColumns.add("COUNT(*) AS " + surrogateCount);
+            increments.add(String.format("%1$s = m.%1$s + EXCLUDED.%1$s", surrogateCount));
+            decrements.add(String.format("%1$s = m.%1$s - d.%1$s", surrogateCount));
+
+            String deltaTemplate = String.format("SELECT %s FROM %%s GROUP BY %s",
+                    String.join(", ", deltaColumns), String.join(", ", groupByExprs));
+            String keyTerm = String.join(" AND ", keyCondition);
+
+            String insertSql = String.format("INSERT INTO %s AS m (%s) \n" +
+                            "%s \n" +
+                            "ON CONFLICT (%s) DO UPDATE SET %s ;\n",
+                    fullMvName, String.join(", ", mvColumns), String.format(deltaTemplate, "new_table"),
+                    String.join(", ", keyColumns), String.join(", ", increments));
+
+            String deleteSql = String.format("UPDATE %s AS m SET %s \n" +
+                            "FROM (%s) AS d \n" +
+                            "WHERE %s ;\n" +
+                            "DELETE FROM %s AS m USING (SELECT DISTINCT %s FROM old_table) AS d \n" +
+                            "WHERE %s AND m.%s = 0 ;\n",
+                    fullMvName, String.join(", ", decrements), String.format(deltaTemplate, "old_table"),
+                    keyTerm, fullMvName, String.join(", ", groupColumns), keyTerm, surrogateCount);
+
+            // removing of the last non-NULL value of a nullable SUM column leaves NULL, not 0,
+            // and only a sum which has become 0 can be NULL: the groups losing non-NULL values
+            // with such sums are recounted from the table, after all the other changes
+            String recountSql = "";
+            if (!nonNullSums.isEmpty()) {
+                String recountGroups = String.format("SELECT DISTINCT %s FROM old_table WHERE %s",
+                        String.join(", ", groupColumns), String.join(" OR ", nonNullSums));
+                recountSql = String.format("WITH r AS (DELETE FROM %s AS m USING (%s) AS d \n" +
+                                "WHERE %s AND (%s) RETURNING %s) \n" +
+                                "INSERT INTO %s (%s) \n" +
+                                "SELECT %s FROM %s WHERE (%s) IN (SELECT %s FROM r) GROUP BY %s ;\n",
+                        fullMvName, recountGroups, keyTerm, String.join(" OR ", zeroSums),
+                        keyColumns.stream().map(c -> "m." + c).collect(Collectors.joining(", ")),
+                        fullMvName, String.join(", ", mvColumns),
+                        String.join(", ", deltaColumns), fullTableName,
+                        String.join(", ", groupByExprs), String.join(", ", keyColumns),
+                        String.join(", ", groupByExprs));
+            }
+
+            String sql;
+
+            //INSERT
+            sql = String.format("CREATE OR REPLACE FUNCTION %s RETURNS trigger AS $BODY$ \n " +
+                            "BEGIN \n" +
+                            MaterializedView.CHECKSUM_COMMENT_TEMPLATE + "\n" +
+                            "LOCK TABLE ONLY %s IN EXCLUSIVE MODE; \n" +
+                            "%s " +
+                            "RETURN NULL; END; $BODY$\n" + "  LANGUAGE plpgsql VOLATILE COST 100;",
+                    insertTriggerFunctionFullName, dmlAdaptor.getMaterializedViewChecksum(mv), fullMvName, insertSql);
+            result.add(sql);
+
+            sql = String.format("CREATE TRIGGER \"%s\" AFTER INSERT " +
+                            "ON %s REFERENCING NEW TABLE AS new_table " +
+                            "FOR EACH STATEMENT EXECUTE PROCEDURE %s",
+                    insertTriggerName, fullTableName, insertTriggerFunctionFullName);
+            result.add(sql);
+            this.rememberTrigger(query.withName(insertTriggerName));
+
+            //UPDATE
+            sql = String.format("CREATE OR REPLACE FUNCTION %s RETURNS trigger AS $BODY$ \n " +
+                            "BEGIN \n" +
+                            "LOCK TABLE ONLY %s IN EXCLUSIVE MODE; \n" +
+                            "%s " + //DELETE
+                            "%s " + //INSERT
+                            "%s " + //RECOUNT
+                            "RETURN NULL; END; $BODY$\n" + "  LANGUAGE plpgsql VOLATILE COST 100;",
+                    updateTriggerFunctionFullName, fullMvName, deleteSql, insertSql, recountSql);
+            result.add(sql);
+
+            sql = String.format("CREATE TRIGGER \"%s\" AFTER UPDATE " +
+                            "ON %s REFERENCING OLD TABLE AS old_table NEW TABLE AS new_table " +
+                            "FOR EACH STATEMENT EXECUTE PROCEDURE %s",
+                    updateTriggerName, fullTableName, updateTriggerFunctionFullName);
+            result.add(sql);
+            this.rememberTrigger(query.withName(updateTriggerName));
+
+            //DELETE
+            sql = String.format("CREATE OR REPLACE FUNCTION %s RETURNS trigger AS $BODY$ \n " +
+                            "BEGIN \n" +
+                            "LOCK TABLE ONLY %s IN EXCLUSIVE MODE; \n" +
+                            "%s" +
+                            "%s" +
+                            "RETURN NULL; END; $BODY$\n" + "  LANGUAGE plpgsql VOLATILE COST 100;",
+                    deleteTriggerFunctionFullName, fullMvName, deleteSql, recountSql);
+            result.add(sql);
+
+            sql = String.format("CREATE TRIGGER \"%s\" AFTER DELETE " +
+                            "ON %s REFERENCING OLD TABLE AS old_table " +
+                            "FOR EACH STATEMENT EXECUTE PROCEDURE %s",
+                    deleteTriggerName, fullTableName, deleteTriggerFunctionFullName);
+            result.add(sql);
+            this.rememberTrigger(query.withName(deleteTriggerName));
+        }
+
+        return result;
+    }
 }
@@ -12,6 +12,17 @@ import java.util.stream.Collectors;
 
 /**
  * Created by ioann on 07.07.2017.
+ * <p>
+ * Rows of the materialized view are maintained incrementally: the aggregates of
+ * the row's group are increased or decreased by the row's values (as the PostgreSQL
+ * triggers do). When a non-null value is removed from a SUM over a nullable column
+ * and the sum becomes 0, the group is recounted from the table, since only a recount
+ * can tell whether the sum is 0 or NULL. Any other result of the subtraction proves
+ * that a non-null value remains.
+ * <p>
+ * H2 passes a new connection object to every {@link #fire} call, so the statements
+ * are built once in {@link #init} and prepared from the same SQL strings, which
+ * are found in H2's per-session command cache.
  */
 abstract public class AbstractMaterializeViewTrigger implements Trigger {
 
@@ -26,13 +37,22 @@ abstract public class AbstractMaterializeViewTrigger implements Trigger {
     private Table t;
     private MaterializedView mv;
 
-    private String tFullName;
-    private String mvFullName;
-    private String keySearchTerm;
-    private String mvAllColumns;
-    private HashMap<Integer, String> tGroupByColumnIndices = new LinkedHashMap<>();
     private HashMap<Integer, String> mvColumnRefs = new LinkedHashMap<>();
 
+    // Indices of the table row values being parameters of the statements.
+    private int[] keyParams;
+    private int[] incrementParams;
+    private int[] decrementParams;
+    private int[] insertParams;
+    private int[] nullableSumIndices;
+
+    private String incrementSql;
+    private String decrementSql;
+    private String insertSql;
+    private String deleteEmptySql;
+    private String deleteZeroSumGroupSql;
+    private String recountGroupSql;
+
     @Override
     public void init(Connection connection, String schemaName, String triggerName, String tableName,
                      boolean before, int type) {
@@ -50,73 +70,111 @@ abstract public class AbstractMaterializeViewTrigger implements Trigger {
             throw new RuntimeException(e);
         }
 
-        tFullName = String.format("\"%s\".\"%s\"", t.getGrain().getName(), t.getName());
-        mvFullName = String.format("\"%s\".\"%s\"", mv.getGrain().getName(), mv.getName());
-
-        mvAllColumns = mv.getColumns().keySet().stream()
-                .filter(alias -> !MaterializedView.SURROGATE_COUNT.equals(alias))
-                .map(v -> "\"" + v + "\"")
-                .collect(Collectors.joining(", "));
-
-        keySearchTerm = mv.getColumns().keySet().stream()
-                .filter(alias -> mv.isGroupByColumn(alias))
-                .map((String alias) -> {
-                    try {
-                        return String.format("(\"%s\" = %s)",
-                                alias,
-                                DateTimeColumn.CELESTA_TYPE.equals(mv.getColumn(alias).getCelestaType()) ?
-                                        "TRUNC(?)" : "?");
-                    } catch (ParseException e) {
-                        throw new RuntimeException(e);
-                    }
-                })
-                .collect(Collectors.joining(" and "));
+        String tFullName = String.format("\"%s\".\"%s\"", t.getGrain().getName(), t.getName());
+        String mvFullName = String.format("\"%s\".\"%s\"", mv.getGrain().getName(), mv.getName());
 
+        Map<String, Integer> tColumnIndices = new HashMap<>();
         List<String> columnRefNames = mv.getColumnRefNames();
-
         int curIndex = 0;
         for (String tCol : t.getColumns().keySet()) {
-            boolean isGroupBy = mv.getColumns().keySet().stream()
-                    .anyMatch(v -> mv.isGroupByColumn(v) && tCol.equals(mv.getColumnRef(v).getName()));
-
-            if (isGroupBy) {
-                tGroupByColumnIndices.put(curIndex, tCol);
-            }
-
+            tColumnIndices.put(tCol, curIndex);
             if (columnRefNames.contains(tCol)) {
                 mvColumnRefs.put(curIndex, tCol);
             }
             ++curIndex;
         }
-    }
-
-
-    void delete(Connection conn, Object[] row) throws SQLException {
 
-        HashMap<String, Object> groupByColumnValues = getTableRowGroupByColumns(row);
-
-        String deleteSql = String.format("DELETE FROM %s WHERE %s", mvFullName, keySearchTerm);
-
-        setParamsAndRun(conn, groupByColumnValues, deleteSql);
+        List<String> keyTerms = new ArrayList<>();
+        List<Integer> keys = new ArrayList<>();
+        List<String> increments = new ArrayList<>();
+        List<Integer> incrementIndices = new ArrayList<>();
+        List<String> decrements = new ArrayList<>();
+        List<Integer> decrementIndices = new ArrayList<>();
+        List<String> insertColumns = new ArrayList<>();
+        List<String> insertValues = new ArrayList<>();
+        List<Integer> insertIndices = new ArrayList<>();
+        List<Integer> nullableSums = new ArrayList<>();
+        List<String> zeroSumTerms = new ArrayList<>();
+        Map<String, Expr> aggrCols = mv.getAggregateColumns();
+
+        for (String alias : mv.getColumns().keySet()) {
+            if (MaterializedView.SURROGATE_COUNT.equals(alias)) {
+                continue;
+            }
+            String col = "\"" + alias + "\"";
+            Column colRef = mv.getColumnRef(alias);
+            insertColumns.add(col);
+            if (mv.isGroupByColumn(alias)) {
+                int i = tColumnIndices.get(colRef.getName());
+                String param = DateTimeColumn.CELESTA_TYPE.equals(colRef.getCelestaType()) ? "TRUNC(?)" : "?";
+                keyTerms.add(String.format("(%s = %s)", col, param));
+                keys.add(i);
+                insertValues.add(param);
+                insertIndices.add(i);
+            } else if (aggrCols.get(alias) instanceof Sum) {
+                int i = tColumnIndices.get(colRef.getName());
+                // NULLs are ignored by SUM
+                increments.add(String.format("%1$s = COALESCE(%1$s + ?, %1$s, ?)", col));
+                incrementIndices.add(i);
+                incrementIndices.add(i);
+                decrements.add(String.format("%1$s = %1$s - COALESCE(?, 0)", col));
+                decrementIndices.add(i);
+                insertValues.add("?");
+                insertIndices.add(i);
+                if (colRef.isNullable()) {
+                    nullableSums.add(i);
+                    zeroSumTerms.add(String.format("(%s = 0)", col));
+                }
+            } else if (aggrCols.get(alias) instanceof Count) {
+                increments.add(String.format("%1$s = %1$s + 1", col));
+                decrements.add(String.format("%1$s = %1$s - 1", col));
+                insertValues.add("1");
+            }
+        }
+        String surrogateCount = "\"" + MaterializedView.SURROGATE_COUNT + "\"";
+        increments.add(String.format("%1$s = %1$s + 1", surrogateCount));
+        decrements.add(String.format("%1$s = %1$s - 1", surrogateCount));
+        insertColumns.add(surrogateCount);
+        insertValues.add("1");
+
+        String keySearchTerm = String.join(" and ", keyTerms);
+        keyParams = toArray(keys);
+        incrementParams = concat(toArray(incrementIndices), keyParams);
+        decrementParams = concat(toArray(decrementIndices), keyParams);
+        insertParams = toArray(insertIndices);
+        nullableSumIndices = toArray(nullableSums);
+
+        incrementSql = String.format("UPDATE %s SET %s WHERE %s",
+                mvFullName, String.join(", ", increments), keySearchTerm);
+        decrementSql = String.format("UPDATE %s SET %s WHERE %s",
+                mvFullName, String.join(", ", decrements), keySearchTerm);
+        insertSql = String.format("INSERT INTO %s (%s) VALUES (%s)",
+                mvFullName, String.join(", ", insertColumns), String.join(", ", insertValues));
+        deleteEmptySql = String.format("DELETE FROM %s WHERE %s and (%s = 0)",
+                mvFullName, keySearchTerm, surrogateCount);
+        deleteZeroSumGroupSql = zeroSumTerms.isEmpty() ? null
+                : String.format("DELETE FROM %s WHERE %s and (%s)",
+                        mvFullName, keySearchTerm, String.join(" or ", zeroSumTerms));
+        recountGroupSql = recountGroupSql(tFullName, mvFullName);
     }
 
-    void insert(Connection conn, Object[] row) throws SQLException {
-
-        HashMap<String, Object> groupByColumnValues = getTableRowGroupByColumns(row);
+    private String recountGroupSql(String tFullName, String mvFullName) {
+        String mvAllColumns = mv.getColumns().keySet().stream()
+                .filter(alias -> !MaterializedView.SURROGATE_COUNT.equals(alias))
+                .map(v -> "\"" + v + "\"")
+                .collect(Collectors.joining(", "));
 
-        String whereCondition = groupByColumnValues.keySet().stream()
+        // in the order of the key parameters
+        String whereCondition = mv.getColumns().keySet().stream()
+                .filter(alias -> mv.isGroupByColumn(alias))
                 .map(alias -> {
-                    try {
-                        return DateTimeColumn.CELESTA_TYPE.equals(t.getColumn(alias).getCelestaType()) ?
-                                "TRUNC(\"" + alias + "\") = TRUNC(?)"
-                                : "\"" + alias + "\" = ?";
-                    } catch (ParseException e) {
-                        throw new RuntimeException(e);
-                    }
+                    Column colRef = mv.getColumnRef(alias);
+                    return DateTimeColumn.CELESTA_TYPE.equals(colRef.getCelestaType()) ?
+                            "TRUNC(\"" + colRef.getName() + "\") = TRUNC(?)"
+                            : "\"" + colRef.getName() + "\" = ?";
                 })
                 .collect(Collectors.joining(" AND "));
 
-
         String selectPartOfScript = mv.getColumns().keySet().stream()
                 .filter(alias -> !MaterializedView.SURROGATE_COUNT.equals(alias))
                 .map(alias -> {
@@ -152,23 +210,78 @@ abstract public class AbstractMaterializeViewTrigger implements Trigger {
         selectStmtBuilder.append(" WHERE ").append(whereCondition)
                 .append(mv.getGroupByPartOfScript());
 
-        String insertSql = String.format("INSERT INTO %s (%s) %s", mvFullName,
+        return String.format("INSERT INTO %s (%s) %s", mvFullName,
                 mvAllColumns + ", \"" + MaterializedView.SURROGATE_COUNT + "\"", selectStmtBuilder.toString());
+    }
 
+    /**
+     * Adds the row to the aggregates of its group.
+     */
+    void add(Connection conn, Object[] row) throws SQLException {
+        if (execute(conn, incrementSql, row, incrementParams) == 0) {
+            execute(conn, insertSql, row, insertParams);
+        }
+    }
+
+    /**
+     * Removes the row from the aggregates of its group.
+     *
+     * @return whether the group has been recounted from the table.
+     */
+    boolean subtract(Connection conn, Object[] row) throws SQLException {
+        execute(conn, decrementSql, row, decrementParams);
+        execute(conn, deleteEmptySql, row, keyParams);
+        if (removesNonNullSum(row) && execute(conn, deleteZeroSumGroupSql, row, keyParams) > 0) {
+            // a sum became 0: it is either a sum of the remaining values or NULL
+            execute(conn, recountGroupSql, row, keyParams);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Whether the row has a non-null value in a SUM over a nullable column.
+     */
+    private boolean removesNonNullSum(Object[] row) {
+        for (int i : nullableSumIndices) {
+            if (row[i] != null) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        setParamsAndRun(conn, groupByColumnValues, insertSql);
+    /**
+     * Whether the rows have the same values of the group by columns.
+     */
+    boolean isSameGroup(Object[] row1, Object[] row2) {
+        for (int i : keyParams) {
+            if (!Objects.equals(row1[i], row2[i])) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private void setParamsAndRun(Connection conn, HashMap<String, Object> groupByColumnValues, String insertSql) throws SQLException {
-        try (PreparedStatement stmt = conn.prepareStatement(insertSql)) {
-            int i = 0;
-            for (Object value : groupByColumnValues.values()) {
-                stmt.setObject(++i, value);
+    private static int execute(Connection conn, String sql, Object[] row, int[] params) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, row[params[i]]);
             }
-            stmt.execute();
+            return stmt.executeUpdate();
         }
     }
 
+    private static int[] toArray(List<Integer> list) {
+        return list.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
     @Override
     public void close() {
         //nothing to do
@@ -181,15 +294,6 @@ abstract public class AbstractMaterializeViewTrigger implements Trigger {
 
     abstract String getNamePrefix();
 
-    private HashMap<String, Object> getTableRowGroupByColumns(Object[] row) {
-        HashMap<String, Object> result = new LinkedHashMap<>();
-
-        tGroupByColumnIndices.entrySet().stream()
-                .forEach(e -> result.put(e.getValue(), row[e.getKey()]));
-
-        return result;
-    }
-
     HashMap<Integer, String> getMvColumnRefs() {
         return mvColumnRefs;
     }
@@ -12,8 +12,7 @@ public class MaterializedViewDeleteTrigger extends AbstractMaterializeViewTrigge
 
   @Override
   public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
-    delete(connection, oldRow);
-    insert(connection, oldRow);
+    subtract(connection, oldRow);
   }
 
   @Override
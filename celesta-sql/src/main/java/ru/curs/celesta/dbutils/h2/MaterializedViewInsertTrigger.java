@@ -13,8 +13,7 @@ public class MaterializedViewInsertTrigger extends AbstractMaterializeViewTrigge
 
   @Override
   public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
-    delete(connection, newRow);
-    insert(connection, newRow);
+    add(connection, newRow);
   }
 
   @Override
@@ -16,11 +16,11 @@ public class MaterializedViewUpdateTrigger extends AbstractMaterializeViewTrigge
   public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
     if (mvColumnsAreChanged(oldRow, newRow)) {
       //process old
-      delete(connection, oldRow);
-      insert(connection, oldRow);
-      //process new
-      delete(connection, newRow);
-      insert(connection, newRow);
+      boolean recounted = subtract(connection, oldRow);
+      //process new: the recount of the old group takes the new row into account if the group is the same
+      if (!(recounted && isSameGroup(oldRow, newRow))) {
+        add(connection, newRow);
+      }
     }
   }
 
@@ -0,0 +1,123 @@
+package ru.curs.celesta.dbutils.meta;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Snapshot of the database objects of a grain: tables, their columns and
+ * primary keys, and sequences.
+ * <p>
+ * The snapshot is loaded by a few set-based catalog queries before the grain
+ * is updated. Once a table is modified, its entries are invalidated, and
+ * {@code null} is returned for them, so that the caller should query the
+ * database directly.
+ */
+public final class DbCatalog {
+    private final Set<String> tables = new HashSet<>();
+    private final Map<String, Map<String, DbColumnInfo>> columns = new HashMap<>();
+    private final Map<String, DbPkInfo> pks = new HashMap<>();
+    private final Set<String> sequences = new HashSet<>();
+    private final Set<String> invalidated = new HashSet<>();
+
+    public void addTable(String tableName) {
+        tables.add(tableName);
+    }
+
+    /**
+     * Adds a column of the table.
+     *
+     * @param tableName  table name
+     * @param columnName column name
+     * @param info       column information, or {@code null} if it is not loaded
+     *                   by the adaptor and should be queried separately
+     */
+    public void addColumn(String tableName, String columnName, DbColumnInfo info) {
+        columns.computeIfAbsent(tableName, t -> new LinkedHashMap<>()).put(columnName, info);
+    }
+
+    public void addPkColumn(String tableName, String pkName, String columnName) {
+        DbPkInfo pkInfo = pks.computeIfAbsent(tableName, t -> new DbPkInfo());
+        pkInfo.setName(pkName);
+        pkInfo.addColumnName(columnName);
+    }
+
+    public void addSequence(String sequenceName) {
+        sequences.add(sequenceName);
+    }
+
+    /**
+     * Marks the table as modified since the snapshot was taken.
+     *
+     * @param tableName table name
+     */
+    public void invalidate(String tableName) {
+        invalidated.add(tableName);
+    }
+
+    public boolean tableExists(String tableName) {
+        return tables.contains(tableName);
+    }
+
+    public boolean sequenceExists(String sequenceName) {
+        return sequences.contains(sequenceName);
+    }
+
+    /**
+     * Returns names of the table columns, or {@code null} if the table is modified.
+     *
+     * @param tableName table name
+     */
+    public Set<String> getColumns(String tableName) {
+        if (invalidated.contains(tableName)) {
+            return null;
+        }
+        Map<String, DbColumnInfo> result = columns.get(tableName);
+        return result == null ? new HashSet<>() : result.keySet();
+    }
+
+    /**
+     * Returns information on the column, or {@code null} if the table is modified
+     * or the information is not loaded.
+     *
+     * @param tableName  table name
+     * @param columnName column name
+     */
+    public DbColumnInfo getColumnInfo(String tableName, String columnName) {
+        if (invalidated.contains(tableName)) {
+            return null;
+        }
+        Map<String, DbColumnInfo> result = columns.get(tableName);
+        return result == null ? null : result.get(columnName);
+    }
+
+    /**
+     * Whether the column is known to be absent from the (unmodified) table.
+     *
+     * @param tableName  table name
+     * @param columnName column name
+     */
+    public boolean isColumnAbsent(String tableName, String columnName) {
+        if (invalidated.contains(tableName)) {
+            return false;
+        }
+        Map<String, DbColumnInfo> result = columns.get(tableName);
+        return result == null || !result.containsKey(columnName);
+    }
+
+    /**
+     * Returns information on the primary key of the table, or {@code null}
+     * if the table is modified.
+     *
+     * @param tableName table name
+     */
+    public DbPkInfo getPKInfo(String tableName) {
+        if (invalidated.contains(tableName)) {
+            return null;
+        }
+        DbPkInfo result = pks.get(tableName);
+        return result == null ? new DbPkInfo() : result;
+    }
+}
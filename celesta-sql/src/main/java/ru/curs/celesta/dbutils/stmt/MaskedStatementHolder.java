@@ -1,37 +1,108 @@
 package ru.curs.celesta.dbutils.stmt;
 
 import java.sql.PreparedStatement;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Holder for a statement which depends on nulls mask.
+ * <p>
+ * A statement is prepared for every distinct nulls mask and kept open, so that
+ * records with alternating nulls (e.g. sparse data being inserted) do not cause
+ * re-preparing of the statement on every record. At most {@link #MAX_STATEMENTS}
+ * statements are kept, the least recently used ones are closed.
  */
 public abstract class MaskedStatementHolder extends PreparedStmtHolder {
+    /**
+     * Maximal number of statements kept open by the holder.
+     */
+    public static final int MAX_STATEMENTS = 8;
+
     private int[] nullsMaskIndices;
     private boolean[] nullsMask;
 
+    private final Map<BitSet, MaskedStatement> statements =
+            new LinkedHashMap<BitSet, MaskedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<BitSet, MaskedStatement> eldest) {
+                    if (size() > MAX_STATEMENTS) {
+                        eldest.getValue().close();
+                        evictions++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+    private final BitSet key = new BitSet();
+    private MaskedStatement current;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
     @Override
     public synchronized PreparedStatement getStatement(Object[] rec, int recversion)  {
-        reusable: if (isStmtValid()) {
-            for (int i = 0; i < nullsMask.length; i++) {
-                if (nullsMask[i] != (rec[nullsMaskIndices[i]] == null)) {
-                    close();
-                    break reusable;
+        if (!isReusableFor(rec)) {
+            if (nullsMaskIndices == null) {
+                nullsMaskIndices = getNullsMaskIndices();
+            }
+            key.clear();
+            for (int i = 0; i < nullsMaskIndices.length; i++) {
+                if (rec[nullsMaskIndices[i]] == null) {
+                    key.set(i);
+                }
+            }
+            current = statements.get(key);
+            if (current == null) {
+                misses++;
+                boolean[] mask = new boolean[nullsMaskIndices.length];
+                for (int i = 0; i < mask.length; i++) {
+                    mask[i] = key.get(i);
                 }
+                current = new MaskedStatement(mask);
+                statements.put((BitSet) key.clone(), current);
+            } else {
+                hits++;
             }
-            return super.getStatement(rec, recversion);
+        } else {
+            hits++;
+        }
+        nullsMask = current.mask;
+        return current.getStatement(rec, recversion);
+    }
+
+    /**
+     * Whether the statement returned last is valid and can be used for the record
+     * without another statement being taken, i.e. the nulls mask of the record matches.
+     *
+     * @param rec
+     *            Array of record fields' values.
+     */
+    public synchronized boolean isReusableFor(Object[] rec) {
+        if (current == null || !current.isStmtValid()) {
+            return false;
         }
-        nullsMaskIndices = getNullsMaskIndices();
-        nullsMask = new boolean[nullsMaskIndices.length];
         for (int i = 0; i < nullsMask.length; i++) {
-            nullsMask[i] = rec[nullsMaskIndices[i]] == null;
+            if (nullsMask[i] != (rec[nullsMaskIndices[i]] == null)) {
+                return false;
+            }
         }
+        return true;
+    }
 
-        return super.getStatement(rec, recversion);
+    @Override
+    public synchronized boolean isStmtValid() {
+        return current != null && current.isStmtValid();
     }
 
     @Override
     public synchronized void close() {
         super.close();
+        statements.values().forEach(PreparedStmtHolder::close);
+        statements.clear();
+        current = null;
         nullsMaskIndices = null;
     }
 
@@ -39,6 +110,44 @@ public abstract class MaskedStatementHolder extends PreparedStmtHolder {
         return nullsMask;
     }
 
+    /**
+     * Number of times a prepared statement has been found for the nulls mask.
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Number of times a statement has been prepared for a new nulls mask.
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Number of statements closed as the least recently used ones.
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
     protected abstract int[] getNullsMaskIndices() ;
 
+    /**
+     * Statement for a nulls mask.
+     */
+    private final class MaskedStatement extends PreparedStmtHolder {
+        private final boolean[] mask;
+
+        MaskedStatement(boolean[] mask) {
+            this.mask = mask;
+        }
+
+        @Override
+        protected PreparedStatement initStatement(List<ParameterSetter> program) {
+            nullsMask = mask;
+            return MaskedStatementHolder.this.initStatement(program);
+        }
+    }
+
 }
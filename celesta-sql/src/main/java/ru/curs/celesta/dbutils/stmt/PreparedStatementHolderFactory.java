@@ -5,19 +5,50 @@ import ru.curs.celesta.dbutils.query.FromClause;
 import ru.curs.celesta.dbutils.term.CsqlWhereTermsMaker;
 import ru.curs.celesta.dbutils.term.FromTerm;
 import ru.curs.celesta.dbutils.term.WhereTerm;
+import ru.curs.celesta.score.DataGrainElement;
 import ru.curs.celesta.score.Table;
 import ru.curs.celesta.score.TableElement;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 public class PreparedStatementHolderFactory {
 
-    public static MaskedStatementHolder createInsertHolder(Table meta, DBAdaptor dbAdaptor, Connection conn) {
+    /**
+     * Creates a holder for insert statement returning the stored row.
+     *
+     * @param fields  fields of the stored row to return, empty set means all fields
+     */
+    public static MaskedStatementHolder createInsertHolder(Table meta, DBAdaptor dbAdaptor, Connection conn,
+                                                           Set<String> fields) {
+        return new MaskedStatementHolder() {
+
+            @Override
+            protected int[] getNullsMaskIndices()  {
+                // we monitor all columns for nulls
+                int[] result = new int[meta.getColumns().size()];
+                for (int i = 0; i < result.length; i++)
+                    result[i] = i;
+                return result;
+            }
+
+            @Override
+            protected PreparedStatement initStatement(List<ParameterSetter> program)  {
+                return dbAdaptor.getInsertRecordReturningStatement(conn, meta, getNullsMask(), program, fields);
+            }
+
+        };
+    }
+
+    /**
+     * Creates a holder for plain insert statement (without returning the stored row)
+     * which is suitable for JDBC batches.
+     */
+    public static MaskedStatementHolder createBatchInsertHolder(Table meta, DBAdaptor dbAdaptor, Connection conn) {
         return new MaskedStatementHolder() {
 
             @Override
@@ -37,13 +68,37 @@ public class PreparedStatementHolderFactory {
         };
     }
 
-    public static PreparedStmtHolder createGetHolder(TableElement meta, DBAdaptor dbAdaptor, Connection conn) {
+    public static PreparedStmtHolder createGetHolder(TableElement meta, DBAdaptor dbAdaptor, Connection conn,
+                                                     Set<String> fields) {
         return new PreparedStmtHolder() {
             @Override
             protected PreparedStatement initStatement(List<ParameterSetter> program)  {
                 WhereTerm where = CsqlWhereTermsMaker.getPKWhereTermForGet(meta);
                 where.programParams(program, dbAdaptor);
-                return dbAdaptor.getOneRecordStatement(conn, meta, where.getWhere(), Collections.emptySet());
+                return dbAdaptor.getOneRecordStatement(conn, meta, where.getWhere(), fields);
+            }
+        };
+    }
+
+    /**
+     * Creates a holder for the statement reading a number of records by their primary keys.
+     *
+     * @param fields    fields to read, empty set means all fields
+     * @param keyCount  number of the keys
+     */
+    public static PreparedStmtHolder createGetAllHolder(TableElement meta, DBAdaptor dbAdaptor, Connection conn,
+                                                        Set<String> fields, int keyCount) {
+        return new PreparedStmtHolder() {
+            @Override
+            protected PreparedStatement initStatement(List<ParameterSetter> program)  {
+                WhereTerm where = CsqlWhereTermsMaker.getPKWhereTermForGetAll(meta, keyCount);
+                where.programParams(program, dbAdaptor);
+                FromClause from = new FromClause();
+                from.setGe((DataGrainElement) meta);
+                from.setExpression(dbAdaptor.tableString(meta.getGrain().getName(), meta.getName()));
+                String orderBy = meta.getPrimaryKey().keySet().stream()
+                        .map(name -> "\"" + name + "\"").collect(Collectors.joining(", "));
+                return dbAdaptor.getRecordSetStatement(conn, from, where.getWhere(), orderBy, 0, 0, fields);
             }
         };
     }
@@ -3,6 +3,9 @@ package ru.curs.celesta.dbutils.term;
 import ru.curs.celesta.score.Table;
 import ru.curs.celesta.score.TableElement;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class CsqlWhereTermsMaker {
 
     public static WhereTerm getPKWhereTermForGet(TableElement t)  {
@@ -15,6 +18,22 @@ public class CsqlWhereTermsMaker {
         return r == null ? AlwaysTrue.TRUE : r;
     }
 
+    /**
+     * Gets WHERE clause for a number of records (by their primary keys).
+     *
+     * @param t
+     *            Table meta.
+     * @param keyCount
+     *            Number of the keys.
+     */
+    public static WhereTerm getPKWhereTermForGetAll(TableElement t, int keyCount)  {
+        List<String> keyFields = new ArrayList<>();
+        for (String colName : t.getPrimaryKey().keySet()) {
+            keyFields.add("\"" + colName + "\"");
+        }
+        return new KeysInTerm(keyFields, keyCount);
+    }
+
     /**
      * Gets WHERE clause for single record (by its primary key).
      *
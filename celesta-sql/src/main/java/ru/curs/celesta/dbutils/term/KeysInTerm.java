@@ -0,0 +1,44 @@
+package ru.curs.celesta.dbutils.term;
+
+import ru.curs.celesta.dbutils.QueryBuildingHelper;
+import ru.curs.celesta.dbutils.stmt.ParameterSetter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * Search of records by a number of primary keys.
+ * <p>
+ * Parameters are the values of the key fields of all the keys in a row.
+ */
+public final class KeysInTerm extends WhereTerm {
+    // quoted names of the primary key columns
+    private final List<String> keyFields;
+    private final int keyCount;
+
+    public KeysInTerm(List<String> keyFields, int keyCount) {
+        this.keyFields = keyFields;
+        this.keyCount = keyCount;
+    }
+
+    @Override
+    public String getWhere() {
+        if (keyFields.size() == 1) {
+            return String.format("(%s in (%s))", keyFields.get(0),
+                    String.join(", ", Collections.nCopies(keyCount, "?")));
+        }
+        StringJoiner key = new StringJoiner(" and ", "(", ")");
+        for (String field : keyFields) {
+            key.add(String.format("(%s = ?)", field));
+        }
+        return String.format("(%s)", String.join(" or ", Collections.nCopies(keyCount, key.toString())));
+    }
+
+    @Override
+    public void programParams(List<ParameterSetter> program, QueryBuildingHelper queryBuildingHelper) {
+        for (int i = 0; i < keyCount * keyFields.size(); i++) {
+            program.add(ParameterSetter.create(i, queryBuildingHelper));
+        }
+    }
+}
@@ -40,6 +40,11 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.CRC32;
 
 import ru.curs.celesta.CelestaException;
@@ -62,7 +67,8 @@ public abstract class AbstractScore {
 
     private String path;
     private File defaultGrainPath;
-    private int orderCounter;
+    private final AtomicInteger orderCounter = new AtomicInteger();
+    private ForkJoinPool parsingPool = ForkJoinPool.commonPool();
 
     public AbstractScore() {
         //TODO!!! Used only for test and must be replaced. Must be private!!!
@@ -75,6 +81,13 @@ public abstract class AbstractScore {
         this.path = scorePath;
     }
 
+    /**
+     * @param parsingPool пул, на котором гранулы разбираются параллельно.
+     */
+    void setParsingPool(ForkJoinPool parsingPool) {
+        this.parsingPool = parsingPool;
+    }
+
     /**
      * Инициализация ядра путём указания набора путей к папкам score,
      * разделённого точкой с запятой.
@@ -153,6 +166,8 @@ public abstract class AbstractScore {
 
     private void parseGrains(StringBuilder errorScript) throws ParseException {
 
+        parseGrainsConcurrently(errorScript);
+
         for (String grainName : grainNameToGrainParts.keySet()) {
             try {
                 parseGrain(grainName);
@@ -167,6 +182,143 @@ public abstract class AbstractScore {
 
     }
 
+    /**
+     * Разбирает гранулы параллельно на ForkJoin-пуле перед последовательным
+     * разбором.
+     * <p>
+     * Ссылки на другие гранулы всегда квалифицированы именем гранулы, поэтому
+     * гранулы, на которые ссылается гранула, находятся разбором её файлов на
+     * лексемы, и гранула разбирается после того, как разобраны они. Гранулы,
+     * входящие в циклы ссылок (или зависящие от них), и гранулы, файлы которых
+     * не удалось разобрать на лексемы, остаются последовательному разбору,
+     * который сообщает об их ошибках, как и прежде. Порядок зависимости гранул
+     * (dependency order) тот же, что и при последовательном разборе.
+     * <p>
+     * Гранула, не разобранная из-за ошибки в грануле, от которой она зависит,
+     * сообщает ошибку этой гранулы (без префикса с именем своего файла).
+     */
+    private void parseGrainsConcurrently(StringBuilder errorScript) throws ParseException {
+        List<String> grainNames = new ArrayList<>(grainNameToGrainParts.keySet());
+        if (grainNames.size() < 2 || parsingPool.getParallelism() < 2) {
+            return;
+        }
+
+        Map<String, Set<String>> references = new ConcurrentHashMap<>();
+        grainNames.parallelStream().forEach(grainName -> {
+            Set<String> grainReferences = scanReferences(grainName);
+            if (grainReferences != null) {
+                references.put(grainName, grainReferences);
+            }
+        });
+
+        // A grain is parsed after the grains it refers to.
+        Map<String, CompletableFuture<Void>> tasks = new HashMap<>();
+        boolean added;
+        do {
+            added = false;
+            for (String grainName : grainNames) {
+                Set<String> grainReferences = references.get(grainName);
+                if (grainReferences == null || tasks.containsKey(grainName)
+                        || !grainReferences.stream().allMatch(
+                                r -> tasks.containsKey(r) || grains.get(r).isParsingComplete())) {
+                    continue;
+                }
+                CompletableFuture<?>[] dependencies = grainReferences.stream()
+                        .map(tasks::get)
+                        .filter(Objects::nonNull)
+                        .toArray(CompletableFuture<?>[]::new);
+                tasks.put(grainName, CompletableFuture.allOf(dependencies).thenRunAsync(() -> {
+                    try {
+                        parseGrain(grainName);
+                    } catch (ParseException e) {
+                        throw new CompletionException(e);
+                    }
+                }, parsingPool));
+                added = true;
+            }
+        } while (added);
+
+        // The first error in the order of grains is reported, as in the sequential parsing.
+        Throwable error = null;
+        for (String grainName : grainNames) {
+            CompletableFuture<Void> task = tasks.get(grainName);
+            if (task == null) {
+                continue;
+            }
+            try {
+                task.join();
+            } catch (CompletionException e) {
+                if (error == null) {
+                    error = e.getCause();
+                }
+            }
+        }
+        if (error instanceof ParseException) {
+            errorScript.append(error.getMessage());
+            throw new ParseException(errorScript.toString());
+        } else if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        }
+
+        List<Integer> orders = new ArrayList<>();
+        for (String grainName : tasks.keySet()) {
+            orders.add(grains.get(grainName).getDependencyOrder());
+        }
+        Collections.sort(orders);
+        Iterator<Integer> order = orders.iterator();
+        Set<String> visited = new HashSet<>();
+        for (String grainName : grainNames) {
+            assignDependencyOrder(grainName, tasks.keySet(), references, visited, order);
+        }
+    }
+
+    private void assignDependencyOrder(String grainName, Set<String> parsed, Map<String, Set<String>> references,
+                                       Set<String> visited, Iterator<Integer> order) {
+        if (!parsed.contains(grainName) || !visited.add(grainName)) {
+            return;
+        }
+        for (String r : references.get(grainName)) {
+            assignDependencyOrder(r, parsed, references, visited, order);
+        }
+        grains.get(grainName).setDependencyOrder(order.next());
+    }
+
+    /**
+     * Возвращает имена других гранул, на которые ссылаются файлы гранулы,
+     * в порядке первой ссылки, или {@code null}, если файлы не удалось разобрать
+     * на лексемы.
+     *
+     * @param grainName Имя гранулы.
+     */
+    private Set<String> scanReferences(String grainName) {
+        Set<String> result = new LinkedHashSet<>();
+        for (GrainPart grainPart : grainNameToGrainParts.get(grainName)) {
+            try (InputStream is = new FileInputStream(grainPart.getSourceFile())) {
+                CelestaParserTokenManager tokens =
+                        new CelestaParserTokenManager(new SimpleCharStream(is, "utf-8", 1, 1));
+                Token prev2 = null;
+                Token prev = null;
+                for (Token t = tokens.getNextToken(); t.kind != CelestaParserConstants.EOF; t = tokens.getNextToken()) {
+                    if (prev2 != null && prev2.kind == CelestaParserConstants.S_IDENTIFIER && ".".equals(prev.image)
+                            && t.kind == CelestaParserConstants.S_IDENTIFIER) {
+                        for (String name : Arrays.asList(prev2.image, prev2.image.replace("\"", ""))) {
+                            if (grains.containsKey(name) && !grainName.equals(name)) {
+                                result.add(name);
+                            }
+                        }
+                    }
+                    prev2 = prev;
+                    prev = t;
+                }
+            } catch (IOException | TokenMgrError e) {
+                return null;
+            }
+        }
+        return result;
+    }
+
     void parseGrain(String grainName) throws ParseException {
         Grain g = grains.get(grainName);
 
@@ -330,7 +482,7 @@ public abstract class AbstractScore {
     }
 
     int nextOrderCounter() {
-        return ++orderCounter;
+        return orderCounter.incrementAndGet();
     }
 
 
@@ -338,6 +490,7 @@ public abstract class AbstractScore {
         private String path;
         private ScoreDiscovery scoreDiscovery;
         private Class<T> scoreClass;
+        private ForkJoinPool parsingPool;
 
         public ScoreBuilder(Class<T> scoreClass) {
             this.scoreClass = scoreClass;
@@ -353,6 +506,11 @@ public abstract class AbstractScore {
             return this;
         }
 
+        ScoreBuilder<T> parsingPool(ForkJoinPool parsingPool) {
+            this.parsingPool = parsingPool;
+            return this;
+        }
+
         public T build() throws ParseException {
             if (scoreDiscovery == null)
                 scoreDiscovery = new DefaultScoreDiscovery();
@@ -360,6 +518,8 @@ public abstract class AbstractScore {
             try {
                 T t = scoreClass.newInstance();
                 t.setScorePath(this.path);
+                if (parsingPool != null)
+                    t.setParsingPool(parsingPool);
                 t.init(this.scoreDiscovery);
 
                 return t;
@@ -398,6 +558,16 @@ final class ChecksumInputStream extends InputStream {
         return result;
     }
 
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int result = input.read(b, off, len);
+        if (result > 0) {
+            counter += result;
+            checksum.update(b, off, result);
+        }
+        return result;
+    }
+
     public int getCRC32() {
         return (int) checksum.getValue();
     }
@@ -12,6 +12,10 @@ public final class CelestaDocUtils {
 
     public static final String OPTION = "option";
     public static final String IMPLEMENTS = "implements";
+    public static final String CACHE = "cache";
+    public static final String CACHE_SIZE = "size";
+    public static final String CACHE_TTL = "ttl";
+    public static final String SNAPSHOT = "snapshot";
 
     private CelestaDocUtils() {
         throw new AssertionError();
@@ -85,4 +89,29 @@ public final class CelestaDocUtils {
         }
     }
 
+    public static int getInt(String celestaDoc, String key, int defaultValue) {
+        String json = getCelestaDocJSON(celestaDoc);
+
+        JSONObject metadata = new JSONObject(json);
+        return metadata.has(key) ? metadata.getInt(key) : defaultValue;
+    }
+
+    /**
+     * Returns integer field of the object which is the value of the key.
+     * A number value of the key is treated as the value of the field {@code numberField}.
+     */
+    public static int getInt(String celestaDoc, String key, String field, String numberField, int defaultValue) {
+        String json = getCelestaDocJSON(celestaDoc);
+
+        JSONObject metadata = new JSONObject(json);
+        if (!metadata.has(key)) {
+            return defaultValue;
+        }
+        JSONObject value = metadata.optJSONObject(key);
+        if (value == null) {
+            return field.equals(numberField) ? metadata.getInt(key) : defaultValue;
+        }
+        return value.has(field) ? value.getInt(field) : defaultValue;
+    }
+
 }
@@ -16,6 +16,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -46,8 +47,9 @@ public final class Grain extends NamedElement {
 
     private Set<GrainPart> grainParts = new LinkedHashSet<>();
 
+    // element holders are created lazily, also while grains are updated concurrently
     private final Map<Class<? extends GrainElement>, NamedElementHolder<? extends GrainElement>> grainElements
-            = new HashMap<>();
+            = new ConcurrentHashMap<>();
 
     private final NamedElementHolder<Index> indices = new NamedElementHolder<Index>() {
         @Override
@@ -333,6 +335,10 @@ public final class Grain extends NamedElement {
         return dependencyOrder;
     }
 
+    void setDependencyOrder(int dependencyOrder) {
+        this.dependencyOrder = dependencyOrder;
+    }
+
     /**
      * Indicates that the grain parsing is completed. A system method.
      * 
@@ -381,4 +381,69 @@ public final class Table extends DataGrainElement implements TableElement, Versi
         }
     }
 
+    /**
+     * Returns maximal number of records of the table cached by primary key
+     * (value of the cache property in CelestaDoc or of its size field),
+     * or 0 if the records are not cached.
+     */
+    public int getCacheSize() {
+        final int result;
+        try {
+            result = CelestaDocUtils.getInt(getCelestaDoc(), CelestaDocUtils.CACHE,
+                    CelestaDocUtils.CACHE_SIZE, CelestaDocUtils.CACHE_SIZE, 0);
+        } catch (JSONException e1) {
+            throw new CelestaException("Error in CelestaDoc for %s.%s: %s", getGrain().getName(),
+                    getName(), e1.getMessage());
+        }
+        if (result < 0) {
+            throw new CelestaException("Error in CelestaDoc for %s.%s: cache size should not be negative.",
+                    getGrain().getName(), getName());
+        }
+        if (result > 0 && !isVersioned) {
+            throw new CelestaException("Error in CelestaDoc for %s.%s: only versioned tables can be cached.",
+                    getGrain().getName(), getName());
+        }
+        return result;
+    }
+
+    /**
+     * Returns time to live in seconds of the records cached by primary key (value
+     * of the ttl field of the cache property in CelestaDoc), 0 if the records do not expire.
+     */
+    public int getCacheTtl() {
+        final int result;
+        try {
+            result = CelestaDocUtils.getInt(getCelestaDoc(), CelestaDocUtils.CACHE,
+                    CelestaDocUtils.CACHE_TTL, CelestaDocUtils.CACHE_SIZE, 0);
+        } catch (JSONException e1) {
+            throw new CelestaException("Error in CelestaDoc for %s.%s: %s", getGrain().getName(),
+                    getName(), e1.getMessage());
+        }
+        if (result < 0) {
+            throw new CelestaException("Error in CelestaDoc for %s.%s: cache ttl should not be negative.",
+                    getGrain().getName(), getName());
+        }
+        return result;
+    }
+
+    /**
+     * Returns time to live in seconds of the in-memory snapshot of the table (value
+     * of the snapshot property in CelestaDoc), 0 if the snapshot does not expire,
+     * or -1 if the table has no snapshot.
+     */
+    public int getSnapshotTtl() {
+        final int result;
+        try {
+            result = CelestaDocUtils.getInt(getCelestaDoc(), CelestaDocUtils.SNAPSHOT, -1);
+        } catch (JSONException e1) {
+            throw new CelestaException("Error in CelestaDoc for %s.%s: %s", getGrain().getName(),
+                    getName(), e1.getMessage());
+        }
+        if (result >= 0 && !isReadOnly) {
+            throw new CelestaException("Error in CelestaDoc for %s.%s: only read only tables can have snapshots.",
+                    getGrain().getName(), getName());
+        }
+        return Math.max(result, -1);
+    }
+
 }
@@ -5,6 +5,7 @@ import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 
 public class ChecksumInputStreamTest {
 
@@ -22,4 +23,28 @@ public class ChecksumInputStreamTest {
                 () -> assertEquals(is2.getCount(), is3.getCount())
         );
     }
+
+    @Test
+    public void testBulkReadChecksum() throws IOException {
+        byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+
+        ChecksumInputStream is1 = new ChecksumInputStream(new ByteArrayInputStream(data));
+        while (is1.read() >= 0) {
+            // reading byte by byte
+        }
+        ChecksumInputStream is2 = new ChecksumInputStream(new ByteArrayInputStream(data));
+        byte[] buf = new byte[4096];
+        while (is2.read(buf, 1, buf.length - 1) >= 0) {
+            // reading in blocks
+        }
+
+        assertAll(
+                () -> assertEquals(is1.getCRC32(), is2.getCRC32()),
+                () -> assertEquals(data.length, is1.getCount()),
+                () -> assertEquals(data.length, is2.getCount())
+        );
+    }
 }
@@ -2,7 +2,10 @@ package ru.curs.celesta.score;
 
 
 import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.StringJoiner;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -17,6 +20,8 @@ public class ScoreTest {
             .add(SCORE_PATH_PREFIX).add("compositeScore").add("score").toString();
     private static final String COMPOSITE_SCORE_PATH_2 = new StringJoiner(File.separator)
             .add(SCORE_PATH_PREFIX).add("compositeScore").add("score2").toString();
+    private static final String REFERENCE_TO_BROKEN_SCHEMA_PATH = new StringJoiner(File.separator)
+            .add(SCORE_PATH_PREFIX).add("scoresWithReferences").add("referenceToBrokenSchema").toString();
     public static final String CANNOT_MODIFY_SYSTEM_GRAIN = "cannot modify system grain";
 
 
@@ -504,4 +509,52 @@ public class ScoreTest {
                 () -> assertNotNull(g.getElement(seq3Name, SequenceElement.class))
         );
     }
+
+    @Test
+    void testConcurrentParsingKeepsDependencyOrder() throws ParseException {
+        String path = COMPOSITE_SCORE_PATH_2 + File.pathSeparator + COMPOSITE_SCORE_PATH_1
+                + File.pathSeparator + TEST_SCORE_PATH;
+        Map<String, Integer> sequential = dependencyOrders(path, new ForkJoinPool(1));
+        Map<String, Integer> concurrent = dependencyOrders(path, new ForkJoinPool(4));
+
+        assertTrue(sequential.size() > 2);
+        assertEquals(sequential, concurrent);
+    }
+
+    private static Map<String, Integer> dependencyOrders(String path, ForkJoinPool pool) throws ParseException {
+        try {
+            AbstractScore s = new AbstractScore.ScoreBuilder<>(CelestaSqlTestScore.class)
+                    .path(path)
+                    .parsingPool(pool)
+                    .build();
+            Map<String, Integer> result = new HashMap<>();
+            s.getGrains().forEach((name, g) -> result.put(name, g.getDependencyOrder()));
+            return result;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testConcurrentParsingReportsErrorOfDependency() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParseException e = assertThrows(ParseException.class, () ->
+                    new AbstractScore.ScoreBuilder<>(CelestaSqlTestScore.class)
+                            .path(REFERENCE_TO_BROKEN_SCHEMA_PATH)
+                            .parsingPool(pool)
+                            .build());
+            // schema a is not parsed since schema b it depends on fails,
+            // and reports the error of schema b without the name of its own file
+            String schemaB = REFERENCE_TO_BROKEN_SCHEMA_PATH + File.separator + "schemaB.sql";
+            String schemaA = REFERENCE_TO_BROKEN_SCHEMA_PATH + File.separator + "schemaA.sql";
+            assertAll(
+                    () -> assertTrue(e.getMessage().startsWith(String.format("Error parsing '%s': ", schemaB)),
+                            e::getMessage),
+                    () -> assertFalse(e.getMessage().contains(schemaA), e::getMessage)
+            );
+        } finally {
+            pool.shutdown();
+        }
+    }
 }
@@ -0,0 +1,5 @@
+create schema b version '1.0';
+
+create table t(
+ id INT NOT NULL PRIMARY KEY
+;
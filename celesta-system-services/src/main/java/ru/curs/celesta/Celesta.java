@@ -31,6 +31,8 @@ public class Celesta implements ICelesta {
     private final LoggingManager loggingManager;
     private final PermissionManager permissionManager;
     private final ProfilingManager profiler;
+    private final RowCache rowCache = new RowCache();
+    private final TableSnapshots tableSnapshots = new TableSnapshots();
 
     private final Set<CallContext> contexts = Collections.synchronizedSet(new LinkedHashSet<CallContext>());
 
@@ -61,19 +63,37 @@ public class Celesta implements ICelesta {
         cpc.setDriverClassName(appSettings.getDbClassName());
         cpc.setLogin(appSettings.getDBLogin());
         cpc.setPassword(appSettings.getDBPassword());
+        cpc.setMinPoolSize(appSettings.getConnectionPoolMinSize());
+        cpc.setMaxPoolSize(appSettings.getConnectionPoolMaxSize());
+        cpc.setBorrowTimeout(appSettings.getConnectionPoolBorrowTimeout());
+        cpc.setValidationInterval(appSettings.getConnectionPoolValidationInterval());
+        cpc.setMaxLifetime(appSettings.getConnectionPoolMaxLifetime());
+        cpc.setStatementCacheSize(appSettings.getStatementCacheSize());
         connectionPool = ConnectionPool.create(cpc);
 
         DbAdaptorFactory dac = new DbAdaptorFactory()
                 .setDbType(appSettings.getDBType())
                 .setDdlConsumer(new JdbcDdlConsumer())
                 .setConnectionPool(connectionPool)
-                .setH2ReferentialIntegrity(appSettings.isH2ReferentialIntegrity());
+                .setH2ReferentialIntegrity(appSettings.isH2ReferentialIntegrity())
+                .setPgStatementLevelMvTriggers(appSettings.isPgStatementLevelMvTriggers());
 
         dbAdaptor = dac.createDbAdaptor();
 
-        this.loggingManager = new LoggingManager(this, dbAdaptor);
+        this.loggingManager = new LoggingManager(this, dbAdaptor,
+                appSettings.isAsyncLog() ? LoggingManager.Durability.ASYNC : LoggingManager.Durability.SYNC,
+                appSettings.getLogQueueSize(), appSettings.getLogBatchSize());
         this.permissionManager = new PermissionManager(this, dbAdaptor);
-        this.profiler = new ProfilingManager(this, dbAdaptor);
+        if (appSettings.isHistogramProfiler()) {
+            HistogramProfiler histograms = new HistogramProfiler(this, appSettings.getProfilerFlushInterval());
+            if (appSettings.isProfilerJmx()) {
+                histograms.registerMBean(Integer.toHexString(System.identityHashCode(this)));
+            }
+            this.profiler = new ProfilingManager(this, dbAdaptor, histograms);
+            this.profiler.setProfilemode(true);
+        } else {
+            this.profiler = new ProfilingManager(this, dbAdaptor);
+        }
 
         if (!appSettings.getSkipDBUpdate()) {
             System.out.printf("Celesta initialization: database upgrade...");
@@ -83,6 +103,7 @@ public class Celesta implements ICelesta {
                     .connectionPool(connectionPool)
                     .score(score)
                     .forceDdInitialize(appSettings.getForceDBInitialize())
+                    .threads(appSettings.getDbUpdateThreads())
                     .setCelesta(this)
                     .setPermissionManager(permissionManager)
                     .setLoggingManager(loggingManager)
@@ -134,6 +155,16 @@ public class Celesta implements ICelesta {
         return dbAdaptor;
     }
 
+    @Override
+    public RowCache getRowCache() {
+        return rowCache;
+    }
+
+    @Override
+    public TableSnapshots getTableSnapshots() {
+        return tableSnapshots;
+    }
+
     @Override
     public TriggerDispatcher getTriggerDispatcher() {
         return this.triggerDispatcher;
@@ -149,6 +180,8 @@ public class Celesta implements ICelesta {
      */
     @Override
     public void close() {
+        profiler.close();
+        loggingManager.close();
         connectionPool.close();
         server.ifPresent(Server::shutdown);
     }
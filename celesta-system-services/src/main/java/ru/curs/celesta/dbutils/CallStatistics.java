@@ -0,0 +1,94 @@
+package ru.curs.celesta.dbutils;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Snapshot of call statistics of a procedure collected by {@link HistogramProfiler}.
+ * <p>
+ * All durations are in microseconds. Percentiles are accurate to the width of
+ * a histogram bucket (about 3 percent of the value).
+ */
+public final class CallStatistics {
+
+    private final String procName;
+    private final long count;
+    private final long errorCount;
+    private final long totalDuration;
+    private final long p50;
+    private final long p99;
+    private final long max;
+
+    @ConstructorProperties({"procName", "count", "errorCount", "totalDuration", "p50", "p99", "max"})
+    public CallStatistics(String procName, long count, long errorCount, long totalDuration,
+                          long p50, long p99, long max) {
+        this.procName = procName;
+        this.count = count;
+        this.errorCount = errorCount;
+        this.totalDuration = totalDuration;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    /**
+     * Name of the procedure.
+     */
+    public String getProcName() {
+        return procName;
+    }
+
+    /**
+     * Number of calls.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Number of calls which have been rolled back.
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Total duration of the calls.
+     */
+    public long getTotalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * Mean duration of a call.
+     */
+    public long getMean() {
+        return count == 0 ? 0 : totalDuration / count;
+    }
+
+    /**
+     * Median duration of a call.
+     */
+    public long getP50() {
+        return p50;
+    }
+
+    /**
+     * 99th percentile of call duration.
+     */
+    public long getP99() {
+        return p99;
+    }
+
+    /**
+     * Maximal duration of a call.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: count=%d, errors=%d, mean=%d, p50=%d, p99=%d, max=%d",
+                procName, count, errorCount, getMean(), p50, p99, max);
+    }
+}
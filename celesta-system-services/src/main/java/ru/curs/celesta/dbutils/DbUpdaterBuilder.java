@@ -13,6 +13,7 @@ public class DbUpdaterBuilder {
     private ICelesta celesta;
     private PermissionManager permissionManager;
     private LoggingManager loggingManager;
+    private int threads = 1;
 
     public DbUpdaterBuilder dbAdaptor(DBAdaptor dbAdaptor) {
         this.dbAdaptor = dbAdaptor;
@@ -49,8 +50,13 @@ public class DbUpdaterBuilder {
         return this;
     }
 
+    public DbUpdaterBuilder threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
     public DbUpdaterImpl build() {
         return new DbUpdaterImpl(connectionPool, score, forceDdInitialize,
-                dbAdaptor, celesta, permissionManager, loggingManager);
+                dbAdaptor, celesta, permissionManager, loggingManager, threads);
     }
 }
@@ -22,8 +22,14 @@ public final class DbUpdaterImpl extends DbUpdater<CallContext> {
 
     public DbUpdaterImpl(ConnectionPool connectionPool, Score score, boolean forceDdInitialize, DBAdaptor dba,
                          ICelesta celesta, PermissionManager permissionManager, LoggingManager loggingManager) {
+        this(connectionPool, score, forceDdInitialize, dba, celesta, permissionManager, loggingManager, 1);
+    }
+
+    public DbUpdaterImpl(ConnectionPool connectionPool, Score score, boolean forceDdInitialize, DBAdaptor dba,
+                         ICelesta celesta, PermissionManager permissionManager, LoggingManager loggingManager,
+                         int threads) {
 
-        super(connectionPool, score, forceDdInitialize, dba);
+        super(connectionPool, score, forceDdInitialize, dba, threads);
 
         this.celesta = celesta;
     }
@@ -45,6 +51,11 @@ public final class DbUpdaterImpl extends DbUpdater<CallContext> {
         return new SystemCallContext(celesta);
     }
 
+    @Override
+    protected DbUpdaterImpl createWorker() {
+        return new DbUpdaterImpl(connectionPool, (Score) score, false, dbAdaptor, celesta, null, null);
+    }
+
     public void updateSysGrain() {
         try (CallContext context = createContext()) {
             schemaCursor = new GrainsCursor(context);
@@ -0,0 +1,308 @@
+package ru.curs.celesta.dbutils;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import ru.curs.celesta.*;
+import ru.curs.celesta.syscursors.CalllogCursor;
+
+/**
+ * Profiler which keeps call durations in memory instead of writing each call
+ * into calllog table.
+ * <p>
+ * Durations are collected per procedure name into log-linear histograms
+ * (HDR-style: each power of two is split into {@value #SUB_BUCKETS} buckets) built of
+ * atomic counters, so recording a call takes no locks and no database access.
+ * Statistics are available through {@link #getStatistics()} and, optionally, JMX.
+ * <p>
+ * When flush interval is set, a background thread writes aggregates for the
+ * elapsed interval into calllog, one row per procedure called in the interval:
+ * starttime is the beginning of the interval, duration is the mean call duration
+ * (in milliseconds, as for the calls logged one by one). Sessionid keeps its
+ * default value, since an aggregate belongs to no session; the count of calls,
+ * errors and the percentiles are available through the statistics only.
+ */
+public final class HistogramProfiler implements IProfiler, HistogramProfilerMXBean {
+
+    /**
+     * Number of buckets per power of two.
+     */
+    static final int SUB_BUCKETS = 16;
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int BUCKET_COUNT = 2 * SUB_BUCKETS + (62 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private static final Logger LOGGER = Logger.getLogger(HistogramProfiler.class.getName());
+
+    private final ICelesta celesta;
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+    private final Map<String, long[]> flushed = new HashMap<>();
+    private volatile boolean profilemode = true;
+    private long intervalStart = System.currentTimeMillis();
+    private ObjectName mbeanName;
+
+    /**
+     * Histogram of durations of a procedure.
+     */
+    static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errorCount = new LongAdder();
+        private final LongAdder totalDuration = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long duration, boolean error) {
+            long value = Math.max(duration, 0);
+            buckets.incrementAndGet(bucketIndex(value));
+            count.increment();
+            totalDuration.add(value);
+            if (error) {
+                errorCount.increment();
+            }
+            long m = max.get();
+            while (value > m && !max.compareAndSet(m, value)) {
+                m = max.get();
+            }
+        }
+
+        /**
+         * Copies bucket counters followed by the error count and the total duration.
+         */
+        long[] snapshot() {
+            long[] result = new long[BUCKET_COUNT + 2];
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                result[i] = buckets.get(i);
+            }
+            result[BUCKET_COUNT] = errorCount.sum();
+            result[BUCKET_COUNT + 1] = totalDuration.sum();
+            return result;
+        }
+
+        CallStatistics getStatistics(String procName) {
+            return statistics(procName, snapshot(), max.get());
+        }
+    }
+
+    /**
+     * Creates profiler.
+     *
+     * @param celesta  Celesta instance (used for writing aggregates into calllog)
+     * @param flushInterval  interval of writing aggregates into calllog in milliseconds,
+     *                       0 means that calllog is not written
+     */
+    public HistogramProfiler(ICelesta celesta, long flushInterval) {
+        this.celesta = celesta;
+        if (flushInterval > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "celesta-profiler-flush");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(this::flushSafely, flushInterval, flushInterval,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    @Override
+    public void logCall(CallContext context) {
+        if (!profilemode || NO_LOG.equals(context.getProcName())) {
+            return;
+        }
+        long duration = context.getDurationNs() / 1000;
+        histograms.computeIfAbsent(context.getProcName(), k -> new Histogram())
+                .record(duration, context.isRolledBack());
+    }
+
+    /**
+     * Whether calls are being recorded.
+     */
+    public boolean isProfilemode() {
+        return profilemode;
+    }
+
+    /**
+     * Switches recording of calls on and off. Collected statistics are retained.
+     *
+     * @param profilemode режим профилирования.
+     */
+    public void setProfilemode(boolean profilemode) {
+        this.profilemode = profilemode;
+    }
+
+    /**
+     * Returns statistics of a procedure or null if it has not been called.
+     *
+     * @param procName  procedure name
+     */
+    public CallStatistics getStatistics(String procName) {
+        Histogram h = histograms.get(procName);
+        return h == null ? null : h.getStatistics(procName);
+    }
+
+    @Override
+    public Map<String, CallStatistics> getStatistics() {
+        Map<String, CallStatistics> result = new TreeMap<>();
+        histograms.forEach((procName, h) -> result.put(procName, h.getStatistics(procName)));
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override
+    public long getTotalCount() {
+        long result = 0;
+        for (Histogram h : histograms.values()) {
+            result += h.count.sum();
+        }
+        return result;
+    }
+
+    /**
+     * Registers the profiler in the platform MBean server.
+     *
+     * @param name  value of the name key of the object name
+     */
+    public synchronized void registerMBean(String name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = ObjectName.getInstance(
+                    "ru.curs.celesta:type=Profiler,name=" + ObjectName.quote(name));
+            server.registerMBean(this, objectName);
+            mbeanName = objectName;
+        } catch (JMException e) {
+            throw new CelestaException("Could not register profiler MBean: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * Writes aggregates of calls made since the previous flush into calllog.
+     */
+    public synchronized void flush() {
+        long now = System.currentTimeMillis();
+        Date start = new Date(intervalStart);
+        try (CallContext sysContext = new SystemCallContext(celesta)) {
+            CalllogCursor clc = null;
+            for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+                long[] current = e.getValue().snapshot();
+                long[] previous = flushed.put(e.getKey(), current);
+                long[] delta = current.clone();
+                if (previous != null) {
+                    for (int i = 0; i < delta.length; i++) {
+                        delta[i] -= previous[i];
+                    }
+                }
+                CallStatistics s = statistics(e.getKey(), delta, Long.MAX_VALUE);
+                if (s.getCount() == 0) {
+                    continue;
+                }
+                if (clc == null) {
+                    clc = new CalllogCursor(sysContext);
+                }
+                clc.init();
+                clc.setProcname(e.getKey());
+                clc.setUserid(sysContext.getUserId());
+                clc.setStarttime(start);
+                clc.setDuration((int) Math.min(Math.round(s.getMean() / MICROS_PER_MILLI), Integer.MAX_VALUE));
+                clc.insert();
+            }
+        }
+        intervalStart = now;
+    }
+
+    /**
+     * Stops the background flush (writing the aggregates of the last interval)
+     * and unregisters the MBean.
+     */
+    public synchronized void close() {
+        if (flusher != null && !flusher.isShutdown()) {
+            flusher.shutdown();
+            flushSafely();
+        }
+        if (mbeanName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+            } catch (JMException e) {
+                // already unregistered
+            }
+            mbeanName = null;
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Could not write profiler statistics", e);
+        }
+    }
+
+    static int bucketIndex(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * The highest value which falls into the bucket.
+     */
+    static long bucketUpperBound(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    private static CallStatistics statistics(String procName, long[] s, long max) {
+        long count = 0;
+        int highest = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += s[i];
+            if (s[i] > 0) {
+                highest = i;
+            }
+        }
+        long upper = Math.min(max, bucketUpperBound(highest));
+        return new CallStatistics(procName, count, s[BUCKET_COUNT], s[BUCKET_COUNT + 1],
+                Math.min(upper, percentile(s, count, 0.5)),
+                Math.min(upper, percentile(s, count, 0.99)),
+                count == 0 ? 0 : upper);
+    }
+
+    private static long percentile(long[] s, long count, double p) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * p));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += s[i];
+            if (seen >= rank) {
+                return bucketUpperBound(i);
+            }
+        }
+        return bucketUpperBound(BUCKET_COUNT - 1);
+    }
+}
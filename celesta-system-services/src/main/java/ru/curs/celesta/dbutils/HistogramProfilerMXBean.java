@@ -0,0 +1,19 @@
+package ru.curs.celesta.dbutils;
+
+import java.util.Map;
+
+/**
+ * JMX interface of {@link HistogramProfiler}.
+ */
+public interface HistogramProfilerMXBean {
+
+    /**
+     * Call statistics by procedure names, collected since the profiler start.
+     */
+    Map<String, CallStatistics> getStatistics();
+
+    /**
+     * Total number of profiled calls.
+     */
+    long getTotalCount();
+}
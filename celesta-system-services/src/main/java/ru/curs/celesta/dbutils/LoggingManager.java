@@ -1,5 +1,14 @@
 package ru.curs.celesta.dbutils;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 import ru.curs.celesta.*;
 import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
 import ru.curs.celesta.score.Table;
@@ -9,8 +18,44 @@ import ru.curs.celesta.syscursors.LogsetupCursor;
 /**
  * Менеджер логирования. Записывает в лог изменённые значения (если это
  * необходимо).
+ * <p>
+ * In {@link Durability#ASYNC} mode records are put into a bounded queue and
+ * written by a background thread in JDBC batches.
  */
 public final class LoggingManager implements ILoggingManager {
+
+    /**
+     * Durability of log records.
+     */
+    public enum Durability {
+        /**
+         * A record is written and committed in its own transaction before
+         * the logged operation returns.
+         */
+        SYNC,
+        /**
+         * Records are queued and written by a background thread in batches.
+         * When the queue is full the logged operation waits for free space,
+         * the queue is drained on {@link LoggingManager#close()}. Records which
+         * are still in the queue are lost if the process crashes.
+         */
+        ASYNC
+    }
+
+    /**
+     * Default capacity of the queue of asynchronous mode.
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+    /**
+     * Default size of a batch of asynchronous mode.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private static final Logger LOGGER = Logger.getLogger(LoggingManager.class.getName());
+
+    private static final int POLL_TIMEOUT = 1000;
+    private static final int CLOSE_TIMEOUT = 30000;
+
     /**
      * Размер кэша (в записях). ДОЛЖЕН БЫТЬ СТЕПЕНЬЮ ДВОЙКИ!! Этот кэш может
      * быть меньше кэша системы распределения прав доступа, т. к. хранит записи
@@ -27,6 +72,11 @@ public final class LoggingManager implements ILoggingManager {
 
     private CacheEntry[] cache = new CacheEntry[CACHE_SIZE];
 
+    private final BlockingQueue<LogRecord> queue;
+    private final int batchSize;
+    private final Thread writer;
+    private volatile boolean closed;
+
     /**
      * Запись во внутреннем кэше.
      */
@@ -60,12 +110,84 @@ public final class LoggingManager implements ILoggingManager {
 
     }
 
+    /**
+     * Запись лога, снятая с курсора в момент изменения данных.
+     */
+    private static final class LogRecord {
+        private final Date entryTime = new Date();
+        private final String userId;
+        private final String grainId;
+        private final String tableName;
+        private final Action action;
+        private final Object[] keyValues;
+        private final Object[] newValues;
+        private final Object[] oldValues;
+
+        LogRecord(Cursor c, Action a) {
+            userId = c.callContext().getUserId();
+            grainId = c.meta().getGrain().getName();
+            tableName = c._objectName();
+            action = a;
+            keyValues = c._currentKeyValues();
+            newValues = a == Action.DELETE ? null : c._currentValues();
+            oldValues = a == Action.INSERT ? null : c.getXRec()._currentValues();
+        }
+    }
+
     public LoggingManager(ICelesta celesta, DBAdaptor dbAdaptor) {
+        this(celesta, dbAdaptor, Durability.SYNC, DEFAULT_QUEUE_SIZE, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates logging manager.
+     *
+     * @param durability
+     *            durability of log records
+     * @param queueSize
+     *            capacity of the queue of asynchronous mode
+     * @param batchSize
+     *            maximal count of records written in one batch in asynchronous mode
+     */
+    public LoggingManager(ICelesta celesta, DBAdaptor dbAdaptor, Durability durability,
+                          int queueSize, int batchSize) {
         this.celesta = celesta;
         this.dbAdaptor = dbAdaptor;
+        this.batchSize = batchSize;
+        if (durability == Durability.ASYNC) {
+            queue = new ArrayBlockingQueue<>(queueSize);
+            writer = new Thread(this::writeQueue, "celesta-log-writer");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            queue = null;
+            writer = null;
+        }
     }
 
     boolean isLoggingNeeded(CallContext sysContext, Table t, Action a) {
+        CacheEntry ce = getCacheEntry(t);
+        if (ce == null) {
+            ce = refreshLogging(sysContext, t);
+            cache[CacheEntry.hash(t) & (CACHE_SIZE - 1)] = ce;
+        }
+        return ce.isLoggingNeeded(a);
+    }
+
+    /**
+     * Checks whether logging is needed opening a system call context
+     * only if the cache has no actual entry for the table.
+     */
+    private boolean isLoggingNeeded(Table t, Action a) {
+        CacheEntry ce = getCacheEntry(t);
+        if (ce != null) {
+            return ce.isLoggingNeeded(a);
+        }
+        try (CallContext sysContext = new SystemCallContext(celesta, "log")) {
+            return isLoggingNeeded(sysContext, t, a);
+        }
+    }
+
+    private CacheEntry getCacheEntry(Table t) {
         // Вычисляем местоположение данных в кэше.
         int index = CacheEntry.hash(t) & (CACHE_SIZE - 1);
 
@@ -73,10 +195,9 @@ public final class LoggingManager implements ILoggingManager {
         // (в противном случае -- обновляем кэш).
         CacheEntry ce = cache[index];
         if (ce == null || ce.isExpired() || ce.table != t) {
-            ce = refreshLogging(sysContext, t);
-            cache[index] = ce;
+            return null;
         }
-        return ce.isLoggingNeeded(a);
+        return ce;
     }
 
     private CacheEntry refreshLogging(CallContext sysContext, Table t) {
@@ -100,21 +221,87 @@ public final class LoggingManager implements ILoggingManager {
                 || "tables".equals(c.meta().getName())))
             return;
 
-        try (CallContext sysContext = new SystemCallContext(celesta, "log")) {
-            if (!isLoggingNeeded(sysContext, c.meta(), a))
+        if (!isLoggingNeeded(c.meta(), a))
+            return;
+
+        LogRecord record = new LogRecord(c, a);
+        if (queue != null && !closed) {
+            try {
+                queue.put(record);
                 return;
-            writeToLog(c, a, sysContext);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // the record is written synchronously
+            }
+        }
+        try (CallContext sysContext = new SystemCallContext(celesta, "log")) {
+            LogCursor log = new LogCursor(sysContext);
+            writeToLog(log, record, false);
+        }
+    }
+
+    /**
+     * Stops the background writer of asynchronous mode, writing all the queued records.
+     * Records logged afterwards are written synchronously.
+     */
+    public void close() {
+        if (writer == null || closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writer.join(CLOSE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // records queued while the writer was stopping
+        LogRecord record;
+        while ((record = queue.poll()) != null) {
+            try (CallContext sysContext = new SystemCallContext(celesta, "log")) {
+                writeToLog(new LogCursor(sysContext), record, true);
+            }
         }
     }
 
-    private void writeToLog(Cursor c, Action a, CallContext sysContext) {
-        LogCursor log = new LogCursor(sysContext);
+    private void writeQueue() {
+        List<LogRecord> batch = new ArrayList<>(batchSize);
+        while (!(closed && queue.isEmpty())) {
+            try {
+                LogRecord first = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                // the queue is drained before exit
+                closed = true;
+                continue;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            try (CallContext sysContext = new SystemCallContext(celesta, "log")) {
+                LogCursor log = new LogCursor(sysContext);
+                log.beginBatch(batchSize);
+                for (LogRecord record : batch) {
+                    writeToLog(log, record, true);
+                }
+                log.endBatch();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, String.format("Could not write %d log record(s)", batch.size()), e);
+            }
+            batch.clear();
+        }
+    }
+
+    private void writeToLog(LogCursor log, LogRecord record, boolean withEntryTime) {
         log.init();
-        log.setUserid(c.callContext().getUserId());
-        log.setGrainid(c.meta().getGrain().getName());
-        log.setTablename(c._objectName());
-        log.setAction_type(a.shortId());
-        Object[] o = c._currentKeyValues();
+        if (withEntryTime) {
+            log.setEntry_time(record.entryTime);
+        }
+        log.setUserid(record.userId);
+        log.setGrainid(record.grainId);
+        log.setTablename(record.tableName);
+        log.setAction_type(record.action.shortId());
+        Object[] o = record.keyValues;
 
         String value;
         int len;
@@ -135,23 +322,13 @@ public final class LoggingManager implements ILoggingManager {
         }
 
         len = log.getMaxStrLen("newvalues");
-        switch (a) {
-            case INSERT:
-                value = c.asCSVLine();
-                log.setNewvalues(trimValue(value, len));
-                break;
-            case MODIFY:
-                value = c.asCSVLine();
-                log.setNewvalues(trimValue(value, len));
-
-                value = c.getXRec().asCSVLine();
-                log.setOldvalues(trimValue(value, len));
-                break;
-            case DELETE:
-                value = c.getXRec().asCSVLine();
-                log.setOldvalues(trimValue(value, len));
-                break;
-            default:
+        if (record.newValues != null) {
+            value = BasicCursor.asCSVLine(record.newValues);
+            log.setNewvalues(trimValue(value, len));
+        }
+        if (record.oldValues != null) {
+            value = BasicCursor.asCSVLine(record.oldValues);
+            log.setOldvalues(trimValue(value, len));
         }
         log.insert();
     }
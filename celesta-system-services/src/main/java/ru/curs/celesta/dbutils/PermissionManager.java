@@ -1,7 +1,21 @@
 package ru.curs.celesta.dbutils;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import ru.curs.celesta.*;
 import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
@@ -14,42 +28,86 @@ import ru.curs.celesta.syscursors.UserrolesCursor;
  * операции с таблицей. Права определяются по содержимому системных таблиц
  * распределения прав доступа.
  * <p>
- * Для оптимизации работы объект содержит кэш.
+ * Для оптимизации работы объект содержит кэш: потокобезопасное отображение
+ * пользователей на их роли и пермиссии по таблицам. Запись старше
+ * {@link #CACHE_ENTRY_REFRESH_TIME} продолжает использоваться, пока она
+ * перезагружается в фоне; просроченная запись перезагружается вызывающим потоком,
+ * причём одновременные вызовы для того же пользователя и той же таблицы ожидают
+ * одну и ту же загрузку. Изменения <code>permissions</code> и <code>userroles</code>,
+ * сделанные через курсоры, сбрасывают кэш сразу и ещё раз по окончании изменяющей
+ * транзакции, чтобы не сохранять данные, прочитанные другими контекстами до коммита.
  */
 public final class PermissionManager implements IPermissionManager {
     /**
-     * Размер кэша (в записях). ДОЛЖЕН БЫТЬ СТЕПЕНЬЮ ДВОЙКИ!!
+     * Максимальное количество пользователей в кэше.
      */
     private static final int CACHE_SIZE = 8192;
 
-    private static final int ROLE_CACHE_SIZE = 2048;
     /**
      * "Срок годности" записи кэша (в миллисекундах).
      */
     private static final int CACHE_ENTRY_SHELF_LIFE = 20000;
 
+    /**
+     * Age of a cache entry (in milliseconds) after which it is refreshed in background.
+     */
+    private static final int CACHE_ENTRY_REFRESH_TIME = 15000;
+
+    /**
+     * Idle time (in milliseconds) after which the thread of the background refresher stops.
+     */
+    private static final long REFRESHER_KEEP_ALIVE = 60000;
+
     private static final int FULL_RIGHTS = Action.READ.getMask()
             | Action.INSERT.getMask() | Action.MODIFY.getMask()
             | Action.DELETE.getMask();
 
     private final ICelesta celesta;
     private final DBAdaptor dbAdaptor;
-    private PermissionCacheEntry[] cache = new PermissionCacheEntry[CACHE_SIZE];
-    private RoleCacheEntry[] rolesCache = new RoleCacheEntry[ROLE_CACHE_SIZE];
+    private final ConcurrentHashMap<String, UserCacheEntry> cache = new ConcurrentHashMap<>();
+    /**
+     * Incremented on every invalidation, so that the data loaded before it are not cached.
+     */
+    private final AtomicLong generation = new AtomicLong();
+    /**
+     * Users whose roles or permissions are changed in the call contexts with open transactions,
+     * {@code null} stands for all the users.
+     */
+    private final Map<CallContext, Set<String>> pendingInvalidations = new HashMap<>();
+    /**
+     * Background refresher shared by all the instances, its thread stops when idle.
+     */
+    private static final ThreadPoolExecutor REFRESHER = new ThreadPoolExecutor(
+            1, 1, REFRESHER_KEEP_ALIVE, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "celesta-permissions-refresh");
+                t.setDaemon(true);
+                return t;
+            });
+
+    static {
+        REFRESHER.allowCoreThreadTimeOut(true);
+    }
 
     /**
      * Базовый класс элемента кэша менеджера пермиссий.
      */
     private static class BaseCacheEntry {
-        private final long expirationTime;
+        private final long loadTime;
+
+        BaseCacheEntry(boolean valid) {
+            loadTime = valid ? System.currentTimeMillis() : 0;
+        }
 
-        BaseCacheEntry() {
-            expirationTime = System.currentTimeMillis()
-                    + CACHE_ENTRY_SHELF_LIFE;
+        public boolean isExpired(long now) {
+            return now - loadTime > CACHE_ENTRY_SHELF_LIFE;
         }
 
-        public boolean isExpired() {
-            return System.currentTimeMillis() > expirationTime;
+        public boolean needsRefresh(long now) {
+            return now - loadTime > CACHE_ENTRY_REFRESH_TIME;
+        }
+
+        public boolean isOlderThan(BaseCacheEntry other) {
+            return loadTime < other.loadTime;
         }
     }
 
@@ -57,25 +115,14 @@ public final class PermissionManager implements IPermissionManager {
      * Запись во внутреннем кэше.
      */
     private static class PermissionCacheEntry extends BaseCacheEntry {
-        private final String userName;
-        private final GrainElement table;
         private final int permissionMask;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
 
-        public PermissionCacheEntry(String userName, GrainElement table,
-                                    int permissionMask) {
-            super();
-            if (userName == null)
-                throw new IllegalArgumentException();
-            this.userName = userName;
-            this.table = table;
+        PermissionCacheEntry(int permissionMask, boolean valid) {
+            super(valid);
             this.permissionMask = permissionMask;
         }
 
-        public static int hash(String userName, GrainElement table) {
-            return (userName + '|' + table.getGrain().getName() + '|' + table
-                    .getName()).hashCode();
-        }
-
         public boolean isActionPermitted(Action a) {
             return (permissionMask & a.getMask()) != 0;
         }
@@ -86,11 +133,29 @@ public final class PermissionManager implements IPermissionManager {
      * Запись в кэше ролей пользователя.
      */
     private static class RoleCacheEntry extends BaseCacheEntry {
+        private final List<String> roles;
+
+        RoleCacheEntry(List<String> roles, boolean valid) {
+            super(valid);
+            this.roles = roles;
+        }
+    }
+
+    /**
+     * Роли и пермиссии пользователя.
+     */
+    private static class UserCacheEntry {
         private final String userId;
-        private final List<String> roles = new ArrayList<>();
+        private final ConcurrentHashMap<GrainElement, PermissionCacheEntry> permissions = new ConcurrentHashMap<>();
+        /**
+         * Permissions being loaded by the callers, joined by the concurrent callers.
+         */
+        private final ConcurrentHashMap<GrainElement, CompletableFuture<PermissionCacheEntry>> loads =
+                new ConcurrentHashMap<>();
+        private volatile RoleCacheEntry roles;
+        private volatile long accessTime;
 
-        RoleCacheEntry(String userId) {
-            super();
+        UserCacheEntry(String userId) {
             this.userId = userId;
         }
     }
@@ -99,6 +164,15 @@ public final class PermissionManager implements IPermissionManager {
     public PermissionManager(ICelesta celesta, DBAdaptor dbAdaptor) {
         this.celesta = celesta;
         this.dbAdaptor = dbAdaptor;
+
+        // a role's permission affects all the users of the role
+        PermissionsCursor.onPostInsert(celesta, c -> invalidate(c.callContext(), null));
+        PermissionsCursor.onPostUpdate(celesta, c -> invalidate(c.callContext(), null));
+        PermissionsCursor.onPostDelete(celesta, c -> invalidate(c.callContext(), null));
+        UserrolesCursor.onPostInsert(celesta, c -> invalidate(c.callContext(), c.getUserid()));
+        // update may move a role from one user to another
+        UserrolesCursor.onPostUpdate(celesta, c -> invalidate(c.callContext(), null));
+        UserrolesCursor.onPostDelete(celesta, c -> invalidate(c.callContext(), c.getUserid()));
     }
 
     public boolean isActionAllowed(CallContext c, GrainElement t, Action a) {
@@ -107,39 +181,158 @@ public final class PermissionManager implements IPermissionManager {
         if (c instanceof SystemCallContext)
             return true;
 
-        // Вычисляем местоположение данных в кэше.
-        int index = PermissionCacheEntry.hash(c.getUserId(), t)
-                & (CACHE_SIZE - 1);
+        UserCacheEntry uce = getUce(c.getUserId());
+        long now = System.currentTimeMillis();
+        uce.accessTime = now;
 
         // Прежде всего смотрим, нет ли в кэше подходящей непросроченной записи
         // (в противном случае -- обновляем кэш).
-        PermissionCacheEntry ce = cache[index];
-        if (ce == null || ce.isExpired() || ce.table != t
-                || !ce.userName.equals(c.getUserId())) {
-            ce = refreshPermissions(c, t);
-            cache[index] = ce;
+        PermissionCacheEntry ce = uce.permissions.get(t);
+        if (ce == null || ce.isExpired(now)) {
+            ce = loadPermissions(uce, t);
+        } else if (ce.needsRefresh(now)) {
+            refreshInBackground(uce, t, ce);
         }
         return ce.isActionPermitted(a);
     }
 
-    private RoleCacheEntry getRce(String userID, CallContext sysContext) {
-        int index = userID.hashCode() & (ROLE_CACHE_SIZE - 1);
-        RoleCacheEntry rce = rolesCache[index];
-        if (rce == null || rce.isExpired() || !rce.userId.equals(userID)) {
-            rce = new RoleCacheEntry(userID);
+    /**
+     * Drops all the cached roles and permissions.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.clear();
+    }
+
+    private void invalidateUser(String userId) {
+        generation.incrementAndGet();
+        cache.remove(userId);
+    }
+
+    /**
+     * Invalidates the cache for the user ({@code null} for all the users) now and
+     * when the transaction of the context ends: until the commit other contexts
+     * read and cache the previous roles and permissions.
+     */
+    private void invalidate(CallContext context, String userId) {
+        if (userId == null) {
+            invalidateAll();
+        } else {
+            invalidateUser(userId);
+        }
+        synchronized (pendingInvalidations) {
+            Set<String> users = pendingInvalidations.get(context);
+            if (users == null) {
+                users = new HashSet<>();
+                pendingInvalidations.put(context, users);
+                context.addTransactionEndListener(() -> endTransaction(context));
+            }
+            users.add(userId);
+        }
+    }
+
+    private void endTransaction(CallContext context) {
+        Set<String> users;
+        synchronized (pendingInvalidations) {
+            users = pendingInvalidations.remove(context);
+        }
+        if (users.contains(null)) {
+            invalidateAll();
+        } else {
+            users.forEach(this::invalidateUser);
+        }
+    }
+
+    private UserCacheEntry getUce(String userId) {
+        UserCacheEntry uce = cache.get(userId);
+        if (uce == null) {
+            if (cache.size() >= CACHE_SIZE) {
+                evictIdleUsers();
+            }
+            uce = cache.computeIfAbsent(userId, UserCacheEntry::new);
+        }
+        return uce;
+    }
+
+    private void evictIdleUsers() {
+        long now = System.currentTimeMillis();
+        cache.values().removeIf(uce -> now - uce.accessTime > CACHE_ENTRY_SHELF_LIFE);
+        if (cache.size() >= CACHE_SIZE) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Loads the permissions of the user for the element, or waits for the load
+     * started by a concurrent caller. The query runs outside of the maps, so that
+     * it does not block the callers for other elements; the entry loaded later
+     * by the background refresher is kept.
+     */
+    private PermissionCacheEntry loadPermissions(UserCacheEntry uce, GrainElement t) {
+        CompletableFuture<PermissionCacheEntry> load = new CompletableFuture<>();
+        CompletableFuture<PermissionCacheEntry> inFlight = uce.loads.putIfAbsent(t, load);
+        if (inFlight != null) {
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            PermissionCacheEntry ce = refreshPermissions(uce, t);
+            uce.permissions.merge(t, ce, (old, loaded) -> old.isOlderThan(loaded) ? loaded : old);
+            load.complete(ce);
+            return ce;
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            uce.loads.remove(t, load);
+        }
+    }
+
+    private void refreshInBackground(UserCacheEntry uce, GrainElement t, PermissionCacheEntry stale) {
+        if (!stale.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            REFRESHER.execute(() -> {
+                try {
+                    uce.permissions.replace(t, stale, refreshPermissions(uce, t));
+                } catch (CelestaException e) {
+                    // e.g. Celesta is closed: the stale entry is reloaded by a caller when it expires
+                    return;
+                } finally {
+                    stale.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            stale.refreshing.set(false);
+        }
+    }
+
+    private RoleCacheEntry getRce(UserCacheEntry uce, CallContext sysContext, long gen) {
+        RoleCacheEntry rce = uce.roles;
+        if (rce == null || rce.needsRefresh(System.currentTimeMillis())) {
+            List<String> roles = new ArrayList<>();
             UserrolesCursor userRoles = new UserrolesCursor(sysContext);
-            userRoles.setRange("userid", userID);
+            userRoles.setRange("userid", uce.userId);
             while (userRoles.nextInSet()) {
-                rce.roles.add(userRoles.getRoleid());
+                roles.add(userRoles.getRoleid());
             }
-            rolesCache[index] = rce;
+            rce = new RoleCacheEntry(Collections.unmodifiableList(roles), gen == generation.get());
+            uce.roles = rce;
         }
         return rce;
     }
 
-    private PermissionCacheEntry refreshPermissions(CallContext c, GrainElement t) {
+    private PermissionCacheEntry refreshPermissions(UserCacheEntry uce, GrainElement t) {
+        final long gen = generation.get();
         try (CallContext sysContext = new SystemCallContext(celesta, "refreshPermissions")) {
-            RoleCacheEntry rce = getRce(c.getUserId(), sysContext);
+            RoleCacheEntry rce = getRce(uce, sysContext, gen);
             PermissionsCursor permissions = new PermissionsCursor(sysContext);
             int permissionsMask = 0;
             for (String roleId : rce.roles) {
@@ -165,7 +358,8 @@ public final class PermissionManager implements IPermissionManager {
                             .getMask() : 0;
                 }
             }
-            return new PermissionCacheEntry(c.getUserId(), t, permissionsMask);
+            // the data read before an invalidation are used once, but not cached
+            return new PermissionCacheEntry(permissionsMask, gen == generation.get());
         }
 
     }
@@ -4,19 +4,37 @@ import ru.curs.celesta.*;
 import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
 import ru.curs.celesta.syscursors.CalllogCursor;
 
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * Менеджер профилирования вызовов.
+ * <p>
+ * By default every call is written into calllog table. If a {@link HistogramProfiler}
+ * is given, calls are passed to it instead.
  */
 public final class ProfilingManager implements IProfiler {
 
     private final Celesta celesta;
     private final DBAdaptor dbAdaptor;
+    private final HistogramProfiler histograms;
     private boolean profilemode = false;
 
 
     public ProfilingManager(Celesta celesta, DBAdaptor dbAdaptor) {
+        this(celesta, dbAdaptor, null);
+    }
+
+    /**
+     * Creates profiling manager.
+     *
+     * @param histograms  profiler collecting calls in memory, null to write
+     *                    each call into calllog
+     */
+    public ProfilingManager(Celesta celesta, DBAdaptor dbAdaptor, HistogramProfiler histograms) {
         this.celesta = celesta;
         this.dbAdaptor = dbAdaptor;
+        this.histograms = histograms;
     }
 
     /**
@@ -26,6 +44,10 @@ public final class ProfilingManager implements IProfiler {
      */
     public void logCall(CallContext context) {
         if (this.profilemode && !NO_LOG.equals(context.getProcName())) {
+            if (histograms != null) {
+                histograms.logCall(context);
+                return;
+            }
             try (CallContext sysContext = new SystemCallContext(celesta)) {
                 CalllogCursor clc = new CalllogCursor(sysContext);
                 clc.setProcname(context.getProcName());
@@ -54,4 +76,27 @@ public final class ProfilingManager implements IProfiler {
     public void setProfilemode(boolean profilemode) {
         this.profilemode = profilemode;
     }
+
+    /**
+     * Returns in-memory profiler, or null if calls are written into calllog.
+     */
+    public HistogramProfiler getHistogramProfiler() {
+        return histograms;
+    }
+
+    /**
+     * Call statistics by procedure names (empty if calls are written into calllog).
+     */
+    public Map<String, CallStatistics> getStatistics() {
+        return histograms == null ? Collections.emptyMap() : histograms.getStatistics();
+    }
+
+    /**
+     * Stops the in-memory profiler, if any.
+     */
+    public void close() {
+        if (histograms != null) {
+            histograms.close();
+        }
+    }
 }
@@ -38,6 +38,25 @@ CREATE TABLE forTriggers(
   val INT
 );
 
+/**{"cache": 2}*/
+CREATE TABLE cachedDictionary(
+  id INT NOT NULL PRIMARY KEY,
+  name VARCHAR(30)
+);
+
+/**{"cache": {"size": 2, "ttl": 1}}*/
+CREATE TABLE expiringDictionary(
+  id INT NOT NULL PRIMARY KEY,
+  name VARCHAR(30)
+);
+
+/**{"snapshot": 0}*/
+CREATE TABLE snapshotDictionary(
+  id INT NOT NULL PRIMARY KEY,
+  name VARCHAR(30),
+  weight INT
+) WITH READ ONLY;
+
 /**This is to test view creation from neighbouring grain*/
 create view tCopyField AS
   select id from testTable.tCopyFields;
\ No newline at end of file
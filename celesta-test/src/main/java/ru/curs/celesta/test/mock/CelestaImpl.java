@@ -5,6 +5,8 @@ import ru.curs.celesta.ICelesta;
 import ru.curs.celesta.dbutils.IProfiler;
 import ru.curs.celesta.dbutils.LoggingManager;
 import ru.curs.celesta.dbutils.PermissionManager;
+import ru.curs.celesta.dbutils.RowCache;
+import ru.curs.celesta.dbutils.TableSnapshots;
 import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
 import ru.curs.celesta.event.TriggerDispatcher;
 import ru.curs.celesta.score.Score;
@@ -20,6 +22,8 @@ public class CelestaImpl implements ICelesta {
     private final Score score;
     private final PermissionManager permissionManager;
     private final LoggingManager loggingManager;
+    private final RowCache rowCache = new RowCache();
+    private final TableSnapshots tableSnapshots = new TableSnapshots();
 
     public CelestaImpl(DBAdaptor dbAdaptor, ConnectionPool connectionPool, Score score) {
         this.dbAdaptor = dbAdaptor;
@@ -69,6 +73,16 @@ public class CelestaImpl implements ICelesta {
         return dbAdaptor;
     }
 
+    @Override
+    public RowCache getRowCache() {
+        return rowCache;
+    }
+
+    @Override
+    public TableSnapshots getTableSnapshots() {
+        return tableSnapshots;
+    }
+
     @Override
     public void close() throws Exception {
         connectionPool.close();
@@ -3,10 +3,13 @@ package ru.curs.celesta;
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
 import org.junit.jupiter.api.AfterEach;
@@ -115,4 +118,157 @@ public class ConnectionPoolTest {
         );
     }
 
+    @Test
+    void testBoundedPoolWaitsForConnection() throws Exception {
+        ConnectionPoolConfiguration bounded = new ConnectionPoolConfiguration();
+        bounded.setJdbcConnectionUrl(cpc.getJdbcConnectionUrl());
+        bounded.setDriverClassName(cpc.getDriverClassName());
+        bounded.setLogin("");
+        bounded.setMaxPoolSize(2);
+        bounded.setBorrowTimeout(100);
+
+        try (ConnectionPool pool = ConnectionPool.create(bounded)) {
+            Connection conn1 = pool.get();
+            Connection conn2 = pool.get();
+            assertThrows(CelestaException.class, pool::get);
+
+            conn1.close();
+            // repeated close must not free one more place in the pool
+            conn1.close();
+            Connection conn3 = pool.get();
+            assertThrows(CelestaException.class, pool::get);
+
+            conn2.close();
+            conn3.close();
+            assertAll(
+                    () -> assertEquals(0, pool.getActiveCount()),
+                    () -> assertEquals(2, pool.getTotalCount()),
+                    () -> assertEquals(3, pool.getBorrowCount()),
+                    () -> assertEquals(2, pool.getBorrowTimeoutCount()),
+                    () -> assertEquals(2, pool.getCreatedCount())
+            );
+        }
+    }
+
+    @Test
+    void testExpiredConnectionIsRetired() throws Exception {
+        ConnectionPoolConfiguration shortLived = new ConnectionPoolConfiguration();
+        shortLived.setJdbcConnectionUrl(cpc.getJdbcConnectionUrl());
+        shortLived.setDriverClassName(cpc.getDriverClassName());
+        shortLived.setLogin("");
+        shortLived.setMaxLifetime(1);
+
+        try (ConnectionPool pool = ConnectionPool.create(shortLived)) {
+            Connection conn1 = pool.get();
+            Thread.sleep(5);
+            conn1.close();
+            assertAll(
+                    () -> assertTrue(conn1.isClosed()),
+                    () -> assertEquals(0, pool.poolSize()),
+                    () -> assertEquals(1, pool.getEvictedCount())
+            );
+        }
+    }
+
+    @Test
+    void testPreparedStatementsAreReused() throws Exception {
+        ConnectionPoolConfiguration cached = new ConnectionPoolConfiguration();
+        cached.setJdbcConnectionUrl(cpc.getJdbcConnectionUrl());
+        cached.setDriverClassName(cpc.getDriverClassName());
+        cached.setLogin("");
+        cached.setStatementCacheSize(1);
+
+        try (ConnectionPool pool = ConnectionPool.create(cached)) {
+            Connection conn = pool.get();
+            PreparedStatement stmt1 = conn.prepareStatement("select 1");
+            // the statement is in use, so another one is prepared
+            PreparedStatement stmt2 = conn.prepareStatement("select 1");
+            PreparedStatement physical1 = stmt1.unwrap(PreparedStatement.class);
+            PreparedStatement physical2 = stmt2.unwrap(PreparedStatement.class);
+            assertNotSame(physical1, physical2);
+            stmt1.close();
+            assertTrue(stmt1.isClosed());
+            stmt2.close();
+
+            PreparedStatement stmt3 = conn.prepareStatement("select 1");
+            assertFalse(stmt3.isClosed());
+            PreparedStatement physical3 = stmt3.unwrap(PreparedStatement.class);
+            assertTrue(physical3 == physical1 || physical3 == physical2);
+            stmt3.close();
+            conn.close();
+
+            // statements survive returning of the connection to the pool
+            conn = pool.get();
+            conn.prepareStatement("select 1").close();
+            conn.prepareStatement("select 2").close();
+            conn.close();
+
+            assertAll(
+                    () -> assertEquals(2, pool.getStatementCacheHitCount()),
+                    () -> assertEquals(3, pool.getStatementCacheMissCount())
+            );
+        }
+    }
+
+    @Test
+    void testReusedPreparedStatementHasDefaultSettings() throws Exception {
+        ConnectionPoolConfiguration cached = new ConnectionPoolConfiguration();
+        cached.setJdbcConnectionUrl(cpc.getJdbcConnectionUrl());
+        cached.setDriverClassName(cpc.getDriverClassName());
+        cached.setLogin("");
+        cached.setStatementCacheSize(1);
+
+        try (ConnectionPool pool = ConnectionPool.create(cached)) {
+            Connection conn = pool.get();
+            PreparedStatement stmt = conn.prepareStatement("select 1");
+            PreparedStatement physical = stmt.unwrap(PreparedStatement.class);
+            int fetchSize = stmt.getFetchSize();
+            int maxRows = stmt.getMaxRows();
+            int queryTimeout = stmt.getQueryTimeout();
+            stmt.setFetchSize(fetchSize + 10);
+            stmt.setMaxRows(maxRows + 10);
+            stmt.setQueryTimeout(queryTimeout + 10);
+            stmt.close();
+
+            PreparedStatement reused = conn.prepareStatement("select 1");
+            assertSame(physical, reused.unwrap(PreparedStatement.class));
+            assertAll(
+                    () -> assertEquals(fetchSize, reused.getFetchSize()),
+                    () -> assertEquals(maxRows, reused.getMaxRows()),
+                    () -> assertEquals(queryTimeout, reused.getQueryTimeout())
+            );
+            reused.close();
+            conn.close();
+        }
+    }
+
+    @Test
+    void testClosedCachedPreparedStatementIsUnusable() throws Exception {
+        ConnectionPoolConfiguration cached = new ConnectionPoolConfiguration();
+        cached.setJdbcConnectionUrl(cpc.getJdbcConnectionUrl());
+        cached.setDriverClassName(cpc.getDriverClassName());
+        cached.setLogin("");
+        cached.setStatementCacheSize(1);
+
+        try (ConnectionPool pool = ConnectionPool.create(cached)) {
+            Connection conn = pool.get();
+            PreparedStatement stale = conn.prepareStatement("select 1");
+            assertSame(conn, stale.getConnection());
+            stale.close();
+
+            // the physical statement now belongs to another borrower
+            PreparedStatement reused = conn.prepareStatement("select 1");
+            assertNotSame(stale, reused);
+            assertAll(
+                    () -> assertTrue(stale.isClosed()),
+                    () -> assertFalse(reused.isClosed()),
+                    () -> assertThrows(SQLException.class, stale::executeQuery),
+                    () -> assertThrows(SQLException.class, () -> stale.setInt(1, 1)),
+                    () -> assertThrows(SQLException.class, stale::getConnection)
+            );
+            reused.close();
+            conn.close();
+        }
+    }
+
 }
@@ -1,9 +1,12 @@
 package ru.curs.celesta.dbutils;
 
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.concurrent.ThreadLocalRandom;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -84,6 +87,52 @@ public class BLOBTest {
         assertEquals(longData.length, a.size());
     }
 
+    @Test
+    public void largeDataIsSpilled() throws IOException {
+        byte[] longData = new byte[100000];
+        ThreadLocalRandom.current().nextBytes(longData);
+        BLOB a = new BLOB(new ByteArrayInputStream(longData), 1000);
+        assertTrue(a.isSpilled());
+        assertEquals(longData.length, a.size());
+        assertArrayEquals(longData, readAll(a.getInStream()));
+
+        BLOB b = a.clone();
+        OutputStream os = a.getOutStream();
+        os.write(shortData);
+        assertFalse(a.isSpilled());
+        assertArrayEquals(shortData, readAll(a.getInStream()));
+        assertArrayEquals(longData, readAll(b.getInStream()));
+    }
+
+    @Test
+    public void writtenDataIsSpilled() throws IOException {
+        byte[] longData = new byte[200000];
+        ThreadLocalRandom.current().nextBytes(longData);
+        BLOB a = new BLOB(1000);
+        OutputStream os = a.getOutStream();
+        for (int i = 0; i < 500; i++) {
+            os.write(longData[i]);
+        }
+        os.write(longData, 500, 1000);
+        assertTrue(a.isSpilled());
+        InputStream is = a.getInStream();
+        os.write(longData, 1500, longData.length - 1500);
+
+        assertEquals(longData.length, a.size());
+        assertArrayEquals(Arrays.copyOf(longData, 1500), readAll(is));
+        assertArrayEquals(longData, readAll(a.getInStream()));
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buf = new byte[777];
+        int n;
+        while ((n = is.read(buf)) >= 0) {
+            result.write(buf, 0, n);
+        }
+        return result.toByteArray();
+    }
+
     private void subTest2(final byte[] data) throws IOException {
         BLOB a = new BLOB();
         assertFalse(a.isModified());
@@ -0,0 +1,73 @@
+package ru.curs.celesta.dbutils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.AbstractCelestaTest;
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.syscursors.LogCursor;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CursorStreamTest extends AbstractCelestaTest {
+
+    private LogCursor c;
+
+    @Override
+    protected String scorePath() {
+        return "score";
+    }
+
+    @BeforeEach
+    void before() {
+        c = new LogCursor(cc());
+        for (int i = 0; i < 50; i++) {
+            c.clear();
+            c.setUserid("user" + i % 3);
+            c.setGrainid("celesta");
+            c.setTablename("t" + i);
+            c.setAction_type(Action.INSERT.shortId());
+            c.insert();
+        }
+        // partitions are read by other connections
+        cc().commit();
+        c.clear();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        c.clear();
+        c.deleteAll();
+        cc().commit();
+    }
+
+    @Test
+    void streamReturnsSnapshots() {
+        c.setRange("userid", "user1");
+        List<CursorRow> rows = c.stream().collect(Collectors.toList());
+        assertEquals(17, rows.size());
+        assertEquals(c.count(), rows.size());
+        for (CursorRow row : rows) {
+            assertEquals("user1", row.get("userid"));
+        }
+        assertNotEquals(rows.get(0).get("entryno"), rows.get(1).get("entryno"));
+        assertThrows(CelestaException.class, () -> rows.get(0).get("foo"));
+    }
+
+    @Test
+    void parallelStreamReadsDisjointPartitions() {
+        List<Object> expected = c.stream().map(r -> r.get("entryno")).collect(Collectors.toList());
+        for (int partitions : new int[] {1, 3, 4, 100}) {
+            List<Object> actual = c.parallelStream(partitions)
+                    .map(r -> r.get("entryno")).collect(Collectors.toList());
+            assertEquals(expected, actual);
+        }
+
+        c.setRange("userid", "user2");
+        assertEquals(16, c.parallelStream(4).filter(r -> "user2".equals(r.get("userid"))).count());
+        assertThrows(CelestaException.class, () -> c.parallelStream(0));
+    }
+}
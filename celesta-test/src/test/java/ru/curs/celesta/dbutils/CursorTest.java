@@ -5,10 +5,14 @@ import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.*;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
 
 
 import ru.curs.celesta.*;
+import ru.curs.celesta.dbutils.stmt.PreparedStmtHolder;
 import ru.curs.celesta.syscursors.LogCursor;
 import ru.curs.celesta.syscursors.LogsetupCursor;
 
@@ -75,12 +79,18 @@ public class CursorTest extends AbstractCelestaTest {
         c.getHelper.getHolder().getStatement(rec, 0);
         c.insert.getStatement(rec, 0);
 
-        boolean[] updateMask = {true, false, false, true, true};
-        c.updateMask = updateMask;
-        boolean[] nullUpdateMask = {false, true, true, false, false};
-        c.nullUpdateMask = nullUpdateMask;
+        // the update statement is prepared for the columns being updated
+        LogsetupCursor c2 = (LogsetupCursor) c;
+        c2.setGrainid("grainval");
+        c2.setTablename("tablenameval");
+        c2.setI(true);
+        c2.setM(false);
+        c2.setD(true);
+        c2.insert();
+        c2.setM(true);
+        c2.update();
+        PreparedStmtHolder update = c.update;
 
-        c.update.getStatement(rec, 0);
         c.delete.getStatement(rec, 0);
 
         c.set.getStatement(rec, 0);
@@ -98,7 +108,7 @@ public class CursorTest extends AbstractCelestaTest {
                 () -> assertFalse(xRec.isClosed()),
                 () -> assertTrue(c.getHelper.getHolder().isStmtValid()),
                 () -> assertTrue(c.insert.isStmtValid()),
-                () -> assertTrue(c.update.isStmtValid()),
+                () -> assertTrue(update.isStmtValid()),
                 () -> assertTrue(c.delete.isStmtValid()),
 
                 () -> assertTrue(c.set.isStmtValid()),
@@ -117,7 +127,7 @@ public class CursorTest extends AbstractCelestaTest {
                 () -> assertTrue(xRec.isClosed()),
                 () -> assertFalse(c.getHelper.getHolder().isStmtValid()),
                 () -> assertFalse(c.insert.isStmtValid()),
-                () -> assertFalse(c.update.isStmtValid()),
+                () -> assertFalse(update.isStmtValid()),
                 () -> assertFalse(c.delete.isStmtValid()),
 
                 () -> assertFalse(c.set.isStmtValid()),
@@ -205,4 +215,128 @@ public class CursorTest extends AbstractCelestaTest {
         assertThrows(CelestaException.class, () -> c.last());
         assertThrows(CelestaException.class, () -> c.get("foo", "bar"));
     }
+
+    @Test
+    void batchModifiesRecords() {
+        LogsetupCursor lsc = (LogsetupCursor) c;
+        lsc.beginBatch(2);
+        assertTrue(lsc.isBatchMode());
+        for (int i = 0; i < 5; i++) {
+            lsc.clear();
+            lsc.setGrainid("g");
+            lsc.setTablename("t" + i);
+            lsc.setI(i % 2 == 0 ? Boolean.TRUE : null);
+            lsc.insert();
+        }
+        assertThrows(CelestaException.class, lsc::tryInsert);
+        lsc.endBatch();
+        assertFalse(lsc.isBatchMode());
+        assertEquals(5, lsc.count());
+
+        lsc.beginBatch(10);
+        lsc.orderBy("tablename");
+        assertTrue(lsc.tryFindSet());
+        do {
+            lsc.setM(true);
+            lsc.update();
+        } while (lsc.nextInSet());
+        lsc.get("g", "t0");
+        lsc.delete();
+        lsc.flushBatch();
+        assertTrue(lsc.isBatchMode());
+        lsc.endBatch();
+
+        assertEquals(4, lsc.count());
+        lsc.setRange("m", true);
+        assertEquals(4, lsc.count());
+    }
+
+    @Test
+    void updateWritesFieldsChangedSinceReading() {
+        LogsetupCursor lsc = (LogsetupCursor) c;
+        lsc.setGrainid("g");
+        lsc.setTablename("t");
+        lsc.setI(true);
+        lsc.insert();
+
+        lsc.get("g", "t");
+        int recversion = lsc.getRecversion();
+        lsc.setI(true);
+        assertTrue(lsc.tryUpdate());
+        assertEquals(recversion, lsc.getRecversion());
+
+        lsc.setM(true);
+        lsc.update();
+        assertEquals(recversion + 1, lsc.getRecversion());
+        LogsetupCursor other = new LogsetupCursor(cc());
+        other.get("g", "t");
+        assertEquals(Boolean.TRUE, other.getM());
+        assertEquals(Boolean.TRUE, other.getI());
+
+        // the record read before is not read again, its absence is seen by the update
+        other.delete();
+        lsc.setD(true);
+        assertFalse(lsc.tryUpdate());
+        other.close();
+    }
+
+    @Test
+    void batchReportsFailedRecords() {
+        LogsetupCursor lsc = (LogsetupCursor) c;
+        lsc.setGrainid("g");
+        lsc.setTablename("dup");
+        lsc.insert();
+
+        lsc.beginBatch(10);
+        lsc.clear();
+        lsc.setGrainid("g");
+        lsc.setTablename("dup");
+        lsc.insert();
+        CelestaException e = assertThrows(CelestaException.class, lsc::flushBatch);
+        assertTrue(e.getMessage().contains("(g, dup)"));
+    }
+
+    @Test
+    void chunkedReadingReturnsWholeSet() {
+        LogsetupCursor lsc = (LogsetupCursor) c;
+        for (int i = 0; i < 7; i++) {
+            lsc.clear();
+            lsc.setGrainid(i % 2 == 0 ? "a" : "b");
+            lsc.setTablename("t" + i);
+            lsc.setI(i % 3 == 1);
+            lsc.insert();
+        }
+        lsc.clear();
+        lsc.orderBy("i desc", "tablename");
+        List<String> expected = new ArrayList<>();
+        for (LogsetupCursor r : lsc) {
+            expected.add(r.getTablename());
+        }
+        assertEquals(7, expected.size());
+
+        for (int chunkSize : new int[] {1, 3, 7, 10}) {
+            List<String> actual = new ArrayList<>();
+            Iterator<LogsetupCursor> it = new CursorIterator<>(lsc, chunkSize);
+            while (it.hasNext()) {
+                LogsetupCursor r = it.next();
+                actual.add(r.getTablename());
+                // changes of the buffer do not affect reading
+                r.setTablename("changed");
+                r.setI(!r.getI());
+            }
+            assertEquals(expected, actual);
+        }
+
+        lsc.setRange("grainid", "a");
+        assertTrue(lsc.tryFindSet(2));
+        int count = 1;
+        while (lsc.nextInSet()) {
+            assertEquals("a", lsc.getGrainid());
+            count++;
+        }
+        assertEquals(4, count);
+
+        lsc.limit(0, 2);
+        assertThrows(CelestaException.class, () -> lsc.tryFindSet(2));
+    }
 }
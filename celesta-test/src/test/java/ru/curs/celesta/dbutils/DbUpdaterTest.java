@@ -13,12 +13,16 @@ import ru.curs.celesta.score.discovery.DefaultScoreDiscovery;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
 import java.util.Properties;
 
 public class DbUpdaterTest {
 
 
     private ConnectionPool connectionPool;
+    private DBAdaptor dba;
 
 
     @AfterEach
@@ -48,8 +52,38 @@ public class DbUpdaterTest {
         );
     }
 
+    @Test
+    void testConcurrentUpdate() throws Exception {
+        DbUpdater dbUpdater = createDbUpdater("db_updater_test/concurrentUpdateScore", 3);
+        dbUpdater.updateDb();
+
+        try (Connection conn = this.connectionPool.get()) {
+            assertTrue(this.dba.tableExists(conn, "a", "ta"));
+            assertTrue(this.dba.tableExists(conn, "b", "tb"));
+            assertTrue(this.dba.tableExists(conn, "c", "tc"));
+            assertTrue(this.dba.tableExists(conn, "d", "td"));
+
+            // materialized view triggers are created on the updater's threads
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("insert into \"a\".\"ta\" (\"id\", \"name\") values (1, 'a')");
+                stmt.execute("insert into \"b\".\"tb\" (\"id\", \"aid\", \"n\") values (1, 1, 5)");
+                try (ResultSet rs = stmt.executeQuery("select \"s\" from \"b\".\"mvb\" where \"aid\" = 1")) {
+                    assertTrue(rs.next());
+                    assertEquals(5, rs.getInt(1));
+                }
+            }
+            conn.commit();
+        }
+
+        // nothing to update
+        dbUpdater.updateDb();
+    }
 
     private DbUpdater createDbUpdater(String scoreResourcePath) throws Exception {
+        return createDbUpdater(scoreResourcePath, 1);
+    }
+
+    private DbUpdater createDbUpdater(String scoreResourcePath, int threads) throws Exception {
         String scorePath = getClass().getResource(scoreResourcePath).getPath();
 
         Properties params = new Properties();
@@ -67,7 +101,7 @@ public class DbUpdaterTest {
 
         this.connectionPool = ConnectionPool.create(cpc);
 
-        DBAdaptor dba = new H2Adaptor(this.connectionPool, new JdbcDdlConsumer(), appSettings.isH2ReferentialIntegrity());
+        this.dba = new H2Adaptor(this.connectionPool, new JdbcDdlConsumer(), appSettings.isH2ReferentialIntegrity());
 
         Score score = new AbstractScore.ScoreBuilder<>(Score.class)
                 .path(scorePath)
@@ -85,6 +119,7 @@ public class DbUpdaterTest {
                 .setCelesta(celesta)
                 .setPermissionManager(permissionManager)
                 .setLoggingManager(loggingManager)
+                .threads(threads)
                 .build();
 
         return dbUpdater;
@@ -0,0 +1,78 @@
+package ru.curs.celesta.dbutils;
+
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.AbstractCelestaTest;
+import ru.curs.celesta.CallContext;
+import ru.curs.celesta.ICelesta;
+import ru.curs.celesta.syscursors.CalllogCursor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HistogramProfilerTest extends AbstractCelestaTest {
+
+    @Override
+    protected String scorePath() {
+        return "score";
+    }
+
+    @Test
+    void bucketsKeepRelativeError() {
+        long previous = -1;
+        for (long value = 0; value < 1L << 40; value = value * 5 / 4 + 1) {
+            int index = HistogramProfiler.bucketIndex(value);
+            long upper = HistogramProfiler.bucketUpperBound(index);
+            assertTrue(upper >= value);
+            assertTrue(upper - value <= value / HistogramProfiler.SUB_BUCKETS);
+            assertEquals(index, HistogramProfiler.bucketIndex(upper));
+            assertTrue(index > previous);
+            previous = index;
+        }
+        assertEquals(HistogramProfiler.bucketIndex(Long.MAX_VALUE),
+                HistogramProfiler.bucketIndex(HistogramProfiler.bucketUpperBound(
+                        HistogramProfiler.bucketIndex(Long.MAX_VALUE))));
+    }
+
+    @Test
+    void callsAreAggregatedAndFlushed() {
+        ICelesta celesta = cc().getCelesta();
+        HistogramProfiler profiler = new HistogramProfiler(celesta, 0);
+        for (int i = 0; i < 10; i++) {
+            CallContext context = new CallContext("user", celesta, "proc");
+            if (i == 0) {
+                context.rollback();
+            }
+            context.close();
+            profiler.logCall(context);
+        }
+        CallContext ignored = new CallContext("user", celesta, IProfiler.NO_LOG);
+        ignored.close();
+        profiler.logCall(ignored);
+
+        assertNull(profiler.getStatistics("other"));
+        CallStatistics stat = profiler.getStatistics("proc");
+        assertEquals(10, stat.getCount());
+        assertEquals(1, stat.getErrorCount());
+        assertTrue(stat.getP50() <= stat.getP99());
+        assertTrue(stat.getP99() <= stat.getMax());
+        assertTrue(stat.getMax() > 0);
+        assertEquals(1, profiler.getStatistics().size());
+        assertEquals(10, profiler.getTotalCount());
+
+        CalllogCursor calllog = new CalllogCursor(cc());
+        calllog.setRange("procname", "proc");
+        assertEquals(0, calllog.count());
+        profiler.flush();
+        assertEquals(1, calllog.count());
+        calllog.first();
+        // an aggregate belongs to no session
+        assertEquals("n/a", calllog.getSessionid());
+        // calllog keeps milliseconds, as for the calls logged one by one
+        assertEquals(Math.round(stat.getMean() / 1000.0), calllog.getDuration().longValue());
+
+        // nothing is written for the intervals without calls
+        profiler.flush();
+        assertEquals(1, calllog.count());
+        profiler.close();
+    }
+
+}
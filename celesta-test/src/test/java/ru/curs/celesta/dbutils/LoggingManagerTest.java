@@ -0,0 +1,60 @@
+package ru.curs.celesta.dbutils;
+
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.AbstractCelestaTest;
+import ru.curs.celesta.ICelesta;
+import ru.curs.celesta.syscursors.LogCursor;
+import ru.curs.celesta.syscursors.LogsetupCursor;
+import ru.curs.celesta.syscursors.RolesCursor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoggingManagerTest extends AbstractCelestaTest {
+
+    @Override
+    protected String scorePath() {
+        return "score";
+    }
+
+    @Test
+    void asyncRecordsAreWrittenOnClose() {
+        LogsetupCursor logsetup = new LogsetupCursor(cc());
+        logsetup.setGrainid("celesta");
+        logsetup.setTablename("roles");
+        logsetup.setI(true);
+        logsetup.setM(true);
+        logsetup.setD(false);
+        logsetup.insert();
+        cc().commit();
+
+        ICelesta celesta = cc().getCelesta();
+        LoggingManager asyncManager = new LoggingManager(celesta, celesta.getDBAdaptor(),
+                LoggingManager.Durability.ASYNC, 2, 2);
+
+        RolesCursor roles = new RolesCursor(cc());
+        roles.setId("asynclog");
+        roles.setDescription("a, \"quoted\" value");
+        roles.insert();
+        for (int i = 0; i < 3; i++) {
+            asyncManager.log(roles, Action.INSERT);
+        }
+        roles.setDescription("changed");
+        roles.update();
+        asyncManager.log(roles, Action.MODIFY);
+        // deletion is not logged for the table
+        asyncManager.log(roles, Action.DELETE);
+        asyncManager.close();
+
+        LogCursor log = new LogCursor(cc());
+        log.setRange("tablename", "roles");
+        log.setRange("action_type", Action.INSERT.shortId());
+        assertEquals(4, log.count());
+        log.setRange("action_type", Action.MODIFY.shortId());
+        assertEquals(2, log.count());
+        log.first();
+        assertEquals("asynclog,changed", log.getNewvalues());
+        assertEquals("asynclog,\"a, \"\"quoted\"\" value\"", log.getOldvalues());
+        assertNotNull(log.getEntry_time());
+    }
+
+}
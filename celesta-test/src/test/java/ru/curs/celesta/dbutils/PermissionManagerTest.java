@@ -0,0 +1,135 @@
+package ru.curs.celesta.dbutils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.curs.celesta.AbstractCelestaTest;
+import ru.curs.celesta.CallContext;
+import ru.curs.celesta.score.Table;
+import ru.curs.celesta.syscursors.PermissionsCursor;
+import ru.curs.celesta.syscursors.RolesCursor;
+import ru.curs.celesta.syscursors.UserrolesCursor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PermissionManagerTest extends AbstractCelestaTest {
+
+    private static final String USER = "permissionManagerTestUser";
+
+    private IPermissionManager permissionManager;
+    private Table log;
+
+    @Override
+    protected String scorePath() {
+        return "score";
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        permissionManager = cc().getCelesta().getPermissionManager();
+        log = cc().getScore().getGrain("celesta").getElement("log", Table.class);
+    }
+
+    @Test
+    void changesOfRolesAndPermissionsAreVisibleImmediately() {
+        assertFalse(isAllowed(Action.READ));
+
+        UserrolesCursor userRoles = new UserrolesCursor(cc());
+        userRoles.setUserid(USER);
+        userRoles.setRoleid("reader");
+        userRoles.insert();
+        cc().commit();
+        assertTrue(isAllowed(Action.READ));
+        assertFalse(isAllowed(Action.INSERT));
+
+        RolesCursor roles = new RolesCursor(cc());
+        roles.setId("logwriter");
+        roles.insert();
+        userRoles.setRoleid("logwriter");
+        userRoles.insert();
+        cc().commit();
+        assertFalse(isAllowed(Action.INSERT));
+
+        PermissionsCursor permissions = new PermissionsCursor(cc());
+        permissions.setRoleid("logwriter");
+        permissions.setGrainid("celesta");
+        permissions.setTablename("log");
+        permissions.setI(true);
+        permissions.insert();
+        cc().commit();
+        assertTrue(isAllowed(Action.INSERT));
+        assertFalse(isAllowed(Action.DELETE));
+
+        userRoles.setRange("userid", USER);
+        userRoles.deleteAll();
+        cc().commit();
+        // deleteAll fires no triggers: the cache is dropped explicitly
+        ((PermissionManager) permissionManager).invalidateAll();
+        assertFalse(isAllowed(Action.READ));
+    }
+
+    @Test
+    void permissionsReadBeforeCommitAreNotCached() {
+        UserrolesCursor userRoles = new UserrolesCursor(cc());
+        userRoles.setUserid(USER);
+        userRoles.setRoleid("editor");
+        userRoles.insert();
+        // another context does not see the uncommitted role yet
+        assertFalse(isAllowed(Action.DELETE));
+        cc().commit();
+        assertTrue(isAllowed(Action.DELETE));
+
+        userRoles.delete();
+        assertTrue(isAllowed(Action.DELETE));
+        cc().rollback();
+        assertTrue(isAllowed(Action.DELETE));
+
+        userRoles.delete();
+        cc().commit();
+        assertFalse(isAllowed(Action.DELETE));
+    }
+
+    @Test
+    void concurrentCallersGetTheSameLoadedPermissions() throws Exception {
+        UserrolesCursor userRoles = new UserrolesCursor(cc());
+        userRoles.setUserid(USER);
+        userRoles.setRoleid("reader");
+        userRoles.insert();
+        cc().commit();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return isAllowed(Action.READ) && !isAllowed(Action.INSERT);
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        userRoles.delete();
+        cc().commit();
+        assertFalse(isAllowed(Action.READ));
+    }
+
+    private boolean isAllowed(Action action) {
+        try (CallContext ctx = new CallContext(USER, cc().getCelesta(), "permissionManagerTest")) {
+            return permissionManager.isActionAllowed(ctx, log, action);
+        }
+    }
+
+}
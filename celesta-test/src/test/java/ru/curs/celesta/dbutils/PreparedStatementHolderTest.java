@@ -110,6 +110,48 @@ public class PreparedStatementHolderTest {
         assertEquals("[1->37.8][2->16]", s2.params);
     }
 
+    @Test
+    public void test4() {
+        B b = new B();
+        Integer[] rec = { 11, 12, 13, 14, 15 };
+        Integer[] recWithNull = { 11, null, 13, 14, 15 };
+
+        DummyPreparedStatement s = (DummyPreparedStatement) b.getStatement(rec, 0);
+        DummyPreparedStatement s2 = (DummyPreparedStatement) b.getStatement(recWithNull, 0);
+        assertNotSame(s, s2);
+
+        // the statement for the previous nulls mask is kept open
+        s.params = "";
+        assertSame(s, b.getStatement(rec, 0));
+        assertFalse(s.closed);
+        assertEquals("[1->12][2->14][3->13]", s.params);
+        assertTrue(Arrays.equals(new boolean[] { false, false }, b.getNullsMask()));
+        assertEquals(2, b.getMissCount());
+        assertEquals(1, b.getHitCount());
+
+        b.close();
+        assertTrue(s.closed);
+        assertTrue(s2.closed);
+        assertFalse(b.isStmtValid());
+    }
+
+    @Test
+    public void test5() {
+        D d = new D();
+        Integer[] rec = new Integer[4];
+        DummyPreparedStatement s = (DummyPreparedStatement) d.getStatement(rec, 0);
+        for (int i = 1; i <= MaskedStatementHolder.MAX_STATEMENTS; i++) {
+            for (int j = 0; j < rec.length; j++) {
+                rec[j] = (i >> j & 1) == 1 ? j : null;
+            }
+            d.getStatement(rec, 0);
+        }
+        // the least recently used statement is closed
+        assertTrue(s.closed);
+        assertEquals(1, d.getEvictionCount());
+        assertEquals(MaskedStatementHolder.MAX_STATEMENTS + 1, d.getMissCount());
+    }
+
     class A extends PreparedStmtHolder {
 
         SingleValue filter = new SingleValue(5);
@@ -142,6 +184,21 @@ public class PreparedStatementHolderTest {
 
     }
 
+    class D extends MaskedStatementHolder {
+
+        @Override
+        protected int[] getNullsMaskIndices() {
+            return new int[] { 0, 1, 2, 3 };
+        }
+
+        @Override
+        protected PreparedStatement initStatement(List<ParameterSetter> program) {
+            program.add(ParameterSetter.create(0, null));
+            return new DummyPreparedStatement();
+        }
+
+    }
+
     class C extends PreparedStmtHolder {
 
         @Override
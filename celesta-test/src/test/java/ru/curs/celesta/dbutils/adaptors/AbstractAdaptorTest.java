@@ -212,6 +212,66 @@ public abstract class AbstractAdaptorTest {
         assertEquals(1, getCount(conn, t));
     }
 
+    @Test
+    public void getInsertRecordReturningStatement() throws Exception {
+        boolean[] nullsMask = {
+                true, false, false, false, true, false, true, true,
+                false, true, true, true, false, false, true, true
+        };
+        BLOB b = new BLOB();
+        b.getOutStream().write(new byte[]{1, 2, 3});
+        Object[] rowData = {
+                null, "ab", 5, false, null, 1.1, null, null,
+                "eee", null, null, null, b, BigDecimal.ONE, null, null
+        };
+        List<ParameterSetter> program = new ArrayList<>();
+        PreparedStatement pstmt = dba.getInsertRecordReturningStatement(conn, t, nullsMask, program,
+                Collections.emptySet());
+        assertNotNull(pstmt);
+        int i = 1;
+        for (ParameterSetter ps : program) {
+            ps.execute(pstmt, i++, rowData, 0);
+        }
+
+        ResultSet rs = dba.executeInsertReturning(pstmt);
+        if (rs != null) {
+            try {
+                assertTrue(rs.next());
+                assertEquals(1, rs.getInt("id"));
+                assertEquals("ab", rs.getString("attrVarchar"));
+                assertEquals(5, rs.getInt("attrInt"));
+                // default values are returned as well
+                assertEquals("abc", rs.getString("f6"));
+                assertEquals(1, rs.getInt("recversion"));
+                assertFalse(rs.next());
+            } finally {
+                rs.close();
+            }
+        }
+        assertEquals(1, getCount(conn, t));
+
+        // the same primary key once again
+        rowData[0] = 1;
+        nullsMask[0] = false;
+        program.clear();
+        pstmt = dba.getInsertRecordReturningStatement(conn, t, nullsMask, program, Collections.emptySet());
+        i = 1;
+        for (ParameterSetter ps : program) {
+            ps.execute(pstmt, i++, rowData, 0);
+        }
+        try {
+            rs = dba.executeInsertReturning(pstmt);
+            assertNotNull(rs);
+            try {
+                assertFalse(rs.next());
+            } finally {
+                rs.close();
+            }
+        } catch (SQLException e) {
+            assertTrue(e.getSQLState().startsWith("23"));
+        }
+    }
+
     @Test
     public void getSetCountStatement() throws Exception {
         int count = getCount(conn, t);
@@ -1078,6 +1138,34 @@ public abstract class AbstractAdaptorTest {
 
     }
 
+    @Test
+    public void getCatalog() throws ParseException {
+        DbCatalog catalog = dba.getCatalog(conn, t.getGrain());
+        assertTrue(catalog.tableExists(t.getName()));
+        assertFalse(catalog.tableExists("nonExistentTable"));
+        assertTrue(catalog.sequenceExists("test_id"));
+        assertEquals(dba.getColumns(conn, t), new HashSet<>(catalog.getColumns(t.getName())));
+        assertTrue(catalog.isColumnAbsent(t.getName(), "nonExistentColumn"));
+        for (Column c : t.getColumns().values()) {
+            DbColumnInfo ci = catalog.getColumnInfo(t.getName(), c.getName());
+            // adaptors may leave column information to be queried separately
+            if (ci != null) {
+                assertEquals(dba.getColumnInfo(conn, c).reflects(c), ci.reflects(c), c.getName());
+            }
+        }
+        assertTrue(catalog.getPKInfo(t.getName()).reflects(t));
+
+        t.setPK("id", "f1", "f9");
+        dba.dropPk(conn, t, "pk_test");
+        dba.createPK(conn, t);
+        catalog.invalidate(t.getName());
+        assertNull(catalog.getPKInfo(t.getName()));
+        assertNull(catalog.getColumns(t.getName()));
+        DbPkInfo pkInfo = dba.getCatalog(conn, t.getGrain()).getPKInfo(t.getName());
+        assertEquals(Arrays.asList("id", "f1", "f9"), pkInfo.getColumnNames());
+        assertTrue(pkInfo.reflects(t));
+    }
+
     @Test
     public void getFKInfo() throws ParseException, SQLException {
         dba.dropTable(conn, t);
@@ -20,14 +20,27 @@ public class CallContextProvider implements TestTemplateInvocationContextProvide
     }
 
     enum Backend {
-        H2, PostgreSQL, Oracle, MSSQL
+        H2, PostgreSQL, Oracle, MSSQL,
+        /**
+         * PostgreSQL with materialized views maintained by statement-level triggers.
+         */
+        PostgreSQLStatementTriggers
     }
 
+    private final Set<Backend> backends;
     private final EnumMap<Backend, JdbcDatabaseContainer> containers = new EnumMap<>(Backend.class);
     private final EnumMap<Backend, Celesta> celestas = new EnumMap<>(Backend.class);
 
     private CallContext currentContext;
 
+    public CallContextProvider() {
+        this(EnumSet.of(Backend.H2, Backend.PostgreSQL, Backend.Oracle, Backend.MSSQL));
+    }
+
+    public CallContextProvider(Set<Backend> backends) {
+        this.backends = backends;
+    }
+
     @Override
     public boolean supportsTestTemplate(ExtensionContext extensionContext) {
         return true;
@@ -35,7 +48,7 @@ public class CallContextProvider implements TestTemplateInvocationContextProvide
 
     @Override
     public Stream<TestTemplateInvocationContext> provideTestTemplateInvocationContexts(ExtensionContext extensionContext) {
-        return Arrays.stream(Backend.values()).map(this::invocationContext);
+        return backends.stream().map(this::invocationContext);
     }
 
     private TestTemplateInvocationContext invocationContext(final Backend backend) {
@@ -75,19 +88,35 @@ public class CallContextProvider implements TestTemplateInvocationContextProvide
     }
 
     public void startCelestas() {
-        celestas.put(Backend.H2, celestaFromH2());
+        if (backends.contains(Backend.H2)) {
+            celestas.put(Backend.H2, celestaFromH2());
+        }
+
+        if (backends.contains(Backend.PostgreSQL)) {
+            containers.put(Backend.PostgreSQL, new PostgreSQLContainer());
+            celestas.put(Backend.PostgreSQL, celestaFromContainer(containers.get(Backend.PostgreSQL)));
+        }
 
-        containers.put(Backend.PostgreSQL, new PostgreSQLContainer());
-        celestas.put(Backend.PostgreSQL, celestaFromContainer(containers.get(Backend.PostgreSQL)));
+        if (backends.contains(Backend.PostgreSQLStatementTriggers)) {
+            containers.put(Backend.PostgreSQLStatementTriggers, new PostgreSQLContainer());
+            Properties properties = new Properties();
+            properties.put("pg.mv.triggers", "statement");
+            celestas.put(Backend.PostgreSQLStatementTriggers,
+                    celestaFromContainer(containers.get(Backend.PostgreSQLStatementTriggers), properties));
+        }
 
-        containers.put(Backend.Oracle, new OracleContainer());
-        celestas.put(Backend.Oracle, celestaFromContainer(containers.get(Backend.Oracle)));
+        if (backends.contains(Backend.Oracle)) {
+            containers.put(Backend.Oracle, new OracleContainer());
+            celestas.put(Backend.Oracle, celestaFromContainer(containers.get(Backend.Oracle)));
+        }
 
-        MSSQLServerContainer ms = new MSSQLServerContainer()
-                .withDatabaseName("celesta")
-                .withCollation("Cyrillic_General_CI_AS");
-        containers.put(Backend.MSSQL, ms);
-        celestas.put(Backend.MSSQL, celestaFromContainer(containers.get(Backend.MSSQL)));
+        if (backends.contains(Backend.MSSQL)) {
+            MSSQLServerContainer ms = new MSSQLServerContainer()
+                    .withDatabaseName("celesta")
+                    .withCollation("Cyrillic_General_CI_AS");
+            containers.put(Backend.MSSQL, ms);
+            celestas.put(Backend.MSSQL, celestaFromContainer(containers.get(Backend.MSSQL)));
+        }
 
     }
 
@@ -112,8 +141,11 @@ public class CallContextProvider implements TestTemplateInvocationContextProvide
     }
 
     private static Celesta celestaFromContainer(JdbcDatabaseContainer container) {
+        return celestaFromContainer(container, new Properties());
+    }
+
+    private static Celesta celestaFromContainer(JdbcDatabaseContainer container, Properties properties) {
         container.start();
-        Properties properties = new Properties();
         properties.put("score.path", "score");
         properties.put("rdbms.connection.url", container.getJdbcUrl().replace("localhost", "0.0.0.0"));
         properties.put("rdbms.connection.username", container.getUsername());
@@ -1,10 +1,18 @@
 package ru.curs.celesta.script;
 
 import mView.*;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.TestTemplate;
+import org.junit.jupiter.api.extension.RegisterExtension;
 import ru.curs.celesta.CallContext;
+import ru.curs.celesta.DBType;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.sql.Timestamp;
 import java.math.BigDecimal;
@@ -12,6 +20,7 @@ import java.time.LocalDateTime;
 import java.time.LocalDate;
 import java.time.Month;
 import java.time.temporal.ChronoUnit;
+import java.util.EnumSet;
 
 
 import java.time.LocalDateTime;
@@ -19,9 +28,35 @@ import java.time.LocalDateTime;
 import ru.curs.celesta.ConnectionPool;
 import ru.curs.celesta.dbutils.Cursor;
 import ru.curs.celesta.dbutils.MaterializedViewCursor;
+import ru.curs.celesta.dbutils.adaptors.DBAdaptor;
+import ru.curs.celesta.dbutils.adaptors.PostgresAdaptor;
 import ru.curs.celesta.score.MaterializedView;
 
-class TestMaterializedView implements ScriptTest {
+/**
+ * Runs on all the backends of {@link ScriptTest} and, in addition, on PostgreSQL
+ * with statement-level materialized view triggers.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class TestMaterializedView {
+    @RegisterExtension
+    static final CallContextProvider callContextProvider =
+            new CallContextProvider(EnumSet.allOf(CallContextProvider.Backend.class));
+
+    @BeforeAll
+    void startCelestas() {
+        callContextProvider.startCelestas();
+    }
+
+    @AfterAll
+    void stopCelestas() {
+        callContextProvider.stopCelestas();
+    }
+
+    @AfterEach
+    void closeContext() {
+        callContextProvider.closeCurrentContext();
+    }
+
     @TestTemplate
     void test_mat_view_insert(CallContext context) {
         Table1Cursor tableCursor = new Table1Cursor(context);
@@ -70,6 +105,80 @@ class TestMaterializedView implements ScriptTest {
 
     }
 
+    /*
+        Удаление последнего отличного от NULL слагаемого оставляет в SUM() значение NULL, а не 0.
+        Проверяются триггеры H2 и триггеры уровня оператора PostgreSQL, пересчитывающие такие группы.
+    */
+    @TestTemplate
+    void test_mat_view_sum_becomes_null(CallContext context) {
+        DBAdaptor dba = context.getCelesta().getDBAdaptor();
+        assumeTrue(dba.getType() == DBType.H2
+                || dba instanceof PostgresAdaptor && ((PostgresAdaptor) dba).isStatementLevelMvTriggers());
+
+        Table1Cursor tableCursor = new Table1Cursor(context);
+        MView1Cursor mViewCursor = new MView1Cursor(context);
+        tableCursor.deleteAll();
+
+        tableCursor.setNumb(5);
+        tableCursor.setVar("A");
+        tableCursor.insert();
+        int id = tableCursor.getId();
+        tableCursor.clear();
+
+        tableCursor.setVar("A");
+        tableCursor.insert();
+        tableCursor.clear();
+
+        mViewCursor.get("A");
+        assertEquals(5, mViewCursor.getS().intValue());
+        assertEquals(2, mViewCursor.getC().intValue());
+
+        tableCursor.get(id);
+        tableCursor.setNumb(null);
+        tableCursor.update();
+        mViewCursor.get("A");
+        assertNull(mViewCursor.getS());
+        assertEquals(2, mViewCursor.getC().intValue());
+
+        tableCursor.get(id);
+        tableCursor.setNumb(3);
+        tableCursor.update();
+        mViewCursor.get("A");
+        assertEquals(3, mViewCursor.getS().intValue());
+
+        tableCursor.get(id);
+        tableCursor.delete();
+        mViewCursor.get("A");
+        assertNull(mViewCursor.getS());
+        assertEquals(1, mViewCursor.getC().intValue());
+
+        // a sum of non-null values may be 0 as well
+        tableCursor.clear();
+        tableCursor.setNumb(4);
+        tableCursor.setVar("A");
+        tableCursor.insert();
+        int id4 = tableCursor.getId();
+        tableCursor.clear();
+        tableCursor.setNumb(-4);
+        tableCursor.setVar("A");
+        tableCursor.insert();
+        tableCursor.clear();
+        tableCursor.setNumb(1);
+        tableCursor.setVar("A");
+        tableCursor.insert();
+        tableCursor.delete();
+        mViewCursor.get("A");
+        assertEquals(0, mViewCursor.getS().intValue());
+        assertEquals(3, mViewCursor.getC().intValue());
+
+        tableCursor.get(id4);
+        tableCursor.setNumb(6);
+        tableCursor.update();
+        mViewCursor.get("A");
+        assertEquals(2, mViewCursor.getS().intValue());
+        assertEquals(3, mViewCursor.getC().intValue());
+    }
+
     @TestTemplate
     void test_mat_view_two_columns(CallContext context) {
         Table4Cursor tableCursor = new Table4Cursor(context);
@@ -2,11 +2,20 @@ package ru.curs.celesta.script;
 
 import org.junit.jupiter.api.TestTemplate;
 import ru.curs.celesta.CallContext;
+import ru.curs.celesta.CelestaException;
+import ru.curs.celesta.dbutils.RowCache;
+import ru.curs.celesta.dbutils.TableSnapshots;
 import ru.curs.celesta.syscursors.LogCursor;
 import simpleCases.*;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -48,6 +57,17 @@ class TestSimpleCases implements ScriptTest {
 
     }
 
+    @TestTemplate
+    void test_view_is_not_read_in_chunks(CallContext context) {
+        ViewWithGetDateCursor viewCursor = new ViewWithGetDateCursor(context);
+        // rows having equal sort values at the end of a chunk would be skipped
+        assertThrows(CelestaException.class, () -> viewCursor.tryFindSet(2));
+
+        GetDateForViewCursor tableCursor = new GetDateForViewCursor(context);
+        tableCursor.deleteAll();
+        assertFalse(tableCursor.tryFindSet(2));
+    }
+
     @TestTemplate
     void test_zero_insert(CallContext context) {
         ZeroInsertCursor c = new ZeroInsertCursor(context);
@@ -169,4 +189,211 @@ class TestSimpleCases implements ScriptTest {
         assertTrue(c.tryInsert());
 
     }
+
+    @TestTemplate
+    void test_row_cache(CallContext context) {
+        RowCache cache = context.getCelesta().getRowCache();
+        CachedDictionaryCursor c = new CachedDictionaryCursor(context);
+        c.deleteAll();
+        for (int i = 1; i <= 3; i++) {
+            c.setId(i);
+            c.setName("name" + i);
+            c.insert();
+        }
+        context.commit();
+
+        long hits = cache.getHitCount();
+        long misses = cache.getMissCount();
+        c.get(1);
+        c.clear();
+        c.get(1);
+        assertEquals("name1", c.getName());
+        assertEquals(hits + 1, cache.getHitCount());
+        assertEquals(misses + 1, cache.getMissCount());
+        assertFalse(c.tryGet(4));
+
+        // the least recently used record is evicted
+        c.get(2);
+        c.get(3);
+        assertEquals(2, cache.size(c.meta()));
+        hits = cache.getHitCount();
+        c.get(1);
+        assertEquals(hits, cache.getHitCount());
+
+        // the version of a cached record is valid for update
+        c.get(1);
+        assertEquals(hits + 1, cache.getHitCount());
+        c.setName("one");
+        c.update();
+
+        // the modified record is not cached until the transaction ends
+        misses = cache.getMissCount();
+        c.get(1);
+        assertEquals("one", c.getName());
+        assertEquals(misses, cache.getMissCount());
+        context.commit();
+        c.get(1);
+        c.get(1);
+        assertEquals("one", c.getName());
+        assertEquals(hits + 2, cache.getHitCount());
+
+        c.delete();
+        assertFalse(c.tryGet(1));
+        context.commit();
+        assertFalse(c.tryGet(1));
+    }
+
+    @TestTemplate
+    void test_row_cache_ttl(CallContext context) throws Exception {
+        RowCache cache = context.getCelesta().getRowCache();
+        ExpiringDictionaryCursor c = new ExpiringDictionaryCursor(context);
+        c.deleteAll();
+        c.setId(1);
+        c.setName("name1");
+        c.insert();
+        context.commit();
+
+        c.get(1);
+        long hits = cache.getHitCount();
+        c.get(1);
+        assertEquals(hits + 1, cache.getHitCount());
+
+        // the record expires and is read from the database once again
+        Thread.sleep(1100);
+        long misses = cache.getMissCount();
+        c.get(1);
+        assertEquals(misses + 1, cache.getMissCount());
+        assertEquals("name1", c.getName());
+        c.get(1);
+        assertEquals(hits + 2, cache.getHitCount());
+    }
+
+    @TestTemplate
+    void test_get_all(CallContext context) {
+        Simple_tableCursor c = new Simple_tableCursor(context);
+        c.deleteAll();
+        for (int i = 1; i <= 40; i++) {
+            c.setId(i);
+            c.setName("name" + i);
+            c.insert();
+        }
+
+        List<Object[]> keys = new ArrayList<>();
+        for (int i = 50; i > 0; i -= 2) {
+            keys.add(new Object[]{i});
+        }
+        keys.add(new Object[]{4});
+        List<Object> values = new ArrayList<>();
+        List<Object> expected = new ArrayList<>();
+        c.getAll(keys, row -> {
+            values.add(row.get("name"));
+            assertEquals(row.get("id"), c.getId());
+        });
+        for (int i = 40; i > 0; i -= 2) {
+            expected.add("name" + i);
+        }
+        expected.add("name4");
+        assertEquals(expected, values);
+
+        // the records read can be updated
+        c.getAll(keys.subList(0, 10), row -> {
+            c.setName(c.getName().toUpperCase());
+            c.update();
+        });
+        c.get(40);
+        assertEquals("NAME40", c.getName());
+        c.get(39);
+        assertEquals("name39", c.getName());
+    }
+
+    @TestTemplate
+    void test_table_snapshot(CallContext context) throws SQLException {
+        String table = context.getDbAdaptor().tableString("simpleCases", "snapshotDictionary");
+        try (Statement stmt = context.getConn().createStatement()) {
+            stmt.execute("delete from " + table);
+            for (int i = 1; i <= 5; i++) {
+                stmt.execute(String.format("insert into %s (\"id\", \"name\", \"weight\") values (%d, 'name%d', %d)",
+                        table, i, i, i % 3));
+            }
+        }
+        context.commit();
+
+        TableSnapshots snapshots = context.getCelesta().getTableSnapshots();
+        SnapshotDictionaryCursor c = new SnapshotDictionaryCursor(context);
+        c.reloadSnapshot();
+        long loads = snapshots.getLoadCount();
+
+        c.orderBy("weight desc", "name");
+        StringBuilder sb = new StringBuilder();
+        for (SnapshotDictionaryCursor r : c) {
+            sb.append(r.getId());
+        }
+        assertEquals("25143", sb.toString());
+        assertEquals(5, c.count());
+
+        c.setRange("weight", 1);
+        assertEquals(2, c.count());
+        assertTrue(c.tryFirst());
+        assertEquals("name1", c.getName());
+        assertTrue(c.next());
+        assertEquals(4, c.getId().intValue());
+        assertFalse(c.next());
+        assertTrue(c.previous());
+        assertEquals(1, c.getId().intValue());
+
+        c.setRange("weight");
+        c.limit(1, 2);
+        assertTrue(c.tryFindSet());
+        assertEquals(5, c.getId().intValue());
+        assertTrue(c.nextInSet());
+        assertEquals(1, c.getId().intValue());
+        assertFalse(c.nextInSet());
+        assertEquals(loads, snapshots.getLoadCount());
+
+        // the table is modified bypassing Celesta
+        try (Statement stmt = context.getConn().createStatement()) {
+            stmt.execute(String.format("insert into %s (\"id\", \"name\", \"weight\") values (6, 'name6', 0)",
+                    table));
+        }
+        context.commit();
+        c.reloadSnapshot();
+        assertEquals(loads + 1, snapshots.getLoadCount());
+        c.reset();
+        assertEquals(6, c.count());
+        c.setRange("weight", 0);
+        assertTrue(c.tryLast());
+        assertEquals("name6", c.getName());
+    }
+
+    @TestTemplate
+    void test_table_snapshot_string_filter(CallContext context) throws SQLException {
+        String table = context.getDbAdaptor().tableString("simpleCases", "snapshotDictionary");
+        try (Statement stmt = context.getConn().createStatement()) {
+            stmt.execute("delete from " + table);
+            stmt.execute(String.format("insert into %s (\"id\", \"name\", \"weight\") values (1, 'Mixed', 0)",
+                    table));
+            stmt.execute(String.format("insert into %s (\"id\", \"name\", \"weight\") values (2, 'trailing ', 0)",
+                    table));
+        }
+        context.commit();
+
+        SnapshotDictionaryCursor c = new SnapshotDictionaryCursor(context);
+        c.reloadSnapshot();
+        // string equality follows the collation of the database (case, trailing spaces)
+        for (String value : new String[]{"Mixed", "MIXED", "trailing", "trailing "}) {
+            int expected;
+            try (PreparedStatement stmt = context.getConn().prepareStatement(
+                    String.format("select count(*) from %s where \"name\" = ?", table))) {
+                stmt.setString(1, value);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    expected = rs.getInt(1);
+                }
+            }
+            c.setRange("name", value);
+            assertEquals(expected, c.count(), value);
+            assertEquals(expected > 0, c.tryFirst(), value);
+        }
+    }
+
 }
@@ -0,0 +1,3 @@
+create schema a version '1.0';
+
+create table ta (id int not null primary key, name varchar(10));
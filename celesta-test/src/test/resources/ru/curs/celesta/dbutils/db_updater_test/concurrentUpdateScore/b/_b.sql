@@ -0,0 +1,7 @@
+create schema b version '1.0';
+
+create table tb (id int not null primary key, aid int not null foreign key references a.ta(id), n int);
+
+create view vb as select id, name from a.ta;
+
+create materialized view mvb as select aid, sum(n) as s from tb group by aid;
@@ -0,0 +1,5 @@
+create schema c version '1.0';
+
+create sequence sc;
+
+create table tc (id int not null default nextval(sc) primary key, x varchar(5));
@@ -0,0 +1,3 @@
+create schema d version '1.0';
+
+create table td (id int not null primary key, bid int foreign key references b.tb(id));